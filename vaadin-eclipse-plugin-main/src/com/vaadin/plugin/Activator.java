@@ -27,6 +27,9 @@ public class Activator extends AbstractUIPlugin {
             restService = new CopilotRestService();
             restService.start();
             System.setProperty("vaadin.copilot.endpoint", restService.getEndpoint());
+            if (restService.getUnixSocketPath() != null) {
+                System.setProperty("vaadin.copilot.unixSocketPath", restService.getUnixSocketPath());
+            }
 
             // Register the server launch listener
             serverLaunchListener = new ServerLaunchListener();
@@ -93,6 +96,16 @@ public class Activator extends AbstractUIPlugin {
             restService = null;
         }
 
+        CopilotEventBus.dispose();
+        CopilotMetrics.dispose();
+        ContentDigestCache.dispose();
+        CopilotUndoManager.dispose();
+        ProjectLocationIndex.dispose();
+        VaadinModelIndex.dispose();
+        TypeHierarchyCache.dispose();
+        ClasspathFingerprintCache.dispose();
+        AnalyzerPool.dispose();
+
         plugin = null;
         super.stop(context);
     }
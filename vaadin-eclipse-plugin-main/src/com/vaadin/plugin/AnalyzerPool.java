@@ -0,0 +1,176 @@
+package com.vaadin.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import org.eclipse.core.runtime.CoreException;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Bounded fork/join pool used to spread a full project scan over the available cores. Work is split into ranges of the
+ * input list and each result is stored at the index of its input, so the merged result has the same order as a
+ * sequential scan regardless of how the work was scheduled.
+ * <p>
+ * The number of threads can be configured with the {@value #THREADS_PROPERTY} system property. A value of 1 makes all
+ * scans run sequentially on the calling thread.
+ */
+public class AnalyzerPool {
+
+    public static final String THREADS_PROPERTY = "vaadin.copilot.analyzerThreads";
+
+    /** Number of ranges per thread, so that threads finishing early can steal work from slower ones. */
+    private static final int RANGES_PER_THREAD = 4;
+
+    private static AnalyzerPool instance;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * A computation applied to each item of a scan. It runs on several threads at once and must not modify shared
+     * state.
+     */
+    public interface Task<T, R> {
+        R apply(T item) throws CoreException;
+    }
+
+    public static synchronized AnalyzerPool getInstance() {
+        if (instance == null) {
+            instance = new AnalyzerPool(Integer.getInteger(THREADS_PROPERTY, defaultThreadCount()));
+        }
+        return instance;
+    }
+
+    public AnalyzerPool(int threads) {
+        int parallelism = Math.max(1, threads);
+        this.pool = new ForkJoinPool(parallelism, AnalyzerThread::new, null, false);
+        VaadinPluginLog.debug("Analyzer pool created with " + parallelism + " threads");
+    }
+
+    private static int defaultThreadCount() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Shuts down the shared pool. Scans that are running complete, new ones get a new pool.
+     */
+    public static synchronized void dispose() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+    }
+
+    /** Stops accepting new scans. */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /** Configured number of threads. */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Applies the task to every item, in parallel when there is more than one item.
+     *
+     * @param items
+     *            the items to process
+     * @param task
+     *            the computation to apply to each item
+     * @return the results, in the order of the items
+     * @throws CoreException
+     *             the first exception thrown by the task, the remaining items are then not processed
+     */
+    public <T, R> List<R> map(List<T> items, Task<T, R> task) throws CoreException {
+        if (items.size() < 2 || pool.getParallelism() == 1) {
+            List<R> results = new ArrayList<>(items.size());
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+
+        Object[] results = new Object[items.size()];
+        int batchSize = Math.max(1, items.size() / (pool.getParallelism() * RANGES_PER_THREAD));
+        try {
+            pool.invoke(new RangeAction<>(items, task, results, 0, items.size(), batchSize));
+        } catch (RuntimeException e) {
+            // Fork/join may rethrow a copy of the exception, the original is then its cause
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof TaskException) {
+                    throw ((TaskException) t).getCause();
+                }
+            }
+            throw e;
+        }
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    /**
+     * Processes a range of items, splitting it in halves until it is small enough.
+     */
+    private static class RangeAction<T, R> extends RecursiveAction {
+        private final List<T> items;
+        private final Task<T, R> task;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+        private final int batchSize;
+
+        RangeAction(List<T> items, Task<T, R> task, Object[] results, int from, int to, int batchSize) {
+            this.items = items;
+            this.task = task;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= batchSize) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        results[i] = task.apply(items.get(i));
+                    } catch (CoreException e) {
+                        throw new TaskException(e);
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeAction<>(items, task, results, from, middle, batchSize),
+                    new RangeAction<>(items, task, results, middle, to, batchSize));
+        }
+    }
+
+    /**
+     * Carries a checked exception of a task out of the pool.
+     */
+    private static class TaskException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TaskException(CoreException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized CoreException getCause() {
+            return (CoreException) super.getCause();
+        }
+    }
+
+    private static class AnalyzerThread extends ForkJoinWorkerThread {
+        AnalyzerThread(ForkJoinPool pool) {
+            super(pool);
+            setName("Vaadin-Analyzer-" + getPoolIndex());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.vaadin.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary delta between two byte arrays, used to store versions of a file as differences to the previous
+ * version. The delta is a sequence of instructions that either copy a range of the source or insert literal bytes,
+ * similar to the deltas in git pack files.
+ * <p>
+ * Matches are found by indexing the source at fixed size blocks, so a delta is small for any edit that leaves most of
+ * the content in place, including edits at several places and moved blocks. The common prefix and suffix are matched
+ * directly, which covers the typical single edit without indexing anything.
+ */
+public final class BinaryDelta {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int COPY = 0;
+    private static final int INSERT = 1;
+
+    private BinaryDelta() {
+    }
+
+    /**
+     * Creates the delta that turns {@code source} into {@code target}.
+     */
+    public static byte[] create(byte[] source, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt(out, target.length);
+
+        int prefix = 0;
+        int maxCommon = Math.min(source.length, target.length);
+        while (prefix < maxCommon && source[prefix] == target[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxCommon - prefix
+                && source[source.length - 1 - suffix] == target[target.length - 1 - suffix]) {
+            suffix++;
+        }
+        int sourceEnd = source.length - suffix;
+        int targetEnd = target.length - suffix;
+
+        if (prefix > 0) {
+            writeCopy(out, 0, prefix);
+        }
+
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int offset = prefix; offset + BLOCK_SIZE <= sourceEnd; offset += BLOCK_SIZE) {
+            blocks.putIfAbsent(hash(source, offset), offset);
+        }
+
+        int insertStart = prefix;
+        int position = prefix;
+        while (position + BLOCK_SIZE <= targetEnd) {
+            Integer candidate = blocks.get(hash(target, position));
+            if (candidate == null || !regionMatches(source, candidate, target, position, BLOCK_SIZE)) {
+                position++;
+                continue;
+            }
+            int sourceStart = candidate;
+            int length = BLOCK_SIZE;
+            while (sourceStart + length < sourceEnd && position + length < targetEnd
+                    && source[sourceStart + length] == target[position + length]) {
+                length++;
+            }
+            // Take back bytes that were about to be inserted but also match
+            while (position > insertStart && sourceStart > prefix
+                    && source[sourceStart - 1] == target[position - 1]) {
+                sourceStart--;
+                position--;
+                length++;
+            }
+            writeInsert(out, target, insertStart, position - insertStart);
+            writeCopy(out, sourceStart, length);
+            position += length;
+            insertStart = position;
+        }
+        writeInsert(out, target, insertStart, targetEnd - insertStart);
+
+        if (suffix > 0) {
+            writeCopy(out, sourceEnd, suffix);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Applies a delta created by {@link #create(byte[], byte[])} to the source it was created from.
+     *
+     * @throws IllegalArgumentException
+     *             if the delta is corrupt or does not fit the source
+     */
+    public static byte[] apply(byte[] source, byte[] delta) {
+        int[] position = { 0 };
+        byte[] target = new byte[readVarInt(delta, position)];
+        int written = 0;
+        while (position[0] < delta.length) {
+            int instruction = delta[position[0]++];
+            if (instruction == COPY) {
+                int offset = readVarInt(delta, position);
+                int length = readVarInt(delta, position);
+                if (offset + length > source.length || written + length > target.length) {
+                    throw new IllegalArgumentException("Delta does not match the source");
+                }
+                System.arraycopy(source, offset, target, written, length);
+                written += length;
+            } else if (instruction == INSERT) {
+                int length = readVarInt(delta, position);
+                if (position[0] + length > delta.length || written + length > target.length) {
+                    throw new IllegalArgumentException("Corrupt delta");
+                }
+                System.arraycopy(delta, position[0], target, written, length);
+                position[0] += length;
+                written += length;
+            } else {
+                throw new IllegalArgumentException("Corrupt delta, unknown instruction " + instruction);
+            }
+        }
+        if (written != target.length) {
+            throw new IllegalArgumentException("Corrupt delta, expected " + target.length + " bytes");
+        }
+        return target;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int hash = 1;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return hash;
+    }
+
+    private static boolean regionMatches(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeCopy(ByteArrayOutputStream out, int offset, int length) {
+        out.write(COPY);
+        writeVarInt(out, offset);
+        writeVarInt(out, length);
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data, int offset, int length) {
+        if (length > 0) {
+            out.write(INSERT);
+            writeVarInt(out, length);
+            out.write(data, offset, length);
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= data.length) {
+                throw new IllegalArgumentException("Corrupt delta, truncated number");
+            }
+            int b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Corrupt delta, number too long");
+    }
+}
@@ -0,0 +1,272 @@
+package com.vaadin.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Caches what the resolved classpath of a project says about Vaadin: whether Vaadin is present, the Vaadin and Flow
+ * versions and a hash of the classpath itself. The builder, the dotfile manager and the REST service all need these
+ * facts, so they are computed once per project and only dropped when JDT reports that the classpath changed.
+ * <p>
+ * Versions are read from the Maven {@code pom.properties} of the Vaadin jars, falling back to the jar manifest.
+ */
+public class ClasspathFingerprintCache implements IElementChangedListener {
+
+    private static final int CLASSPATH_CHANGED_FLAGS = IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED
+            | IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_CLOSED;
+
+    private static final String VAADIN_CORE_POM = "META-INF/maven/com.vaadin/vaadin-core/pom.properties";
+    private static final String VAADIN_POM = "META-INF/maven/com.vaadin/vaadin/pom.properties";
+    private static final String FLOW_SERVER_POM = "META-INF/maven/com.vaadin/flow-server/pom.properties";
+
+    private static final Pattern PLATFORM_JAR = Pattern.compile("vaadin-\\d.*\\.jar");
+
+    /** Used to detect Vaadin when it is not on the classpath as a jar, e.g. as a workspace project. */
+    private static final String COMPONENT_CLASS = "com.vaadin.flow.component.Component";
+
+    private static ClasspathFingerprintCache instance;
+
+    private final Map<IJavaProject, Entry> fingerprints = new ConcurrentHashMap<>();
+
+    public static synchronized ClasspathFingerprintCache getInstance() {
+        if (instance == null) {
+            instance = new ClasspathFingerprintCache();
+        }
+        return instance;
+    }
+
+    private ClasspathFingerprintCache() {
+        JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+    }
+
+    /**
+     * Stops tracking classpath changes and drops all cached fingerprints.
+     */
+    public static synchronized void dispose() {
+        if (instance != null) {
+            JavaCore.removeElementChangedListener(instance);
+            instance.fingerprints.clear();
+            instance = null;
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the resolved classpath of the project, computing it if the classpath changed since it
+     * was last requested.
+     *
+     * @param javaProject
+     *            the project
+     * @return the fingerprint, never {@code null}
+     * @throws JavaModelException
+     *             if the classpath cannot be resolved
+     */
+    public ClasspathFingerprint getFingerprint(IJavaProject javaProject) throws JavaModelException {
+        return fingerprints.computeIfAbsent(javaProject, k -> new Entry()).get(javaProject);
+    }
+
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+        for (IJavaElementDelta child : event.getDelta().getAffectedChildren()) {
+            IJavaElement element = child.getElement();
+            if (element.getElementType() != IJavaElement.JAVA_PROJECT) {
+                continue;
+            }
+            if (child.getKind() == IJavaElementDelta.REMOVED || (child.getFlags() & CLASSPATH_CHANGED_FLAGS) != 0) {
+                fingerprints.remove(element);
+            }
+            if ((child.getFlags() & IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED) != 0) {
+                CopilotEventBus.publishIfActive(CopilotEventBus.CLASSPATH_CHANGED, element.getElementName(),
+                        Collections.emptyMap());
+            }
+        }
+    }
+
+    /**
+     * The Vaadin related facts of a resolved classpath.
+     */
+    public static class ClasspathFingerprint {
+        private final boolean vaadinProject;
+        private final String vaadinVersion;
+        private final String flowVersion;
+        private final String hash;
+
+        ClasspathFingerprint(boolean vaadinProject, String vaadinVersion, String flowVersion, String hash) {
+            this.vaadinProject = vaadinProject;
+            this.vaadinVersion = vaadinVersion;
+            this.flowVersion = flowVersion;
+            this.hash = hash;
+        }
+
+        /**
+         * Returns whether Vaadin is on the classpath.
+         */
+        public boolean isVaadinProject() {
+            return vaadinProject;
+        }
+
+        /**
+         * Returns the Vaadin platform version, or {@code null} if it cannot be determined.
+         */
+        public String getVaadinVersion() {
+            return vaadinVersion;
+        }
+
+        /**
+         * Returns the Flow version, or {@code null} if it cannot be determined.
+         */
+        public String getFlowVersion() {
+            return flowVersion;
+        }
+
+        /**
+         * Returns a hash of the classpath entries and the size and modification time of their files.
+         */
+        public String getHash() {
+            return hash;
+        }
+    }
+
+    /**
+     * The fingerprint of one project. An entry that is invalidated while it is computed is simply replaced by a new
+     * one, so a stale result is never handed out after the change was reported.
+     */
+    private static class Entry {
+        private ClasspathFingerprint fingerprint;
+
+        synchronized ClasspathFingerprint get(IJavaProject javaProject) throws JavaModelException {
+            if (fingerprint == null) {
+                fingerprint = compute(javaProject);
+            }
+            return fingerprint;
+        }
+    }
+
+    private static ClasspathFingerprint compute(IJavaProject javaProject) throws JavaModelException {
+        IClasspathEntry[] classpath = javaProject.getResolvedClasspath(true);
+        MessageDigest digest = newDigest();
+        boolean vaadinProject = false;
+        String vaadinVersion = null;
+        String flowVersion = null;
+
+        for (IClasspathEntry entry : classpath) {
+            File file = entry.getEntryKind() == IClasspathEntry.CPE_LIBRARY ? toFile(entry.getPath()) : null;
+            digest.update((entry.getEntryKind() + ":" + entry.getPath().toPortableString()).getBytes(
+                    StandardCharsets.UTF_8));
+            if (file != null) {
+                digest.update((":" + file.length() + ":" + file.lastModified()).getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) '\n');
+
+            // The file name only decides which jars are worth opening, the versions come from their metadata
+            String fileName = entry.getPath().lastSegment();
+            if (fileName == null) {
+                continue;
+            }
+            boolean flowServer = fileName.startsWith("flow-server");
+            if (fileName.toLowerCase().contains("vaadin") || flowServer) {
+                vaadinProject = true;
+            }
+            if (file == null || !file.isFile()) {
+                continue;
+            }
+            if (vaadinVersion == null && fileName.startsWith("vaadin-core-")) {
+                vaadinVersion = readVersion(file, VAADIN_CORE_POM);
+            } else if (vaadinVersion == null && PLATFORM_JAR.matcher(fileName).matches()) {
+                // The com.vaadin:vaadin platform artifact, used instead of vaadin-core for commercial components
+                vaadinVersion = readVersion(file, VAADIN_POM);
+            } else if (flowVersion == null && flowServer) {
+                flowVersion = readVersion(file, FLOW_SERVER_POM);
+            }
+        }
+
+        if (!vaadinProject) {
+            // Vaadin may come from a workspace project or a jar with an unexpected name
+            vaadinProject = javaProject.findType(COMPONENT_CLASS) != null;
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        VaadinPluginLog.debug("Computed classpath fingerprint of " + javaProject.getElementName() + ": vaadin="
+                + vaadinProject + ", vaadinVersion=" + vaadinVersion + ", flowVersion=" + flowVersion);
+        return new ClasspathFingerprint(vaadinProject, vaadinVersion, flowVersion, hash);
+    }
+
+    /**
+     * Reads the version of a jar from its Maven metadata, falling back to the manifest.
+     */
+    private static String readVersion(File file, String pomPropertiesPath) {
+        try (JarFile jar = new JarFile(file)) {
+            ZipEntry pomProperties = jar.getEntry(pomPropertiesPath);
+            if (pomProperties != null) {
+                Properties properties = new Properties();
+                try (InputStream in = jar.getInputStream(pomProperties)) {
+                    properties.load(in);
+                }
+                String version = properties.getProperty("version");
+                if (version != null && !version.isBlank()) {
+                    return version.trim();
+                }
+            }
+            Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                Attributes attributes = manifest.getMainAttributes();
+                String version = attributes.getValue(Attributes.Name.IMPLEMENTATION_VERSION);
+                if (version == null) {
+                    version = attributes.getValue("Bundle-Version");
+                }
+                if (version != null && !version.isBlank()) {
+                    return version.trim();
+                }
+            }
+        } catch (IOException e) {
+            VaadinPluginLog.debug("Could not read version from " + file + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Resolves a library path, which is either a workspace path or a file system path.
+     */
+    private static File toFile(IPath path) {
+        IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(path);
+        if (resource != null && resource.getLocation() != null) {
+            return resource.getLocation().toFile();
+        }
+        return path.toFile();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.vaadin.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Content digests of the files Copilot writes to, used to recognize writes that would not change a file. Copilot
+ * often sends a file again with the content it already has; skipping those writes avoids a resource change, a build,
+ * an undo entry and, for projects using Spring devtools, an application restart.
+ * <p>
+ * A digest is only trusted while the file's modification stamp, size and time stamp on disk are those seen when the
+ * digest was taken, so edits made in an editor or outside the IDE are never missed. A resource change listener drops
+ * the digests of files that are changed or removed, so the cache only holds files whose digest is still current.
+ */
+public class ContentDigestCache implements IResourceChangeListener {
+
+    private static ContentDigestCache instance;
+
+    private final Map<IPath, Entry> entries = new ConcurrentHashMap<>();
+
+    public static synchronized ContentDigestCache getInstance() {
+        if (instance == null) {
+            instance = new ContentDigestCache();
+        }
+        return instance;
+    }
+
+    private ContentDigestCache() {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+    }
+
+    /**
+     * Stops tracking workspace changes and forgets all digests.
+     */
+    public static synchronized void dispose() {
+        if (instance != null) {
+            ResourcesPlugin.getWorkspace().removeResourceChangeListener(instance);
+            instance = null;
+        }
+    }
+
+    /**
+     * Returns whether the file already has exactly the given content. The file is only read if its size matches and
+     * its digest is not known yet.
+     */
+    public boolean hasContent(IFile file, byte[] content) throws CoreException {
+        return hasContent(file, content.length, () -> new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Returns whether the file already has exactly the given content. The content is only streamed, and the file only
+     * read, if the file has the same size.
+     *
+     * @param length
+     *            the length of the content in bytes
+     * @param content
+     *            opens a new stream of the content
+     */
+    public boolean hasContent(IFile file, long length, Supplier<InputStream> content) throws CoreException {
+        File diskFile = getDiskFile(file, length);
+        if (diskFile == null) {
+            return false;
+        }
+        byte[] digest;
+        try (InputStream in = content.get()) {
+            digest = digest(in);
+        } catch (IOException e) {
+            VaadinPluginLog.debug("Could not read the content for " + file.getFullPath() + ": " + e.getMessage());
+            return false;
+        }
+        return hasDigest(file, diskFile, length, digest);
+    }
+
+    /**
+     * Returns whether the file already has content with the given length and SHA-256 digest. The file is only read if
+     * its size matches and its digest is not known yet.
+     */
+    public boolean hasDigest(IFile file, long length, byte[] digest) throws CoreException {
+        File diskFile = getDiskFile(file, length);
+        return diskFile != null && hasDigest(file, diskFile, length, digest);
+    }
+
+    private boolean hasDigest(IFile file, File diskFile, long length, byte[] digest) throws CoreException {
+        Entry entry = entries.get(file.getFullPath());
+        if (entry != null && entry.matches(file, diskFile)) {
+            return Arrays.equals(entry.digest, digest);
+        }
+
+        long stamp = file.getModificationStamp();
+        long lastModified = diskFile.lastModified();
+        byte[] currentDigest;
+        try (InputStream in = file.getContents(true)) {
+            currentDigest = digest(in);
+        } catch (IOException e) {
+            VaadinPluginLog.debug("Could not read " + file.getFullPath() + ": " + e.getMessage());
+            return false;
+        }
+        entries.put(file.getFullPath(), new Entry(currentDigest, stamp, length, lastModified));
+        return Arrays.equals(currentDigest, digest);
+    }
+
+    /**
+     * Remembers the content just written to a file.
+     */
+    public void update(IFile file, byte[] content) {
+        update(file, digest(content), content.length);
+    }
+
+    /**
+     * Remembers the content just written to a file by its SHA-256 digest, taken while the content was written.
+     */
+    public void update(IFile file, byte[] digest, long length) {
+        File diskFile = getDiskFile(file);
+        if (diskFile == null || !file.exists()) {
+            return;
+        }
+        entries.put(file.getFullPath(),
+                new Entry(digest, file.getModificationStamp(), length, diskFile.lastModified()));
+    }
+
+    /** Number of files with a known digest. */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        IResourceDelta delta = event.getDelta();
+        if (delta == null || entries.isEmpty()) {
+            return;
+        }
+        try {
+            delta.accept(child -> {
+                if (child.getResource().getType() != IResource.FILE) {
+                    return true;
+                }
+                IPath path = child.getResource().getFullPath();
+                Entry entry = entries.get(path);
+                if (entry == null) {
+                    return false;
+                }
+                if (child.getKind() == IResourceDelta.REMOVED) {
+                    entries.remove(path);
+                } else if (child.getKind() == IResourceDelta.CHANGED
+                        && (child.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0) {
+                    // An entry taken after the change, e.g. by a write inside a workspace operation, is current
+                    IFile file = (IFile) child.getResource();
+                    if (entry.stamp != file.getModificationStamp()) {
+                        entries.remove(path, entry);
+                    }
+                }
+                return false;
+            });
+        } catch (CoreException e) {
+            VaadinPluginLog.debug("Could not process content digest changes: " + e.getMessage());
+        }
+    }
+
+    private static File getDiskFile(IFile file) {
+        IPath location = file.getLocation();
+        return location != null ? location.toFile() : null;
+    }
+
+    /**
+     * Returns the file on disk if it exists and has the given length, otherwise it cannot have the content.
+     */
+    private static File getDiskFile(IFile file, long length) {
+        if (!file.exists()) {
+            return null;
+        }
+        File diskFile = getDiskFile(file);
+        return diskFile != null && diskFile.length() == length ? diskFile : null;
+    }
+
+    private static byte[] digest(byte[] content) {
+        return newDigest().digest(content);
+    }
+
+    private static byte[] digest(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        private final byte[] digest;
+        private final long stamp;
+        private final long length;
+        private final long lastModified;
+
+        Entry(byte[] digest, long stamp, long length, long lastModified) {
+            this.digest = digest;
+            this.stamp = stamp;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(IFile file, File diskFile) {
+            return stamp == file.getModificationStamp() && length == diskFile.length()
+                    && lastModified == diskFile.lastModified();
+        }
+    }
+}
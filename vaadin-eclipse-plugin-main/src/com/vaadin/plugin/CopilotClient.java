@@ -1,13 +1,22 @@
 package com.vaadin.plugin;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
@@ -19,10 +28,20 @@ import com.vaadin.plugin.util.VaadinPluginLog;
  */
 public class CopilotClient {
 
+    /** Number of responses kept for conditional requests, the least recently used are dropped first. */
+    private static final int RESPONSE_CACHE_SIZE = 32;
+
     private final String endpoint;
     private final String projectBasePath;
     private final Gson gson = new Gson();
     private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final Map<String, JsonObject> responseCache = Collections
+            .synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, JsonObject> eldest) {
+                    return size() > RESPONSE_CACHE_SIZE;
+                }
+            });
 
     public CopilotClient(String endpoint, String projectBasePath) {
         this.endpoint = endpoint;
@@ -46,6 +65,21 @@ public class CopilotClient {
         return send("write", new Message.WriteFileMessage(path.toString(), undoLabel, content));
     }
 
+    public HttpResponse<String> patch(Path path, java.util.List<Message.TextEdit> edits, String baseHash,
+            String undoLabel) throws IOException, InterruptedException {
+        return send("patch", new Message.PatchFileMessage(path.toString(), undoLabel, baseHash, edits));
+    }
+
+    public HttpResponse<String> patch(Path path, String diff, String baseHash, String undoLabel)
+            throws IOException, InterruptedException {
+        return send("patch", new Message.PatchFileMessage(path.toString(), undoLabel, baseHash, diff));
+    }
+
+    public HttpResponse<String> batch(java.util.List<Message.BatchOperation> operations, String undoLabel)
+            throws IOException, InterruptedException {
+        return send("batch", new Message.BatchMessage(undoLabel, operations));
+    }
+
     public HttpResponse<String> restartApplication() throws IOException, InterruptedException {
         return send("restartApplication", new Message.RestartApplicationMessage());
     }
@@ -59,6 +93,25 @@ public class CopilotClient {
         return send("writeBase64", new Message.WriteFileMessage(path.toString(), undoLabel, content));
     }
 
+    /**
+     * Uploads raw binary content without base64 encoding it.
+     */
+    public HttpResponse<String> writeBinary(Path path, byte[] content, String undoLabel)
+            throws IOException, InterruptedException {
+        StringBuilder query = new StringBuilder("?command=writeBinary");
+        query.append("&projectBasePath=").append(URLEncoder.encode(projectBasePath, StandardCharsets.UTF_8));
+        query.append("&file=").append(URLEncoder.encode(path.toString(), StandardCharsets.UTF_8));
+        if (undoLabel != null) {
+            query.append("&undoLabel=").append(URLEncoder.encode(undoLabel, StandardCharsets.UTF_8));
+        }
+
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(endpoint + query))
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(content)).build();
+
+        return httpClient.send(request, CopilotClient::decodingBodyHandler);
+    }
+
     public HttpResponse<String> showInIde(Path path, int line, int column) throws IOException, InterruptedException {
         return send("showInIde", new Message.ShowInIdeMessage(path.toString(), line, column));
     }
@@ -96,17 +149,57 @@ public class CopilotClient {
     }
 
     public Optional<JsonObject> getVaadinComponents(boolean includeMethods) throws IOException, InterruptedException {
-        return sendForJson("getVaadinComponents", new Message.GetVaadinComponentsMessage(includeMethods));
+        return getVaadinComponents(new Message.GetVaadinComponentsMessage(includeMethods));
+    }
+
+    /**
+     * Gets Vaadin components using the filter and page parameters of the message. Pass the {@code nextCursor} of a
+     * response as {@code cursor} to get the next page.
+     */
+    public Optional<JsonObject> getVaadinComponents(Message.GetVaadinComponentsMessage message)
+            throws IOException, InterruptedException {
+        return sendForJson("getVaadinComponents", message);
     }
 
     public Optional<JsonObject> getVaadinEntities(boolean includeMethods) throws IOException, InterruptedException {
-        return sendForJson("getVaadinEntities", new Message.GetVaadinPersistenceMessage(includeMethods));
+        return getVaadinEntities(new Message.GetVaadinPersistenceMessage(includeMethods));
+    }
+
+    /**
+     * Gets JPA entities using the filter and page parameters of the message. Pass the {@code nextCursor} of a response
+     * as {@code cursor} to get the next page.
+     */
+    public Optional<JsonObject> getVaadinEntities(Message.GetVaadinPersistenceMessage message)
+            throws IOException, InterruptedException {
+        return sendForJson("getVaadinEntities", message);
     }
 
     public Optional<JsonObject> getVaadinSecurity() throws IOException, InterruptedException {
         return sendForJson("getVaadinSecurity", new Message.GetVaadinSecurityMessage());
     }
 
+    public Optional<JsonObject> getProjectSnapshot(boolean includeMethods) throws IOException, InterruptedException {
+        return sendForJson("getProjectSnapshot", new Message.GetProjectSnapshotMessage(includeMethods));
+    }
+
+    /**
+     * Opens the event stream of the project. The body is a stream of server-sent event lines, which ends when the
+     * plugin closes the connection.
+     *
+     * @param lastEventId
+     *            the id of the last event received before, to get the events missed since, or {@code null}
+     */
+    public HttpResponse<Stream<String>> openEventStream(String lastEventId) throws IOException, InterruptedException {
+        String query = "?projectBasePath=" + URLEncoder.encode(projectBasePath, StandardCharsets.UTF_8);
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint + CopilotRestService.EVENTS_PATH + query))
+                .header("Accept", "text/event-stream").GET();
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+    }
+
     /**
      * Generic send command method for tests.
      */
@@ -119,14 +212,45 @@ public class CopilotClient {
         String body = gson.toJson(message);
 
         HttpRequest request = HttpRequest.newBuilder().uri(URI.create(endpoint))
-                .header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body)).build();
+                .header("Content-Type", "application/json").header("Accept-Encoding", "gzip")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+
+        return httpClient.send(request, CopilotClient::decodingBodyHandler);
+    }
 
-        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    /**
+     * Reads the response body as a string, decompressing it if the plugin sent it gzip encoded.
+     */
+    private static HttpResponse.BodySubscriber<String> decodingBodyHandler(HttpResponse.ResponseInfo responseInfo) {
+        boolean gzip = responseInfo.headers().firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase)
+                .orElse(false);
+        if (!gzip) {
+            return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+        }
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), bytes -> {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
+    /**
+     * Sends a command and returns the JSON response. Responses carrying a stamp are cached per command and data; the
+     * next identical request sends the stamp along and reuses the cached response if the plugin reports it as not
+     * modified. Only the {@value #RESPONSE_CACHE_SIZE} most recently used responses are kept.
+     */
     private Optional<JsonObject> sendForJson(String command, Object dataCommand)
             throws IOException, InterruptedException {
-        HttpResponse<String> response = send(command, dataCommand);
+        JsonObject data = gson.toJsonTree(dataCommand).getAsJsonObject();
+        String cacheKey = command + ":" + data;
+        JsonObject cached = responseCache.get(cacheKey);
+        if (cached != null) {
+            data.addProperty("ifNoneMatch", cached.get("stamp").getAsString());
+        }
+
+        HttpResponse<String> response = send(command, data);
 
         if (response.statusCode() != 200) {
             VaadinPluginLog.error("Unexpected response (" + response.statusCode()
@@ -136,6 +260,14 @@ public class CopilotClient {
 
         if (response.body() != null && !response.body().isEmpty()) {
             JsonObject responseJson = JsonParser.parseString(response.body()).getAsJsonObject();
+            if (cached != null && responseJson.has("notModified") && responseJson.get("notModified").getAsBoolean()) {
+                return Optional.of(cached.deepCopy());
+            }
+            if (responseJson.has("stamp")) {
+                responseCache.put(cacheKey, responseJson.deepCopy());
+            } else {
+                responseCache.remove(cacheKey);
+            }
             return Optional.of(responseJson);
         }
 
@@ -128,6 +128,14 @@ public class CopilotDotfileManager implements IResourceChangeListener {
         }
 
         try {
+            // Check the resolved classpath first, its fingerprint is cached until the classpath changes
+            if (project.hasNature(JavaCore.NATURE_ID)) {
+                IJavaProject javaProject = JavaCore.create(project);
+                if (ClasspathFingerprintCache.getInstance().getFingerprint(javaProject).isVaadinProject()) {
+                    return true;
+                }
+            }
+
             // Check for pom.xml with Vaadin dependency
             IResource pomFile = project.findMember("pom.xml");
             if (pomFile != null && pomFile.exists()) {
@@ -157,18 +165,6 @@ public class CopilotDotfileManager implements IResourceChangeListener {
                     return true;
                 }
             }
-
-            // Check if it's a Java project with Vaadin classes
-            if (project.hasNature(JavaCore.NATURE_ID)) {
-                IJavaProject javaProject = JavaCore.create(project);
-                VaadinProjectAnalyzer analyzer = new VaadinProjectAnalyzer(javaProject);
-                // Check if there are any Vaadin routes (indicates a Vaadin project)
-                try {
-                    return !analyzer.findVaadinRoutes().isEmpty();
-                } catch (CoreException e) {
-                    // Ignore and continue checking
-                }
-            }
         } catch (Exception e) {
             // Ignore errors and assume not a Vaadin project
         }
@@ -197,14 +193,18 @@ public class CopilotDotfileManager implements IResourceChangeListener {
             String endpoint = System.getProperty("vaadin.copilot.endpoint", "http://localhost:0/copilot");
 
             // Get supported actions from CopilotRestService
-            String[] supportedActions = { "write", "writeBase64", "delete", "refresh", "showInIde", "undo", "redo",
-                    "getVaadinRoutes", "getVaadinComponents", "getVaadinEntities", "getVaadinSecurity",
-                    "getVaadinVersion", "getModulePaths", "compileFiles", "restartApplication", "reloadMavenModule",
-                    "heartbeat" };
+            String[] supportedActions = { "write", "writeBase64", "writeBinary", "patch", "delete", "batch",
+                    "refresh", "showInIde", "undo", "redo", "getVaadinRoutes", "getVaadinComponents",
+                    "getVaadinEntities", "getVaadinSecurity", "getProjectSnapshot", "getVaadinVersion",
+                    "getModulePaths", "compileFiles", "restartApplication", "reloadMavenModule", "heartbeat" };
 
             // Create properties content
             Properties props = new Properties();
             props.setProperty("endpoint", endpoint);
+            String unixSocketPath = System.getProperty("vaadin.copilot.unixSocketPath");
+            if (unixSocketPath != null) {
+                props.setProperty(CopilotUtil.UNIX_SOCKET_KEY, unixSocketPath);
+            }
             props.setProperty("ide", "eclipse");
             props.setProperty("version", PLUGIN_VERSION);
             props.setProperty("supportedActions", String.join(",", supportedActions));
@@ -0,0 +1,287 @@
+package com.vaadin.plugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Pushes IDE events to Copilot over server-sent event streams, so that clients do not have to poll for changes.
+ * <p>
+ * Events are published from the workspace, launch and Java model listeners and written to the connected streams by a
+ * single dispatcher thread. The dispatcher owns the subscriber list and a short history of recent events, which it
+ * replays to clients that reconnect with a {@code Last-Event-ID}. Listeners therefore never block on a client.
+ * <p>
+ * Event ids are assigned by the dispatcher as it takes events from the queue, so they increase in the order the events
+ * are sent even when several threads publish at once.
+ */
+public class CopilotEventBus {
+
+    public static final String FILE_CHANGED = "fileChanged";
+    public static final String BUILD_FINISHED = "buildFinished";
+    public static final String LAUNCH_STARTED = "launchStarted";
+    public static final String LAUNCH_TERMINATED = "launchTerminated";
+    public static final String CLASSPATH_CHANGED = "classpathChanged";
+    public static final String INDEX_CHANGED = "indexChanged";
+
+    private static final int HISTORY_SIZE = 256;
+    private static final int QUEUE_SIZE = 4096;
+    private static final long KEEPALIVE_SECONDS = 15;
+
+    private static volatile CopilotEventBus instance;
+
+    private final Gson gson = new Gson();
+    /** Id of the latest dispatched event, only incremented by the dispatcher thread. */
+    private final AtomicLong lastId = new AtomicLong();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private volatile boolean active;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>(QUEUE_SIZE);
+    private final Thread dispatcher;
+    private final CopilotEventSource source;
+
+    // Only accessed by the dispatcher thread
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final Deque<Event> history = new ArrayDeque<>();
+
+    public static synchronized CopilotEventBus getInstance() {
+        if (instance == null) {
+            instance = new CopilotEventBus();
+        }
+        return instance;
+    }
+
+    private CopilotEventBus() {
+        dispatcher = new Thread(this::dispatch, "Copilot-Events");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        source = new CopilotEventSource(this);
+        source.register();
+    }
+
+    /**
+     * Publishes an event if the bus exists. The bus is created when the first client connects, so listeners that are
+     * always registered use this to avoid creating it.
+     */
+    public static void publishIfActive(String type, String project, Map<String, Object> data) {
+        CopilotEventBus bus = instance;
+        if (bus != null) {
+            bus.publish(type, project, data);
+        }
+    }
+
+    /**
+     * Stops publishing events and closes all event streams.
+     */
+    public static synchronized void dispose() {
+        if (instance != null) {
+            instance.source.unregister();
+            instance.dispatcher.interrupt();
+            instance = null;
+        }
+    }
+
+    /**
+     * Returns whether a client has connected since the bus was created. Until then events are not recorded, and
+     * publishers can skip computing them. Afterwards they are kept, so that a reconnecting client gets what it missed.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /** Number of connected event streams. */
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * Publishes an event to all connected clients.
+     *
+     * @param type
+     *            the event type, e.g. {@link #FILE_CHANGED}
+     * @param project
+     *            the name of the project the event belongs to, or {@code null} for workspace wide events
+     * @param data
+     *            additional event data
+     */
+    public void publish(String type, String project, Map<String, Object> data) {
+        if (!active) {
+            return;
+        }
+        Map<String, Object> payload = new LinkedHashMap<>();
+        if (project != null) {
+            payload.put("project", project);
+        }
+        payload.putAll(data);
+        Event event = new Event(type, project, gson.toJson(payload));
+        if (!queue.offer(event)) {
+            VaadinPluginLog.warning("Copilot event queue is full, dropping " + type + " event");
+        }
+    }
+
+    /**
+     * Sends the response headers of an event stream and starts streaming events to the exchange.
+     *
+     * @param exchange
+     *            the exchange to write events to, closed when the client goes away
+     * @param project
+     *            only events of this project and workspace wide events are sent, {@code null} for all events
+     * @param lastEventId
+     *            the id of the last event the client received before reconnecting, or {@code null}
+     */
+    public void subscribe(HttpExchange exchange, String project, String lastEventId) throws IOException {
+        // Decided before the headers are sent, so nothing published after the client sees them is lost
+        active = true;
+        long after = lastId.get();
+        if (lastEventId != null) {
+            try {
+                after = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                VaadinPluginLog.debug("Ignoring invalid Last-Event-ID " + lastEventId);
+            }
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        subscriberCount.incrementAndGet();
+        if (!queue.offer(new Subscriber(exchange, project, after))) {
+            subscriberCount.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void dispatch() {
+        try {
+            while (true) {
+                Object item = queue.poll(KEEPALIVE_SECONDS, TimeUnit.SECONDS);
+                if (item instanceof Event) {
+                    Event event = (Event) item;
+                    event.assignId(lastId.incrementAndGet());
+                    history.addLast(event);
+                    if (history.size() > HISTORY_SIZE) {
+                        history.removeFirst();
+                    }
+                    subscribers.removeIf(subscriber -> !subscriber.send(event));
+                } else if (item instanceof Subscriber) {
+                    Subscriber subscriber = (Subscriber) item;
+                    if (replay(subscriber)) {
+                        subscribers.add(subscriber);
+                    }
+                } else {
+                    // Comment lines keep proxies from timing out and reveal closed connections
+                    subscribers.removeIf(subscriber -> !subscriber.write(": ping\n\n"));
+                }
+            }
+        } catch (InterruptedException e) {
+            // Disposed
+        } finally {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.close();
+            }
+            subscribers.clear();
+        }
+    }
+
+    private boolean replay(Subscriber subscriber) {
+        if (!subscriber.write(": connected\n\n")) {
+            return false;
+        }
+        for (Event event : history) {
+            if (!subscriber.send(event)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Event {
+        private final String type;
+        private final String project;
+        private final String json;
+        // Set by the dispatcher thread before the event is sent
+        private long id;
+        private byte[] frame;
+
+        Event(String type, String project, String json) {
+            this.type = type;
+            this.project = project;
+            this.json = json;
+        }
+
+        void assignId(long id) {
+            this.id = id;
+            this.frame = ("id: " + id + "\nevent: " + type + "\ndata: " + json + "\n\n")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private class Subscriber {
+        private final HttpExchange exchange;
+        private final OutputStream out;
+        private final String project;
+        private long lastSentId;
+        private boolean closed;
+
+        Subscriber(HttpExchange exchange, String project, long lastSentId) {
+            this.exchange = exchange;
+            this.out = exchange.getResponseBody();
+            this.project = project;
+            this.lastSentId = lastSentId;
+        }
+
+        /**
+         * Sends an event unless the client already has it or is not interested in it.
+         *
+         * @return {@code false} if the client went away
+         */
+        boolean send(Event event) {
+            if (event.id <= lastSentId) {
+                return true;
+            }
+            lastSentId = event.id;
+            if (project != null && event.project != null && !project.equals(event.project)) {
+                return true;
+            }
+            return write(event.frame);
+        }
+
+        boolean write(String comment) {
+            return write(comment.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private boolean write(byte[] bytes) {
+            try {
+                out.write(bytes);
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                VaadinPluginLog.debug("Copilot event stream closed: " + e.getMessage());
+                close();
+                return false;
+            }
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                subscriberCount.decrementAndGet();
+                exchange.close();
+            }
+        }
+    }
+}
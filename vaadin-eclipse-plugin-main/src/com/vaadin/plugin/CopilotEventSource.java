@@ -0,0 +1,172 @@
+package com.vaadin.plugin;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.ILaunch;
+import org.eclipse.debug.core.ILaunchConfiguration;
+import org.eclipse.debug.core.ILaunchesListener2;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Turns workspace and launch notifications into {@link CopilotEventBus} events: file changes, finished builds with
+ * their problem counts, and launches starting and terminating. Java model events are published by
+ * {@link ClasspathFingerprintCache} and {@link VaadinModelIndex}, which already listen to them.
+ */
+class CopilotEventSource implements IResourceChangeListener, ILaunchesListener2 {
+
+    /** Number of file events per resource delta above which a single summary event is sent instead. */
+    private static final int MAX_FILE_EVENTS = 200;
+
+    private final CopilotEventBus bus;
+
+    CopilotEventSource(CopilotEventBus bus) {
+        this.bus = bus;
+    }
+
+    void register() {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(this,
+                IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.POST_BUILD);
+        DebugPlugin.getDefault().getLaunchManager().addLaunchListener(this);
+    }
+
+    void unregister() {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+        DebugPlugin debugPlugin = DebugPlugin.getDefault();
+        if (debugPlugin != null) {
+            debugPlugin.getLaunchManager().removeLaunchListener(this);
+        }
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        if (!bus.isActive() || event.getDelta() == null) {
+            return;
+        }
+        try {
+            if (event.getType() == IResourceChangeEvent.POST_BUILD) {
+                publishBuildFinished(event.getDelta());
+            } else {
+                publishFileChanges(event.getDelta());
+            }
+        } catch (CoreException e) {
+            VaadinPluginLog.debug("Could not publish workspace event: " + e.getMessage());
+        }
+    }
+
+    private void publishFileChanges(IResourceDelta delta) throws CoreException {
+        Map<IResourceDelta, String> changes = new LinkedHashMap<>();
+        delta.accept(child -> {
+            IResource resource = child.getResource();
+            if (resource.isDerived() || resource.isTeamPrivateMember()) {
+                // Build output and version control metadata
+                return false;
+            }
+            if (resource.getType() == IResource.FILE) {
+                String kind = getKind(child);
+                if (kind != null && changes.size() <= MAX_FILE_EVENTS) {
+                    changes.put(child, kind);
+                }
+                return false;
+            }
+            return changes.size() <= MAX_FILE_EVENTS;
+        });
+
+        if (changes.size() > MAX_FILE_EVENTS) {
+            // A refresh or checkout, clients should reload everything instead of handling each file
+            Map<String, Object> data = new HashMap<>();
+            data.put("kind", "many");
+            bus.publish(CopilotEventBus.FILE_CHANGED, null, data);
+            return;
+        }
+        for (Map.Entry<IResourceDelta, String> change : changes.entrySet()) {
+            IFile file = (IFile) change.getKey().getResource();
+            Map<String, Object> data = new HashMap<>();
+            data.put("kind", change.getValue());
+            data.put("path", file.getLocation() != null ? file.getLocation().toOSString() : null);
+            data.put("projectPath", file.getProjectRelativePath().toPortableString());
+            bus.publish(CopilotEventBus.FILE_CHANGED, file.getProject().getName(), data);
+        }
+    }
+
+    private String getKind(IResourceDelta delta) {
+        switch (delta.getKind()) {
+        case IResourceDelta.ADDED:
+            return "added";
+        case IResourceDelta.REMOVED:
+            return "removed";
+        case IResourceDelta.CHANGED:
+            return (delta.getFlags() & IResourceDelta.CONTENT) != 0 ? "changed" : null;
+        default:
+            return null;
+        }
+    }
+
+    private void publishBuildFinished(IResourceDelta delta) throws CoreException {
+        for (IResourceDelta child : delta.getAffectedChildren()) {
+            if (!(child.getResource() instanceof IProject) || !child.getResource().isAccessible()) {
+                continue;
+            }
+            IProject project = (IProject) child.getResource();
+            int errors = 0;
+            int warnings = 0;
+            for (IMarker marker : project.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE)) {
+                int severity = marker.getAttribute(IMarker.SEVERITY, IMarker.SEVERITY_INFO);
+                if (severity == IMarker.SEVERITY_ERROR) {
+                    errors++;
+                } else if (severity == IMarker.SEVERITY_WARNING) {
+                    warnings++;
+                }
+            }
+            Map<String, Object> data = new HashMap<>();
+            data.put("errors", errors);
+            data.put("warnings", warnings);
+            bus.publish(CopilotEventBus.BUILD_FINISHED, project.getName(), data);
+        }
+    }
+
+    @Override
+    public void launchesAdded(ILaunch[] launches) {
+        publishLaunches(CopilotEventBus.LAUNCH_STARTED, launches);
+    }
+
+    @Override
+    public void launchesTerminated(ILaunch[] launches) {
+        publishLaunches(CopilotEventBus.LAUNCH_TERMINATED, launches);
+    }
+
+    @Override
+    public void launchesRemoved(ILaunch[] launches) {
+        // Removing a launch from the debug view is not interesting to clients
+    }
+
+    @Override
+    public void launchesChanged(ILaunch[] launches) {
+        // Process changes are covered by the terminated notification
+    }
+
+    private void publishLaunches(String type, ILaunch[] launches) {
+        if (!bus.isActive()) {
+            return;
+        }
+        for (ILaunch launch : launches) {
+            ILaunchConfiguration configuration = launch.getLaunchConfiguration();
+            Map<String, Object> data = new HashMap<>();
+            data.put("name", configuration != null ? configuration.getName() : null);
+            data.put("mode", launch.getLaunchMode());
+            bus.publish(type, null, data);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.vaadin.plugin;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Latency, throughput and error metrics of the Copilot commands, written in the Prometheus text format by the
+ * {@code /metrics} context of the REST service.
+ * <p>
+ * Latencies are kept in {@link LatencyHistogram}s and exported as summaries with fixed quantiles, since their bucket
+ * layout does not map to the few {@code le} buckets of a Prometheus histogram. Commands that are not supported are
+ * counted under {@value #OTHER_COMMAND}, so that clients cannot create an unbounded number of series.
+ */
+public class CopilotMetrics {
+
+    /** Label of commands that are not supported. */
+    public static final String OTHER_COMMAND = "other";
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final double MICROS_PER_SECOND = 1_000_000.0;
+
+    private static CopilotMetrics instance;
+
+    private final Set<String> knownCommands = Arrays.stream(CopilotUtil.getSupportedActions().split(","))
+            .collect(Collectors.toSet());
+    private final ConcurrentMap<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+
+    public static synchronized CopilotMetrics getInstance() {
+        if (instance == null) {
+            instance = new CopilotMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * Forgets all recorded values.
+     */
+    public static synchronized void dispose() {
+        instance = null;
+    }
+
+    /**
+     * Marks the start of a command.
+     *
+     * @return the handle to pass to {@link #finish(Sample, boolean)} when the command is done
+     */
+    public Sample start(String command) {
+        String name = command != null && knownCommands.contains(command) ? command : OTHER_COMMAND;
+        CommandMetrics metrics = commands.computeIfAbsent(name, key -> new CommandMetrics());
+        metrics.inFlight.incrementAndGet();
+        return new Sample(metrics, System.nanoTime());
+    }
+
+    /**
+     * Records the end of a command.
+     *
+     * @param failed
+     *            whether the command failed or answered with an error
+     */
+    public void finish(Sample sample, boolean failed) {
+        CommandMetrics metrics = sample.metrics;
+        metrics.latency.record((System.nanoTime() - sample.startNanos) / 1000);
+        metrics.inFlight.decrementAndGet();
+        if (failed) {
+            metrics.errors.increment();
+        }
+    }
+
+    /** The latencies of a command in microseconds, or {@code null} if it was never run. */
+    public LatencyHistogram getLatency(String command) {
+        CommandMetrics metrics = commands.get(command);
+        return metrics != null ? metrics.latency : null;
+    }
+
+    /** Number of failed runs of a command. */
+    public long getErrorCount(String command) {
+        CommandMetrics metrics = commands.get(command);
+        return metrics != null ? metrics.errors.sum() : 0;
+    }
+
+    /** Number of runs of a command that have not finished yet. */
+    public int getInFlight(String command) {
+        CommandMetrics metrics = commands.get(command);
+        return metrics != null ? metrics.inFlight.get() : 0;
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     *
+     * @param workerPool
+     *            the pool of the REST service whose load is included, or {@code null}
+     */
+    public void write(Writer out, CopilotWorkerPool workerPool) throws IOException {
+        Map<String, CommandMetrics> sorted = new TreeMap<>(commands);
+
+        out.write("# HELP vaadin_copilot_command_duration_seconds Time spent handling Copilot commands.\n");
+        out.write("# TYPE vaadin_copilot_command_duration_seconds summary\n");
+        for (Map.Entry<String, CommandMetrics> entry : sorted.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            String label = "command=\"" + entry.getKey() + "\"";
+            for (double quantile : QUANTILES) {
+                writeSample(out, "vaadin_copilot_command_duration_seconds",
+                        label + ",quantile=\"" + quantile + "\"", seconds(latency.getValueAtQuantile(quantile)));
+            }
+            writeSample(out, "vaadin_copilot_command_duration_seconds_sum", label, seconds(latency.getSum()));
+            writeSample(out, "vaadin_copilot_command_duration_seconds_count", label,
+                    Long.toString(latency.getCount()));
+        }
+
+        out.write("# HELP vaadin_copilot_command_duration_max_seconds Longest time spent handling a command.\n");
+        out.write("# TYPE vaadin_copilot_command_duration_max_seconds gauge\n");
+        for (Map.Entry<String, CommandMetrics> entry : sorted.entrySet()) {
+            writeSample(out, "vaadin_copilot_command_duration_max_seconds", "command=\"" + entry.getKey() + "\"",
+                    seconds(entry.getValue().latency.getMax()));
+        }
+
+        out.write("# HELP vaadin_copilot_commands_total Copilot commands handled.\n");
+        out.write("# TYPE vaadin_copilot_commands_total counter\n");
+        for (Map.Entry<String, CommandMetrics> entry : sorted.entrySet()) {
+            writeSample(out, "vaadin_copilot_commands_total", "command=\"" + entry.getKey() + "\"",
+                    Long.toString(entry.getValue().latency.getCount()));
+        }
+
+        out.write("# HELP vaadin_copilot_command_errors_total Copilot commands that failed.\n");
+        out.write("# TYPE vaadin_copilot_command_errors_total counter\n");
+        for (Map.Entry<String, CommandMetrics> entry : sorted.entrySet()) {
+            writeSample(out, "vaadin_copilot_command_errors_total", "command=\"" + entry.getKey() + "\"",
+                    Long.toString(entry.getValue().errors.sum()));
+        }
+
+        out.write("# HELP vaadin_copilot_commands_in_flight Copilot commands currently being handled.\n");
+        out.write("# TYPE vaadin_copilot_commands_in_flight gauge\n");
+        for (Map.Entry<String, CommandMetrics> entry : sorted.entrySet()) {
+            writeSample(out, "vaadin_copilot_commands_in_flight", "command=\"" + entry.getKey() + "\"",
+                    Integer.toString(entry.getValue().inFlight.get()));
+        }
+
+        if (workerPool != null) {
+            writeSingle(out, "vaadin_copilot_workers_active", "gauge", "Workers currently handling a request.",
+                    workerPool.getActiveCount());
+            writeSingle(out, "vaadin_copilot_worker_queue_depth", "gauge", "Requests waiting for a free worker.",
+                    workerPool.getQueueDepth());
+            writeSingle(out, "vaadin_copilot_requests_rejected_total", "counter",
+                    "Requests rejected because all workers were busy.", workerPool.getRejectedCount());
+        }
+
+        CopilotUndoManager undoManager = CopilotUndoManager.getInstance();
+        writeSingle(out, "vaadin_copilot_undo_retained_bytes", "gauge",
+                "Bytes retained in memory for undoing and redoing Copilot edits.", undoManager.getRetainedBytes());
+        writeSingle(out, "vaadin_copilot_undo_spilled_bytes", "gauge", "Bytes of undo contents spilled to disk.",
+                undoManager.getSpilledBytes());
+        writeSingle(out, "vaadin_copilot_undo_referenced_bytes", "gauge",
+                "Bytes the undo contents would take without sharing identical contents.",
+                undoManager.getReferencedBytes());
+        out.write("# HELP vaadin_copilot_undo_file_retained_bytes Bytes retained for undoing edits of a file.\n");
+        out.write("# TYPE vaadin_copilot_undo_file_retained_bytes gauge\n");
+        for (Map.Entry<String, Long> entry : undoManager.getRetainedBytesPerFile().entrySet()) {
+            String label = "file=\"" + escapeLabel(entry.getKey()) + "\"";
+            writeSample(out, "vaadin_copilot_undo_file_retained_bytes", label, Long.toString(entry.getValue()));
+        }
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void writeSingle(Writer out, String name, String type, String help, long value)
+            throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " " + type + "\n");
+        writeSample(out, name, null, Long.toString(value));
+    }
+
+    private static void writeSample(Writer out, String name, String labels, String value) throws IOException {
+        out.write(name);
+        if (labels != null) {
+            out.write("{" + labels + "}");
+        }
+        out.write(" " + value + "\n");
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / MICROS_PER_SECOND);
+    }
+
+    /**
+     * A command that is being handled.
+     */
+    public static class Sample {
+        private final CommandMetrics metrics;
+        private final long startNanos;
+
+        Sample(CommandMetrics metrics, long startNanos) {
+            this.metrics = metrics;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static class CommandMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicInteger inFlight = new AtomicInteger();
+    }
+}
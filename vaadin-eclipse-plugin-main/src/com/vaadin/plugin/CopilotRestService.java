@@ -1,24 +1,33 @@
 package com.vaadin.plugin;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.debug.core.DebugPlugin;
 import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.ILaunchConfiguration;
@@ -26,7 +35,6 @@ import org.eclipse.debug.core.ILaunchManager;
 import org.eclipse.debug.ui.DebugUITools;
 import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.launching.IJavaLaunchConfigurationConstants;
 import org.eclipse.jface.text.BadLocationException;
@@ -39,18 +47,33 @@ import org.eclipse.ui.ide.IDE;
 import org.eclipse.ui.texteditor.ITextEditor;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import com.vaadin.plugin.ClasspathFingerprintCache.ClasspathFingerprint;
+import com.vaadin.plugin.util.ContentStreams;
 import com.vaadin.plugin.util.VaadinPluginLog;
 
 /**
  * Starts a small HTTP server for Copilot integration.
  */
 public class CopilotRestService {
+    /** Path of the event stream, relative to the main endpoint. */
+    public static final String EVENTS_PATH = "/events";
+
+    /** Path of the Prometheus metrics, relative to the server root like the health check. */
+    public static final String METRICS_PATH = "/metrics";
+
     private HttpServer server;
+    private UnixSocketServer unixSocketServer;
+    private CopilotWorkerPool workerPool;
     private String endpoint;
 
     /** Start the embedded HTTP server on a random port. */
@@ -59,18 +82,27 @@ public class CopilotRestService {
             // Bind to localhost (127.0.0.1) explicitly
             server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
             String contextPath = "/vaadin/" + CopilotUtil.getServiceName();
-            server.createContext(contextPath, new Handler());
-
-            // Add a simple health check endpoint for testing
-            server.createContext("/health", exchange -> {
+            // Handle requests on a bounded pool so slow commands don't block each other
+            workerPool = new CopilotWorkerPool();
+            // A project waiting for its lock must leave a worker for the others
+            Handler handler = new Handler(new ProjectCommandLocks(workerPool.getPoolSize() - 1));
+            EventStreamHandler eventStreamHandler = new EventStreamHandler();
+            HttpHandler healthHandler = exchange -> {
                 String response = "OK";
                 exchange.sendResponseHeaders(200, response.length());
                 try (OutputStream os = exchange.getResponseBody()) {
                     os.write(response.getBytes());
                 }
-            });
+            };
+            HttpHandler metricsHandler = this::handleMetrics;
+            server.createContext(contextPath, handler);
+            server.createContext(contextPath + EVENTS_PATH, eventStreamHandler);
+
+            // Add a simple health check endpoint for testing
+            server.createContext("/health", healthHandler);
+            server.createContext(METRICS_PATH, metricsHandler);
 
-            server.setExecutor(null); // creates a default executor
+            server.setExecutor(workerPool);
             server.start();
 
             // Get the actual port after binding
@@ -78,9 +110,27 @@ public class CopilotRestService {
             endpoint = "http://localhost:" + actualPort + contextPath;
             VaadinPluginLog.info("Copilot REST service started successfully!");
             VaadinPluginLog.info("  Main endpoint: " + endpoint);
+            VaadinPluginLog.info("  Event stream: " + endpoint + EVENTS_PATH);
             VaadinPluginLog.info("  Health check: http://localhost:" + actualPort + "/health");
+            VaadinPluginLog.info("  Metrics: http://localhost:" + actualPort + METRICS_PATH);
             VaadinPluginLog.info("  Server is listening on port " + actualPort);
 
+            if (UnixSocketServer.isEnabled()) {
+                UnixSocketServer socketServer = new UnixSocketServer("copilot-" + actualPort + ".sock", workerPool);
+                socketServer.createContext(contextPath, handler);
+                socketServer.createContext(contextPath + EVENTS_PATH, eventStreamHandler);
+                socketServer.createContext("/health", healthHandler);
+                socketServer.createContext(METRICS_PATH, metricsHandler);
+                try {
+                    socketServer.start();
+                    unixSocketServer = socketServer;
+                    VaadinPluginLog.info("  Unix socket: " + socketServer.getPath());
+                } catch (IOException | RuntimeException e) {
+                    // Clients fall back to TCP when no socket is advertised
+                    VaadinPluginLog.warning("Could not bind Copilot Unix socket: " + e.getMessage());
+                }
+            }
+
             // Create dotfiles for all open projects
             createDotFilesForOpenProjects();
         } catch (IOException e) {
@@ -91,10 +141,18 @@ public class CopilotRestService {
 
     /** Stop the server if it is running. */
     public void stop() {
+        if (unixSocketServer != null) {
+            unixSocketServer.stop();
+            unixSocketServer = null;
+        }
         if (server != null) {
             server.stop(0);
             server = null;
         }
+        if (workerPool != null) {
+            workerPool.shutdown();
+            workerPool = null;
+        }
     }
 
     /** Returns the full endpoint URL. */
@@ -102,6 +160,36 @@ public class CopilotRestService {
         return endpoint;
     }
 
+    /**
+     * Returns the path of the Unix domain socket serving the same endpoint, or {@code null} if the socket transport is
+     * disabled or could not be bound. Requests over the socket use the path of {@link #getEndpoint()}.
+     */
+    public String getUnixSocketPath() {
+        return unixSocketServer != null ? unixSocketServer.getPath().toString() : null;
+    }
+
+    /** Returns the worker pool handling requests, or {@code null} if the server is not running. */
+    public CopilotWorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Writes the command metrics and the load of the worker pool in the Prometheus text format.
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (BufferedWriter out = new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            CopilotMetrics.getInstance().write(out, workerPool);
+        }
+    }
+
     /** Create dotfiles for all open Eclipse projects */
     private void createDotFilesForOpenProjects() {
         try {
@@ -109,7 +197,7 @@ public class CopilotRestService {
             for (IProject project : projects) {
                 if (project.isOpen() && project.getLocation() != null) {
                     String projectPath = project.getLocation().toPortableString();
-                    CopilotUtil.saveDotFile(projectPath, server.getAddress().getPort());
+                    CopilotUtil.saveDotFile(projectPath, server.getAddress().getPort(), getUnixSocketPath());
                 }
             }
         } catch (Exception e) {
@@ -117,42 +205,133 @@ public class CopilotRestService {
         }
     }
 
+    /**
+     * Streams {@link CopilotEventBus} events to a client as server-sent events. The request only registers the stream;
+     * events are written by the bus, so an open stream does not hold on to a worker thread.
+     * <p>
+     * An optional {@code projectBasePath} query parameter limits the stream to the events of that project and
+     * workspace wide events. Clients reconnecting with a {@code Last-Event-ID} header get the events they missed, as
+     * far as they are still in the history of the bus.
+     */
+    private static class EventStreamHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                exchange.close();
+                return;
+            }
+            if (CopilotWorkerPool.isRejected()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+
+            String projectName = null;
+            String projectBasePath = Handler.parseQuery(exchange.getRequestURI().getRawQuery()).get("projectBasePath");
+            if (projectBasePath != null) {
+                IProject project = ProjectLocationIndex.getInstance().findProject(projectBasePath);
+                if (project == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                projectName = project.getName();
+            }
+
+            CopilotEventBus.getInstance().subscribe(exchange, projectName,
+                    exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+        }
+    }
+
     private static class Handler implements HttpHandler {
+        /** Analyzer commands that answer "not modified" when the client sends the stamp it already has. */
+        private static final Set<String> CONDITIONAL_COMMANDS = Set.of("getVaadinRoutes", "getVaadinVersion",
+                "getVaadinComponents", "getVaadinEntities", "getVaadinSecurity", "getProjectSnapshot");
+
+        private static final int RESPONSE_BUFFER_SIZE = 16 * 1024;
+
         private final Gson gson = new Gson();
+        private final ProjectCommandLocks locks;
+
+        Handler(ProjectCommandLocks locks) {
+            this.locks = locks;
+        }
 
         /**
          * Creates a JSON error response with the given error message.
          *
          * @param errorMessage
          *            The error message to include in the response
-         * @return JSON string representing the error response
+         * @return the error response
          */
-        private String createErrorResponse(String errorMessage) {
+        private Map<String, Object> createErrorResponse(String errorMessage) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", errorMessage);
-            return gson.toJson(errorResponse);
+            return errorResponse;
         }
 
         /**
          * Creates a JSON success response with status "ok".
          *
-         * @return JSON string representing the success response
+         * @return the success response
+         */
+        private Map<String, Object> createSuccessResponse() {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "ok");
+            return response;
+        }
+
+        /**
+         * Creates the response of a write that was skipped because the file already had the content.
          */
-        private String createSuccessResponse() {
+        private Map<String, Object> createSkippedResponse(IFile file) {
+            VaadinPluginLog.debug("Skipping write of unchanged file " + file.getFullPath());
             Map<String, Object> response = new HashMap<>();
             response.put("status", "ok");
-            return createResponse(response);
+            response.put("skipped", true);
+            response.put("reason", "unchanged");
+            return response;
         }
 
         /**
-         * Creates a JSON response with custom key-value pairs.
+         * Creates a JSON response telling the client that its cached result with the given stamp is still valid.
          *
-         * @param responseData
-         *            The data to include in the response
-         * @return JSON string representing the response
+         * @param stamp
+         *            The current analysis stamp
+         * @return the not modified response
          */
-        private String createResponse(Map<String, Object> responseData) {
-            return gson.toJson(responseData);
+        private Map<String, Object> createNotModifiedResponse(String stamp) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("notModified", true);
+            response.put("stamp", stamp);
+            return response;
+        }
+
+        /**
+         * Returns the stamp identifying the current analysis results of a project, or {@code null} if the project is
+         * not a Java project. The stamp changes with the Java model and the classpath of the project.
+         */
+        private String getAnalysisStamp(IProject project) {
+            try {
+                if (project.hasNature(JavaCore.NATURE_ID)) {
+                    return VaadinModelIndex.getInstance().getVersionStamp(JavaCore.create(project));
+                }
+            } catch (CoreException e) {
+                VaadinPluginLog.debug("Could not compute analysis stamp: " + e.getMessage());
+            }
+            return null;
+        }
+
+        /**
+         * Adds the analysis stamp to a response, if there is one. Handlers drop the stamp when the analysis failed, so
+         * that clients do not keep the incomplete result.
+         */
+        private void putStamp(Map<String, Object> response, String stamp) {
+            if (stamp != null) {
+                response.put("stamp", stamp);
+            }
         }
 
         @Override
@@ -162,39 +341,209 @@ public class CopilotRestService {
                 return;
             }
 
-            InputStream is = exchange.getRequestBody();
-            String body = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-
-            VaadinPluginLog.debug("Received Copilot request: " + body);
+            if (CopilotWorkerPool.isRejected()) {
+                // All workers are busy and the queue is full, fail fast instead of piling up
+                VaadinPluginLog.warning("Copilot request rejected, all workers are busy");
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendResponse(exchange, 503, createErrorResponse("Server busy, try again later"));
+                return;
+            }
 
+            Map<String, Object> response;
             try {
-                JsonObject requestJson = JsonParser.parseString(body).getAsJsonObject();
-                String command = requestJson.get("command").getAsString();
-                String projectBasePath = requestJson.get("projectBasePath").getAsString();
-                JsonObject data = requestJson.has("data")
-                        ? requestJson.get("data").getAsJsonObject()
-                        : new JsonObject();
-
-                String response = handleCommand(command, projectBasePath, data);
-
-                byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
-                exchange.getResponseHeaders().set("Content-Type", "application/json");
-                exchange.sendResponseHeaders(200, responseBytes.length);
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(responseBytes);
-                }
+                response = isBinaryUpload(exchange) ? handleBinaryRequest(exchange) : handleJsonRequest(exchange);
+            } catch (ProjectBusyException e) {
+                VaadinPluginLog.warning("Copilot request rejected: " + e.getMessage());
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendResponse(exchange, 503, createErrorResponse(e.getMessage()));
+                return;
             } catch (Exception e) {
                 VaadinPluginLog.error("Error in HTTP request handler", e);
-                byte[] errorBytes = createErrorResponse(e.getMessage()).getBytes(StandardCharsets.UTF_8);
-                exchange.getResponseHeaders().set("Content-Type", "application/json");
-                exchange.sendResponseHeaders(500, errorBytes.length);
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(errorBytes);
+                sendResponse(exchange, 500, createErrorResponse(e.getMessage()));
+                return;
+            }
+            // Failures while sending mean the client went away, the server closes the exchange
+            sendResponse(exchange, 200, response);
+        }
+
+        /**
+         * Writes a JSON response directly to the exchange. The body is sent with chunked transfer encoding, and gzip
+         * compressed if the client accepts it, so large responses are never held as a string or byte array.
+         */
+        private void sendResponse(HttpExchange exchange, int status, Map<String, Object> response) throws IOException {
+            boolean gzip = acceptsGzip(exchange);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(status, 0);
+
+            OutputStream body = exchange.getResponseBody();
+            if (gzip) {
+                body = new GZIPOutputStream(body, RESPONSE_BUFFER_SIZE);
+            }
+            // Closing the writer finishes the gzip stream and completes the exchange
+            try (JsonWriter writer = new JsonWriter(new BufferedWriter(
+                    new OutputStreamWriter(body, StandardCharsets.UTF_8), RESPONSE_BUFFER_SIZE))) {
+                gson.toJson(response, response.getClass(), writer);
+            }
+        }
+
+        private boolean acceptsGzip(HttpExchange exchange) {
+            for (String header : exchange.getRequestHeaders().getOrDefault("Accept-Encoding", List.of())) {
+                for (String coding : header.split(",")) {
+                    String[] parts = coding.trim().split(";");
+                    if ("gzip".equalsIgnoreCase(parts[0].trim())
+                            && !(parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?"))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Handles a JSON command request. The envelope is stream-parsed instead of buffering the whole body, as file
+         * contents can be large.
+         */
+        private Map<String, Object> handleJsonRequest(HttpExchange exchange) throws IOException {
+            String command = null;
+            String projectBasePath = null;
+            JsonObject data = new JsonObject();
+            try (JsonReader reader = new JsonReader(
+                    new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                    case "command":
+                        command = reader.nextString();
+                        break;
+                    case "projectBasePath":
+                        projectBasePath = reader.nextString();
+                        break;
+                    case "data":
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                        } else {
+                            data = JsonParser.parseReader(reader).getAsJsonObject();
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                    }
                 }
+                reader.endObject();
+            }
+            if (command == null || projectBasePath == null) {
+                throw new IllegalArgumentException("Request must contain command and projectBasePath");
+            }
+
+            VaadinPluginLog.debug("Received Copilot request: " + command);
+
+            return handleCommand(command, projectBasePath, data, null);
+        }
+
+        /**
+         * Handles a raw binary upload. The target file and undo label are passed in the query string or in URL encoded
+         * headers, and the request body is the file content.
+         */
+        private Map<String, Object> handleBinaryRequest(HttpExchange exchange) {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String command = params.getOrDefault("command", "writeBinary");
+            String projectBasePath = getParameter(exchange, params, "projectBasePath", "X-Copilot-Project-Base-Path");
+            if (projectBasePath == null) {
+                throw new IllegalArgumentException("Request must contain projectBasePath");
+            }
+
+            JsonObject data = new JsonObject();
+            String file = getParameter(exchange, params, "file", "X-Copilot-File");
+            if (file != null) {
+                data.addProperty("file", file);
+            }
+            String undoLabel = getParameter(exchange, params, "undoLabel", "X-Copilot-Undo-Label");
+            if (undoLabel != null) {
+                data.addProperty("undoLabel", undoLabel);
+            }
+
+            VaadinPluginLog.debug("Received Copilot binary request: " + command);
+
+            return handleCommand(command, projectBasePath, data, exchange.getRequestBody());
+        }
+
+        private boolean isBinaryUpload(HttpExchange exchange) {
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            return contentType != null && contentType.toLowerCase().startsWith("application/octet-stream");
+        }
+
+        /**
+         * Parses a raw URL query string into decoded parameters.
+         */
+        private static Map<String, String> parseQuery(String rawQuery) {
+            Map<String, String> params = new HashMap<>();
+            if (rawQuery == null || rawQuery.isEmpty()) {
+                return params;
+            }
+            for (String pair : rawQuery.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = eq >= 0 ? pair.substring(0, eq) : pair;
+                String value = eq >= 0 ? pair.substring(eq + 1) : "";
+                params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+            return params;
+        }
+
+        /**
+         * Returns a request parameter from the query string, falling back to a URL encoded request header.
+         */
+        private String getParameter(HttpExchange exchange, Map<String, String> params, String name, String header) {
+            String value = params.get(name);
+            if (value == null) {
+                String headerValue = exchange.getRequestHeaders().getFirst(header);
+                if (headerValue != null) {
+                    value = URLDecoder.decode(headerValue, StandardCharsets.UTF_8);
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Runs a command and records its latency and outcome in {@link CopilotMetrics}.
+         *
+         * @param binaryContent
+         *            raw request body for binary upload commands, {@code null} for JSON requests
+         */
+        private Map<String, Object> handleCommand(String command, String projectBasePath, JsonObject data,
+                InputStream binaryContent) {
+            CopilotMetrics.Sample sample = CopilotMetrics.getInstance().start(command);
+            boolean failed = true;
+            ProjectCommandLocks.Permit permit = null;
+            try {
+                ProjectCommandLocks.Mode mode = ProjectCommandLocks.getMode(command);
+                IProject project = mode != ProjectCommandLocks.Mode.NONE ? findProject(projectBasePath) : null;
+                if (project != null) {
+                    permit = locks.acquire(project.getName(), mode);
+                    if (permit == null) {
+                        throw new ProjectBusyException("Project " + project.getName() + " is busy, try again later");
+                    }
+                }
+                Map<String, Object> response = dispatchCommand(command, projectBasePath, data, binaryContent);
+                failed = response.containsKey("error");
+                return response;
+            } catch (InterruptedException e) {
+                // The service is stopping
+                Thread.currentThread().interrupt();
+                return createErrorResponse("Interrupted while waiting for project " + projectBasePath);
+            } finally {
+                if (permit != null) {
+                    permit.close();
+                }
+                CopilotMetrics.getInstance().finish(sample, failed);
             }
         }
 
-        private String handleCommand(String command, String projectBasePath, JsonObject data) {
+        private Map<String, Object> dispatchCommand(String command, String projectBasePath, JsonObject data,
+                InputStream binaryContent) {
             VaadinPluginLog.debug("Handling command: " + command + " for project: " + projectBasePath);
 
             // Special case for getModulePaths - it should return an empty project structure
@@ -210,13 +559,28 @@ public class CopilotRestService {
                 return createErrorResponse("Project not found: " + projectBasePath);
             }
 
+            // Analysis results that the client already has are not computed again
+            if (CONDITIONAL_COMMANDS.contains(command) && data.has("ifNoneMatch")) {
+                String stamp = getAnalysisStamp(project);
+                if (stamp != null && stamp.equals(data.get("ifNoneMatch").getAsString())) {
+                    VaadinPluginLog.debug(command + " not modified since " + stamp);
+                    return createNotModifiedResponse(stamp);
+                }
+            }
+
             switch (command) {
             case "write":
                 return handleWrite(project, data);
             case "writeBase64":
                 return handleWriteBase64(project, data);
+            case "writeBinary":
+                return handleWriteBinary(project, data, binaryContent);
+            case "patch":
+                return handlePatch(project, data);
             case "delete":
                 return handleDelete(project, data);
+            case "batch":
+                return handleBatch(project, data);
             case "undo":
                 return handleUndo(project, data);
             case "redo":
@@ -239,6 +603,8 @@ public class CopilotRestService {
                 return handleGetVaadinEntities(project, data);
             case "getVaadinSecurity":
                 return handleGetVaadinSecurity(project);
+            case "getProjectSnapshot":
+                return handleGetProjectSnapshot(project, data);
             case "reloadMavenModule":
                 return handleReloadMavenModule(project, data);
             case "heartbeat":
@@ -249,28 +615,10 @@ public class CopilotRestService {
         }
 
         private IProject findProject(String projectBasePath) {
-            IProject[] projects = ResourcesPlugin.getWorkspace().getRoot().getProjects();
-            for (IProject project : projects) {
-                if (project.getLocation() != null) {
-                    // Compare both portable string (forward slashes) and OS string (native
-                    // separators)
-                    String projectLocationPortable = project.getLocation().toPortableString();
-                    String projectLocationOS = project.getLocation().toOSString();
-
-                    // Normalize the input path for comparison
-                    String normalizedBasePath = projectBasePath.replace('\\', '/');
-
-                    if (projectLocationPortable.equals(projectBasePath)
-                            || projectLocationPortable.equals(normalizedBasePath)
-                            || projectLocationOS.equals(projectBasePath)) {
-                        return project;
-                    }
-                }
-            }
-            return null;
+            return ProjectLocationIndex.getInstance().findProject(projectBasePath);
         }
 
-        private String handleWrite(IProject project, JsonObject data) {
+        private Map<String, Object> handleWrite(IProject project, JsonObject data) {
             try {
                 String fileName = data.get("file").getAsString();
                 String content = data.get("content").getAsString();
@@ -300,16 +648,17 @@ public class CopilotRestService {
 
                 // Execute file write operation - no UI thread needed for file operations
                 try {
-                    // Get old content for undo if file exists
-                    String oldContent = "";
-                    if (finalFile.exists()) {
-                        try (java.io.InputStream is = finalFile.getContents()) {
-                            oldContent = new String(is.readAllBytes(), "UTF-8");
-                        }
+                    long length = ContentStreams.utf8Length(finalContent);
+                    if (ContentDigestCache.getInstance().hasContent(finalFile, length,
+                            () -> ContentStreams.utf8(finalContent))) {
+                        return createSkippedResponse(finalFile);
                     }
 
-                    java.io.ByteArrayInputStream stream = new java.io.ByteArrayInputStream(
-                            finalContent.getBytes("UTF-8"));
+                    // Get old content for undo if file exists
+                    byte[] oldContent = readContents(finalFile);
+                    // Encode while writing, keeping the encoded bytes for undo and hashing them in the same pass
+                    ContentStreams.CapturingInputStream stream = ContentStreams
+                            .capturing(ContentStreams.utf8(finalContent), length);
 
                     if (finalFile.exists()) {
                         // Update existing file
@@ -323,8 +672,10 @@ public class CopilotRestService {
                     // Refresh the file in workspace
                     finalFile.refreshLocal(IResource.DEPTH_ZERO, null);
 
-                    // Record operation for undo/redo
-                    CopilotUndoManager.getInstance().recordOperation(finalFile, oldContent, finalContent, undoLabel);
+                    // Record operation for undo/redo, the history only keeps a delta of the encoded content
+                    CopilotUndoManager.getInstance().recordOperation(finalFile, oldContent, stream.getBytes(),
+                            stream.getDigest(), undoLabel);
+                    ContentDigestCache.getInstance().update(finalFile, stream.getDigest(), length);
 
                 } catch (Exception e) {
                     VaadinPluginLog.error("Error writing file: " + e.getMessage(), e);
@@ -339,7 +690,7 @@ public class CopilotRestService {
             }
         }
 
-        private String handleWriteBase64(IProject project, JsonObject data) {
+        private Map<String, Object> handleWriteBase64(IProject project, JsonObject data) {
             try {
                 String fileName = data.get("file").getAsString();
                 String base64Content = data.get("content").getAsString();
@@ -364,23 +715,26 @@ public class CopilotRestService {
                     return createErrorResponse("File not found in project: " + fileName);
                 }
 
+                if (!ContentStreams.isBase64(base64Content)) {
+                    return createErrorResponse("Invalid base64 content for file: " + fileName);
+                }
+
                 final IFile finalFile = file;
                 final String finalBase64Content = base64Content;
 
                 // Execute file write operation - no UI thread needed
                 try {
-                    // Get old content for undo if file exists
-                    String oldContent = "";
-                    if (finalFile.exists()) {
-                        try (java.io.InputStream is = finalFile.getContents()) {
-                            byte[] oldBytes = is.readAllBytes();
-                            oldContent = java.util.Base64.getEncoder().encodeToString(oldBytes);
-                        }
+                    long length = ContentStreams.base64DecodedLength(finalBase64Content);
+                    if (ContentDigestCache.getInstance().hasContent(finalFile, length,
+                            () -> ContentStreams.base64Decoded(finalBase64Content))) {
+                        return createSkippedResponse(finalFile);
                     }
 
-                    // Decode base64 content
-                    byte[] decodedBytes = java.util.Base64.getDecoder().decode(finalBase64Content);
-                    java.io.ByteArrayInputStream stream = new java.io.ByteArrayInputStream(decodedBytes);
+                    // Get old content for undo if file exists
+                    byte[] oldContent = readContents(finalFile);
+                    // Decode base64 content on the fly while writing, keeping the raw bytes for undo and their digest
+                    ContentStreams.CapturingInputStream stream = ContentStreams
+                            .capturing(ContentStreams.base64Decoded(finalBase64Content), length);
 
                     if (finalFile.exists()) {
                         // Update existing file
@@ -394,9 +748,10 @@ public class CopilotRestService {
                     // Refresh the file in workspace
                     finalFile.refreshLocal(IResource.DEPTH_ZERO, null);
 
-                    // For binary files, store the base64 content directly
-                    CopilotUndoManager.getInstance().recordOperation(finalFile, oldContent, finalBase64Content,
-                            undoLabel, true);
+                    // For binary files, keep the raw bytes as undo snapshots
+                    CopilotUndoManager.getInstance().recordOperation(finalFile, oldContent, stream.getBytes(),
+                            stream.getDigest(), undoLabel);
+                    ContentDigestCache.getInstance().update(finalFile, stream.getDigest(), length);
 
                 } catch (Exception e) {
                     VaadinPluginLog.error("Error writing base64 file: " + e.getMessage(), e);
@@ -411,7 +766,130 @@ public class CopilotRestService {
             }
         }
 
-        private String handleDelete(IProject project, JsonObject data) {
+        private Map<String, Object> handleWriteBinary(IProject project, JsonObject data, InputStream content) {
+            try {
+                if (content == null) {
+                    return createErrorResponse("writeBinary requires an application/octet-stream request body");
+                }
+                if (!data.has("file")) {
+                    return createErrorResponse("Missing file parameter");
+                }
+                String fileName = data.get("file").getAsString();
+                String undoLabel = data.has("undoLabel") ? data.get("undoLabel").getAsString() : null;
+
+                VaadinPluginLog.debug("WriteBinary command for project: " + project.getName() + ", file: " + fileName);
+
+                IFile file = resolveProjectFile(project, fileName);
+                if (file == null) {
+                    return createErrorResponse("File not found in project: " + fileName);
+                }
+
+                try {
+                    // The body is read and hashed once, the unchanged check and the undo snapshot need the bytes
+                    // before writing
+                    ContentStreams.CapturingInputStream body = ContentStreams.capturing(content, 0);
+                    body.transferTo(OutputStream.nullOutputStream());
+                    byte[] newContent = body.getBytes();
+                    byte[] newDigest = body.getDigest();
+                    if (ContentDigestCache.getInstance().hasDigest(file, newContent.length, newDigest)) {
+                        return createSkippedResponse(file);
+                    }
+
+                    // Get old content for undo if file exists
+                    byte[] oldContent = readContents(file);
+                    java.io.ByteArrayInputStream stream = new java.io.ByteArrayInputStream(newContent);
+
+                    if (file.exists()) {
+                        file.setContents(stream, true, true, null);
+                    } else {
+                        createParentFolders(file);
+                        file.create(stream, true, null);
+                    }
+
+                    file.refreshLocal(IResource.DEPTH_ZERO, null);
+
+                    CopilotUndoManager.getInstance().recordOperation(file, oldContent, newContent, newDigest,
+                            undoLabel);
+                    ContentDigestCache.getInstance().update(file, newDigest, newContent.length);
+
+                } catch (Exception e) {
+                    VaadinPluginLog.error("Error writing binary file: " + e.getMessage(), e);
+                    return createErrorResponse(e.getMessage());
+                }
+
+                return createSuccessResponse();
+
+            } catch (Exception e) {
+                VaadinPluginLog.error("Error in writeBinary handler: " + e.getMessage(), e);
+                return createErrorResponse(e.getMessage());
+            }
+        }
+
+        private Map<String, Object> handlePatch(IProject project, JsonObject data) {
+            try {
+                if (!data.has("file")) {
+                    return createErrorResponse("Missing file parameter");
+                }
+                String fileName = data.get("file").getAsString();
+                String undoLabel = data.has("undoLabel") ? data.get("undoLabel").getAsString() : null;
+                String baseHash = data.has("baseHash") ? data.get("baseHash").getAsString() : null;
+
+                VaadinPluginLog.debug("Patch command for project: " + project.getName() + ", file: " + fileName);
+
+                IFile file = resolveProjectFile(project, fileName);
+                if (file == null) {
+                    return createErrorResponse("File not found in project: " + fileName);
+                }
+                if (!file.exists()) {
+                    return createErrorResponse("File does not exist: " + fileName);
+                }
+
+                Function<String, List<TextPatch.Replacement>> edits;
+                if (data.has("edits")) {
+                    List<TextPatch.Replacement> replacements = new ArrayList<>();
+                    for (JsonElement element : data.getAsJsonArray("edits")) {
+                        JsonObject edit = element.getAsJsonObject();
+                        replacements.add(new TextPatch.Replacement(edit.get("offset").getAsInt(),
+                                edit.has("length") ? edit.get("length").getAsInt() : 0,
+                                edit.has("text") ? edit.get("text").getAsString() : ""));
+                    }
+                    edits = text -> replacements;
+                } else if (data.has("diff")) {
+                    String diff = data.get("diff").getAsString();
+                    edits = text -> TextPatch.parseUnifiedDiff(text, diff);
+                } else {
+                    return createErrorResponse("Missing edits or diff parameter");
+                }
+
+                TextPatch.Result result;
+                try {
+                    result = TextPatch.apply(file, edits, baseHash);
+                } catch (IllegalStateException e) {
+                    // The client has to read the file again and compute new edits
+                    Map<String, Object> response = createErrorResponse(e.getMessage());
+                    response.put("conflict", true);
+                    return response;
+                }
+                if (!result.isChanged()) {
+                    return createSkippedResponse(file);
+                }
+
+                CopilotUndoManager.getInstance().recordTextEdits(file, result, undoLabel);
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("status", "ok");
+                response.put("hash", result.getNewHash());
+                response.put("editor", result.isInEditor());
+                response.put("saved", result.isSaved());
+                return response;
+
+            } catch (Exception e) {
+                VaadinPluginLog.error("Error in patch handler: " + e.getMessage(), e);
+                return createErrorResponse(e.getMessage());
+            }
+        }
+
+        private Map<String, Object> handleDelete(IProject project, JsonObject data) {
             try {
                 String fileName = data.get("file").getAsString();
 
@@ -443,17 +921,15 @@ public class CopilotRestService {
                 // Execute file delete operation - no UI thread needed
                 try {
                     // Get content for undo before deleting
-                    String oldContent = "";
-                    try (java.io.InputStream is = finalFile.getContents()) {
-                        oldContent = new String(is.readAllBytes(), "UTF-8");
-                    }
+                    byte[] oldContent = readContents(finalFile);
 
                     finalFile.delete(true, null);
                     VaadinPluginLog.info("File deleted: " + fileName);
 
                     // Record delete as setting content to empty (can be undone by recreating with
                     // old content)
-                    CopilotUndoManager.getInstance().recordOperation(finalFile, oldContent, "", "Delete " + fileName);
+                    CopilotUndoManager.getInstance().recordOperation(finalFile, oldContent, new byte[0],
+                            "Delete " + fileName);
 
                 } catch (Exception e) {
                     VaadinPluginLog.error("Error deleting file: " + e.getMessage(), e);
@@ -468,7 +944,84 @@ public class CopilotRestService {
             }
         }
 
-        private String handleUndo(IProject project, JsonObject data) {
+        private Map<String, Object> handleBatch(IProject project, JsonObject data) {
+            try {
+                if (!data.has("operations") || !data.get("operations").isJsonArray()) {
+                    return createErrorResponse("Missing operations array");
+                }
+                JsonArray operations = data.get("operations").getAsJsonArray();
+                String undoLabel = data.has("undoLabel") ? data.get("undoLabel").getAsString() : null;
+
+                VaadinPluginLog.debug("Batch command for project: " + project.getName() + ", operations: "
+                        + operations.size());
+
+                // Validate all operations before touching any file
+                List<BatchOperation> batch = new ArrayList<>();
+                for (JsonElement element : operations) {
+                    JsonObject operation = element.getAsJsonObject();
+                    String command = operation.get("command").getAsString();
+                    String fileName = operation.get("file").getAsString();
+                    if (!"write".equals(command) && !"writeBase64".equals(command) && !"delete".equals(command)) {
+                        return createErrorResponse("Unsupported batch command: " + command);
+                    }
+                    IFile file = resolveProjectFile(project, fileName);
+                    if (file == null) {
+                        return createErrorResponse("File not found in project: " + fileName);
+                    }
+                    String content = operation.has("content") ? operation.get("content").getAsString() : "";
+                    if ("writeBase64".equals(command) && !ContentStreams.isBase64(content)) {
+                        return createErrorResponse("Invalid base64 content for file: " + fileName);
+                    }
+                    batch.add(new BatchOperation(command, file, content));
+                }
+
+                // Apply everything in one workspace operation so there is a single resource delta and build
+                List<CopilotUndoManager.FileChange> changes = new ArrayList<>();
+                List<BatchOperation> applied = new ArrayList<>();
+                IWorkspaceRunnable runnable = monitor -> {
+                    for (BatchOperation operation : batch) {
+                        try {
+                            changes.add(operation.apply());
+                            applied.add(operation);
+                        } catch (Exception e) {
+                            rollback(applied);
+                            throw new CoreException(new org.eclipse.core.runtime.Status(IStatus.ERROR,
+                                    "vaadin-eclipse-plugin", "Failed to apply batch operation on "
+                                            + operation.file.getLocation() + ": " + e.getMessage(),
+                                    e));
+                        }
+                    }
+                };
+                ResourcesPlugin.getWorkspace().run(runnable, project, IWorkspace.AVOID_UPDATE, null);
+
+                // The whole batch is undone and redone as one step
+                CopilotUndoManager.getInstance().recordOperations(changes, undoLabel);
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("status", "ok");
+                response.put("applied", changes.size());
+                return response;
+
+            } catch (Exception e) {
+                VaadinPluginLog.error("Error in batch handler: " + e.getMessage(), e);
+                return createErrorResponse(e.getMessage());
+            }
+        }
+
+        /**
+         * Restores the files changed so far by a failed batch, newest first.
+         */
+        private void rollback(List<BatchOperation> applied) {
+            for (int i = applied.size() - 1; i >= 0; i--) {
+                try {
+                    applied.get(i).revert();
+                } catch (Exception e) {
+                    VaadinPluginLog.error("Failed to roll back batch operation: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        private Map<String, Object> handleUndo(IProject project, JsonObject data) {
             VaadinPluginLog.debug("Undo command for project: " + project.getName());
 
             try {
@@ -487,18 +1040,18 @@ public class CopilotRestService {
                 if (!performed) {
                     response.put("message", "No undo operations available for specified files");
                 }
-                return createResponse(response);
+                return response;
 
             } catch (Exception e) {
                 VaadinPluginLog.error("Error performing undo: " + e.getMessage(), e);
                 Map<String, Object> response = new HashMap<>();
                 response.put("performed", false);
                 response.put("error", e.getMessage());
-                return createResponse(response);
+                return response;
             }
         }
 
-        private String handleRedo(IProject project, JsonObject data) {
+        private Map<String, Object> handleRedo(IProject project, JsonObject data) {
             VaadinPluginLog.debug("Redo command for project: " + project.getName());
 
             try {
@@ -517,18 +1070,18 @@ public class CopilotRestService {
                 if (!performed) {
                     response.put("message", "No redo operations available for specified files");
                 }
-                return createResponse(response);
+                return response;
 
             } catch (Exception e) {
                 VaadinPluginLog.error("Error performing redo: " + e.getMessage(), e);
                 Map<String, Object> response = new HashMap<>();
                 response.put("performed", false);
                 response.put("error", e.getMessage());
-                return createResponse(response);
+                return response;
             }
         }
 
-        private String handleRefresh(IProject project) {
+        private Map<String, Object> handleRefresh(IProject project) {
             try {
                 VaadinPluginLog.debug("Refresh command for project: " + project.getName());
 
@@ -551,7 +1104,7 @@ public class CopilotRestService {
             }
         }
 
-        private String handleShowInIde(IProject project, JsonObject data) {
+        private Map<String, Object> handleShowInIde(IProject project, JsonObject data) {
             try {
                 String fileName = data.get("file").getAsString();
                 int line = data.has("line") ? data.get("line").getAsInt() : 0;
@@ -592,7 +1145,7 @@ public class CopilotRestService {
                     Map<String, Object> response = new HashMap<>();
                     response.put("status", "ok"); // Still return success for testing
                     response.put("message", "Operation would open " + fileName + " at line " + finalLine);
-                    return createResponse(response);
+                    return response;
                 }
 
                 PlatformUI.getWorkbench().getDisplay().asyncExec(() -> {
@@ -643,7 +1196,7 @@ public class CopilotRestService {
             }
         }
 
-        private String handleGetModulePaths(String projectBasePath) {
+        private Map<String, Object> handleGetModulePaths(String projectBasePath) {
             VaadinPluginLog.debug("GetModulePaths command for project path: " + projectBasePath);
 
             Map<String, Object> response = new HashMap<>();
@@ -659,7 +1212,7 @@ public class CopilotRestService {
                 projectInfo.put("basePath", projectBasePath);
                 projectInfo.put("modules", modules);
                 response.put("project", projectInfo);
-                return createResponse(response);
+                return response;
             }
 
             try {
@@ -727,22 +1280,17 @@ public class CopilotRestService {
                 modules.add(module);
 
                 // Check for nested projects (modules)
-                IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-                for (IProject p : root.getProjects()) {
-                    if (p.isOpen() && !p.equals(project)) {
-                        IPath pLocation = p.getLocation();
-                        IPath projectLocation = project.getLocation();
-                        if (pLocation != null && projectLocation != null && projectLocation.isPrefixOf(pLocation)) {
-                            // This is a nested module
-                            Map<String, Object> nestedModule = new HashMap<>();
-                            nestedModule.put("name", p.getName());
-
-                            List<String> nestedContentRoots = new ArrayList<>();
-                            nestedContentRoots.add(pLocation.toOSString());
-                            nestedModule.put("contentRoots", nestedContentRoots);
-
-                            modules.add(nestedModule);
-                        }
+                for (IProject p : ProjectLocationIndex.getInstance().findNestedProjects(project)) {
+                    if (p.isOpen()) {
+                        // This is a nested module
+                        Map<String, Object> nestedModule = new HashMap<>();
+                        nestedModule.put("name", p.getName());
+
+                        List<String> nestedContentRoots = new ArrayList<>();
+                        nestedContentRoots.add(p.getLocation().toOSString());
+                        nestedModule.put("contentRoots", nestedContentRoots);
+
+                        modules.add(nestedModule);
                     }
                 }
 
@@ -754,10 +1302,10 @@ public class CopilotRestService {
             projectInfo.put("modules", modules);
             response.put("project", projectInfo);
 
-            return createResponse(response);
+            return response;
         }
 
-        private String handleCompileFiles(IProject project, JsonObject data) {
+        private Map<String, Object> handleCompileFiles(IProject project, JsonObject data) {
             VaadinPluginLog.debug("CompileFiles command for project: " + project.getName());
 
             try {
@@ -778,7 +1326,7 @@ public class CopilotRestService {
             }
         }
 
-        private String handleRestartApplication(IProject project, JsonObject data) {
+        private Map<String, Object> handleRestartApplication(IProject project, JsonObject data) {
             VaadinPluginLog.debug("RestartApplication command for project: " + project.getName());
 
             try {
@@ -873,7 +1421,7 @@ public class CopilotRestService {
                     Map<String, Object> response = new HashMap<>();
                     response.put("status", "ok");
                     response.put("message", "Application restarted");
-                    return createResponse(response);
+                    return response;
                 } else {
                     // No configuration found - this is OK, just log it
                     VaadinPluginLog.info("No launch configuration found for project: " + project.getName());
@@ -881,7 +1429,7 @@ public class CopilotRestService {
                     Map<String, Object> response = new HashMap<>();
                     response.put("status", "ok");
                     response.put("message", "No launch configuration found to restart");
-                    return createResponse(response);
+                    return response;
                 }
 
             } catch (Exception e) {
@@ -890,156 +1438,246 @@ public class CopilotRestService {
             }
         }
 
-        private String handleGetVaadinRoutes(IProject project) {
+        private Map<String, Object> handleGetVaadinRoutes(IProject project) {
             VaadinPluginLog.debug("GetVaadinRoutes command for project: " + project.getName());
 
+            String stamp = getAnalysisStamp(project);
             List<Map<String, Object>> routes = new ArrayList<>();
 
             try {
                 if (project.hasNature(JavaCore.NATURE_ID)) {
                     IJavaProject javaProject = JavaCore.create(project);
-                    VaadinProjectAnalyzer analyzer = new VaadinProjectAnalyzer(javaProject);
-                    routes = analyzer.findVaadinRoutes();
+                    routes = VaadinModelIndex.getInstance().getRoutes(javaProject);
                     VaadinPluginLog.info("Found " + routes.size() + " Vaadin routes");
                 }
             } catch (Exception e) {
                 VaadinPluginLog.error("Error getting Vaadin routes: " + e.getMessage(), e);
+                stamp = null;
             }
 
             Map<String, Object> response = new HashMap<>();
             response.put("routes", routes);
-            return createResponse(response);
+            putStamp(response, stamp);
+            return response;
         }
 
-        private String handleGetVaadinVersion(IProject project) {
+        private Map<String, Object> handleGetVaadinVersion(IProject project) {
             VaadinPluginLog.debug("GetVaadinVersion command for project: " + project.getName());
 
+            String stamp = getAnalysisStamp(project);
+            String vaadinVersion = null;
+            String flowVersion = null;
             try {
                 // Check if it's a Java project
-                if (!project.hasNature(JavaCore.NATURE_ID)) {
-                    Map<String, Object> response = new HashMap<>();
-                    response.put("version", "N/A");
-                    return createResponse(response);
-                }
-
-                IJavaProject javaProject = JavaCore.create(project);
-                IClasspathEntry[] classpathEntries = javaProject.getResolvedClasspath(true);
-
-                // Look for Vaadin jars in classpath
-                String vaadinVersion = null;
-                for (IClasspathEntry entry : classpathEntries) {
-                    if (entry.getEntryKind() == IClasspathEntry.CPE_LIBRARY) {
-                        String jarPath = entry.getPath().toString();
-
-                        // Check for vaadin-core or flow-server jars
-                        if (jarPath.contains("vaadin-core-") || jarPath.contains("flow-server-")) {
-                            // Extract version from jar name (e.g., vaadin-core-24.1.0.jar)
-                            int lastDash = jarPath.lastIndexOf('-');
-                            int dotJar = jarPath.lastIndexOf(".jar");
-                            if (lastDash > 0 && dotJar > lastDash) {
-                                vaadinVersion = jarPath.substring(lastDash + 1, dotJar);
-                                break;
-                            }
-                        }
-                    }
-                }
-
-                // If not found by jar name, try to find VaadinService class and check its
-                // package
-                if (vaadinVersion == null) {
-                    try {
-                        IType vaadinServiceType = javaProject.findType("com.vaadin.flow.server.VaadinService");
-                        if (vaadinServiceType != null && vaadinServiceType.exists()) {
-                            // Found VaadinService, but couldn't determine version
-                            vaadinVersion = "Unknown";
-                        }
-                    } catch (Exception e) {
-                        // Type not found
-                    }
+                if (project.hasNature(JavaCore.NATURE_ID)) {
+                    ClasspathFingerprint fingerprint = ClasspathFingerprintCache.getInstance()
+                            .getFingerprint(JavaCore.create(project));
+                    vaadinVersion = getVersion(fingerprint);
+                    flowVersion = fingerprint.getFlowVersion();
                 }
-
-                Map<String, Object> response = new HashMap<>();
-                response.put("version", vaadinVersion != null ? vaadinVersion : "N/A");
-                return createResponse(response);
-
             } catch (Exception e) {
                 VaadinPluginLog.error("Error getting Vaadin version: " + e.getMessage(), e);
-                Map<String, Object> response = new HashMap<>();
-                response.put("version", "N/A");
-                return createResponse(response);
+                stamp = null;
             }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("version", vaadinVersion != null ? vaadinVersion : "N/A");
+            if (flowVersion != null) {
+                response.put("flowVersion", flowVersion);
+            }
+            putStamp(response, stamp);
+            return response;
+        }
+
+        /**
+         * Returns the Vaadin version of a classpath. Projects using Flow without the platform report the Flow version.
+         *
+         * @return the version, "Unknown" if Vaadin is present but its version cannot be determined, or {@code null}
+         */
+        private String getVersion(ClasspathFingerprint fingerprint) {
+            if (fingerprint.getVaadinVersion() != null) {
+                return fingerprint.getVaadinVersion();
+            } else if (fingerprint.getFlowVersion() != null) {
+                return fingerprint.getFlowVersion();
+            }
+            return fingerprint.isVaadinProject() ? "Unknown" : null;
         }
 
-        private String handleGetVaadinComponents(IProject project, JsonObject data) {
+        private Map<String, Object> handleGetVaadinComponents(IProject project, JsonObject data) {
             VaadinPluginLog.debug("GetVaadinComponents command for project: " + project.getName());
 
             boolean includeMethods = data.has("includeMethods") && data.get("includeMethods").getAsBoolean();
+            ResultQuery query;
+            try {
+                query = ResultQuery.fromJson(data);
+            } catch (IllegalArgumentException e) {
+                return createErrorResponse(e.getMessage());
+            }
+            String stamp = getAnalysisStamp(project);
             List<Map<String, Object>> components = new ArrayList<>();
+            ResultQuery.Page page = null;
 
             try {
                 if (project.hasNature(JavaCore.NATURE_ID)) {
                     IJavaProject javaProject = JavaCore.create(project);
-                    VaadinProjectAnalyzer analyzer = new VaadinProjectAnalyzer(javaProject);
-                    components = analyzer.findVaadinComponents(includeMethods);
+                    VaadinModelIndex index = VaadinModelIndex.getInstance();
+                    if (includeMethods && !query.isEmpty()) {
+                        // Filter and page first, so that method signatures are only built for the returned components
+                        components = index.getComponents(javaProject, false);
+                        page = query.apply(components, "class");
+                        page = page.withItems(index.addComponentMethods(javaProject, page.getItems()));
+                    } else {
+                        components = index.getComponents(javaProject, includeMethods);
+                    }
                     VaadinPluginLog.info("Found " + components.size() + " Vaadin components");
                 }
             } catch (Exception e) {
                 VaadinPluginLog.error("Error getting Vaadin components: " + e.getMessage(), e);
+                stamp = null;
+                page = null;
             }
 
             Map<String, Object> response = new HashMap<>();
-            response.put("components", components);
-            return createResponse(response);
+            if (page != null) {
+                putPage(response, "components", page);
+            } else {
+                putPage(response, "components", components, query, "class");
+            }
+            putStamp(response, stamp);
+            return response;
         }
 
-        private String handleGetVaadinEntities(IProject project, JsonObject data) {
+        private Map<String, Object> handleGetVaadinEntities(IProject project, JsonObject data) {
             VaadinPluginLog.debug("GetVaadinEntities command for project: " + project.getName());
 
             boolean includeMethods = data.has("includeMethods") && data.get("includeMethods").getAsBoolean();
+            ResultQuery query;
+            try {
+                query = ResultQuery.fromJson(data);
+            } catch (IllegalArgumentException e) {
+                return createErrorResponse(e.getMessage());
+            }
+            String stamp = getAnalysisStamp(project);
             List<Map<String, Object>> entities = new ArrayList<>();
 
             try {
                 if (project.hasNature(JavaCore.NATURE_ID)) {
                     IJavaProject javaProject = JavaCore.create(project);
-                    VaadinProjectAnalyzer analyzer = new VaadinProjectAnalyzer(javaProject);
-                    entities = analyzer.findEntities(includeMethods);
+                    entities = VaadinModelIndex.getInstance().getEntities(javaProject, includeMethods);
                     VaadinPluginLog.info("Found " + entities.size() + " JPA entities");
                 }
             } catch (Exception e) {
                 VaadinPluginLog.error("Error getting Vaadin entities: " + e.getMessage(), e);
+                stamp = null;
             }
 
             Map<String, Object> response = new HashMap<>();
-            response.put("entities", entities);
-            return createResponse(response);
+            putPage(response, "entities", entities, query, "classname");
+            putStamp(response, stamp);
+            return response;
+        }
+
+        /**
+         * Puts the results into the response, filtered and paged as requested. Paged responses also hold the number of
+         * matching results and, unless it is the last page, the cursor of the next page.
+         */
+        private void putPage(Map<String, Object> response, String key, List<Map<String, Object>> items,
+                ResultQuery query, String classKey) {
+            if (query.isEmpty()) {
+                response.put(key, items);
+                return;
+            }
+            putPage(response, key, query.apply(items, classKey));
         }
 
-        private String handleGetVaadinSecurity(IProject project) {
+        private void putPage(Map<String, Object> response, String key, ResultQuery.Page page) {
+            response.put(key, page.getItems());
+            response.put("total", page.getTotal());
+            if (page.getNextCursor() != null) {
+                response.put("nextCursor", page.getNextCursor());
+            }
+        }
+
+        private Map<String, Object> handleGetVaadinSecurity(IProject project) {
             VaadinPluginLog.debug("GetVaadinSecurity command for project: " + project.getName());
 
+            String stamp = getAnalysisStamp(project);
             List<Map<String, Object>> security = new ArrayList<>();
             List<Map<String, Object>> userDetails = new ArrayList<>();
 
             try {
                 if (project.hasNature(JavaCore.NATURE_ID)) {
                     IJavaProject javaProject = JavaCore.create(project);
-                    VaadinProjectAnalyzer analyzer = new VaadinProjectAnalyzer(javaProject);
-                    security = analyzer.findSecurityConfigurations();
-                    userDetails = analyzer.findUserDetailsServices();
+                    VaadinModelIndex index = VaadinModelIndex.getInstance();
+                    security = index.getSecurityConfigurations(javaProject);
+                    userDetails = index.getUserDetailsServices(javaProject);
                     VaadinPluginLog.info("Found " + security.size() + " security configs and " + userDetails.size()
                             + " user detail services");
                 }
             } catch (Exception e) {
                 VaadinPluginLog.error("Error getting Vaadin security: " + e.getMessage(), e);
+                stamp = null;
             }
 
             Map<String, Object> response = new HashMap<>();
             response.put("security", security);
             response.put("userDetails", userDetails);
-            return createResponse(response);
+            putStamp(response, stamp);
+            return response;
+        }
+
+        /**
+         * Returns everything Copilot asks for on startup in one response: routes, components, entities, security
+         * configurations and the Vaadin and Flow versions. The stamp changes whenever any of these may have changed.
+         */
+        private Map<String, Object> handleGetProjectSnapshot(IProject project, JsonObject data) {
+            VaadinPluginLog.debug("GetProjectSnapshot command for project: " + project.getName());
+
+            boolean includeMethods = data.has("includeMethods") && data.get("includeMethods").getAsBoolean();
+            Map<String, Object> response = new HashMap<>();
+            List<Map<String, Object>> routes = new ArrayList<>();
+            List<Map<String, Object>> components = new ArrayList<>();
+            List<Map<String, Object>> entities = new ArrayList<>();
+            List<Map<String, Object>> security = new ArrayList<>();
+            List<Map<String, Object>> userDetails = new ArrayList<>();
+            String vaadinVersion = null;
+            String flowVersion = null;
+            // Read the stamp first, a change while collecting then results in a newer stamp next time
+            String stamp = getAnalysisStamp(project);
+
+            try {
+                if (project.hasNature(JavaCore.NATURE_ID)) {
+                    IJavaProject javaProject = JavaCore.create(project);
+                    VaadinModelIndex index = VaadinModelIndex.getInstance();
+                    routes = index.getRoutes(javaProject);
+                    components = index.getComponents(javaProject, includeMethods);
+                    entities = index.getEntities(javaProject, includeMethods);
+                    security = index.getSecurityConfigurations(javaProject);
+                    userDetails = index.getUserDetailsServices(javaProject);
+                    ClasspathFingerprint fingerprint = ClasspathFingerprintCache.getInstance()
+                            .getFingerprint(javaProject);
+                    vaadinVersion = getVersion(fingerprint);
+                    flowVersion = fingerprint.getFlowVersion();
+                }
+            } catch (Exception e) {
+                VaadinPluginLog.error("Error getting project snapshot: " + e.getMessage(), e);
+                stamp = null;
+            }
+
+            response.put("routes", routes);
+            response.put("components", components);
+            response.put("entities", entities);
+            response.put("security", security);
+            response.put("userDetails", userDetails);
+            response.put("version", vaadinVersion != null ? vaadinVersion : "N/A");
+            if (flowVersion != null) {
+                response.put("flowVersion", flowVersion);
+            }
+            putStamp(response, stamp);
+            return response;
         }
 
-        private String handleReloadMavenModule(IProject project, JsonObject data) {
+        private Map<String, Object> handleReloadMavenModule(IProject project, JsonObject data) {
             VaadinPluginLog.debug("ReloadMavenModule command for project: " + project.getName());
 
             try {
@@ -1070,13 +1708,120 @@ public class CopilotRestService {
             }
         }
 
-        private String handleHeartbeat(IProject project) {
+        private Map<String, Object> handleHeartbeat(IProject project) {
             VaadinPluginLog.debug("Heartbeat command for project: " + project.getName());
             Map<String, Object> response = new HashMap<>();
             response.put("status", "alive");
             response.put("version", "1.0.0");
             response.put("ide", "eclipse");
-            return createResponse(response);
+            return response;
+        }
+
+        /**
+         * Reads the raw contents of a file.
+         *
+         * @return the contents, or an empty array if the file does not exist
+         */
+        private byte[] readContents(IFile file) throws Exception {
+            if (!file.exists()) {
+                return new byte[0];
+            }
+            try (InputStream is = file.getContents()) {
+                return is.readAllBytes();
+            }
+        }
+
+        /**
+         * Resolves an absolute file path to a file inside the given project.
+         *
+         * @return the file, or {@code null} if the path is not inside the project
+         */
+        private IFile resolveProjectFile(IProject project, String fileName) {
+            IPath filePath = new org.eclipse.core.runtime.Path(fileName);
+            if (filePath.isAbsolute()) {
+                IPath projectPath = project.getLocation();
+                if (projectPath != null && projectPath.isPrefixOf(filePath)) {
+                    IPath relativePath = filePath.removeFirstSegments(projectPath.segmentCount());
+                    return project.getFile(relativePath);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * One write, writeBase64 or delete operation of a batch.
+         */
+        private class BatchOperation {
+            private final String command;
+            private final IFile file;
+            private final String content;
+            private byte[] oldBytes;
+            /** Folders created for a new file, deepest first. */
+            private final List<IFolder> createdFolders = new ArrayList<>();
+
+            BatchOperation(String command, IFile file, String content) {
+                this.command = command;
+                this.file = file;
+                this.content = content;
+            }
+
+            /**
+             * Applies the operation and returns the change to record for undo.
+             */
+            CopilotUndoManager.FileChange apply() throws Exception {
+                if (file.exists()) {
+                    oldBytes = readContents(file);
+                }
+                byte[] oldContent = oldBytes != null ? oldBytes : new byte[0];
+
+                if ("delete".equals(command)) {
+                    if (oldBytes == null) {
+                        throw new IllegalStateException("File does not exist: " + file.getLocation());
+                    }
+                    file.delete(true, null);
+                    return new CopilotUndoManager.FileChange(file, oldContent, new byte[0]);
+                }
+
+                boolean base64 = "writeBase64".equals(command);
+                // The undo snapshot and its digest are taken while writing, the file is not read back
+                ContentStreams.CapturingInputStream stream = base64
+                        ? ContentStreams.capturing(ContentStreams.base64Decoded(content),
+                                ContentStreams.base64DecodedLength(content))
+                        : ContentStreams.capturing(ContentStreams.utf8(content), ContentStreams.utf8Length(content));
+                if (file.exists()) {
+                    file.setContents(stream, true, true, null);
+                } else {
+                    IResource parent = file.getParent();
+                    while (parent instanceof IFolder && !parent.exists()) {
+                        createdFolders.add((IFolder) parent);
+                        parent = parent.getParent();
+                    }
+                    createParentFolders(file);
+                    file.create(stream, true, null);
+                }
+                return new CopilotUndoManager.FileChange(file, oldContent, stream.getBytes(), stream.getDigest());
+            }
+
+            /**
+             * Puts the file back into the state it had before {@link #apply()}.
+             */
+            void revert() throws CoreException {
+                if (oldBytes == null) {
+                    if (file.exists()) {
+                        file.delete(true, null);
+                    }
+                } else if (file.exists()) {
+                    file.setContents(new java.io.ByteArrayInputStream(oldBytes), true, true, null);
+                } else {
+                    file.create(new java.io.ByteArrayInputStream(oldBytes), true, null);
+                }
+                for (IFolder folder : createdFolders) {
+                    // Later operations of the batch are reverted first, so the folder is normally empty again
+                    if (folder.exists() && folder.members().length == 0) {
+                        folder.delete(true, null);
+                    }
+                }
+            }
         }
 
         private void createParentFolders(IFile file) throws Exception {
@@ -1101,4 +1846,15 @@ public class CopilotRestService {
             }
         }
     }
+
+    /**
+     * Thrown when a command cannot wait for the lock of its project, answered with a busy status.
+     */
+    private static class ProjectBusyException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ProjectBusyException(String message) {
+            super(message);
+        }
+    }
 }
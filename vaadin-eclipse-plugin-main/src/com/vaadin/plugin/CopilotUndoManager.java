@@ -1,10 +1,21 @@
 package com.vaadin.plugin;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.eclipse.core.commands.ExecutionException;
 import org.eclipse.core.commands.operations.IOperationHistory;
 import org.eclipse.core.commands.operations.IUndoContext;
 import org.eclipse.core.commands.operations.IUndoableOperation;
@@ -12,8 +23,11 @@ import org.eclipse.core.commands.operations.OperationHistoryFactory;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -26,17 +40,49 @@ import com.vaadin.plugin.util.VaadinPluginLog;
 
 /**
  * Manages undo/redo operations for Copilot file modifications.
+ * <p>
+ * The contents needed for undo are kept on the heap up to the budget set with the {@value #HEAP_BUDGET_PROPERTY}
+ * system property, in bytes. Beyond that, the least recently used contents are spilled to files in the plug-in state
+ * location. The number of Copilot operations kept is set with the {@value #DEPTH_PROPERTY} system property; older
+ * operations are removed from the operation history.
+ * <p>
+ * The manager is used concurrently by the Copilot workers. Every operation is also registered in an undo context of
+ * each file it changes, so that undo and redo for a file apply to the latest Copilot operation on that file. Operations
+ * on a file are ordered by a lock picked from a fixed set by the file's path: recording, undo and redo of the same file
+ * happen one at a time in the order they arrive, while other files proceed in parallel.
  */
 public class CopilotUndoManager {
 
+    public static final String HEAP_BUDGET_PROPERTY = "vaadin.copilot.undoHeapBudget";
+    public static final String DEPTH_PROPERTY = "vaadin.copilot.undoDepth";
+
+    private static final long DEFAULT_HEAP_BUDGET = 32L * 1024 * 1024;
+    private static final int DEFAULT_DEPTH = 100;
+    private static final String SPILL_FOLDER = "undo";
+    /** Number of locks the files are spread over. */
+    private static final int LOCK_STRIPES = 64;
+
     private static CopilotUndoManager instance;
     private static final IUndoContext WORKSPACE_CONTEXT = new WorkspaceUndoContext();
-    private IOperationHistory operationHistory;
-    private Map<String, List<IUndoableOperation>> fileOperations;
+    private final IOperationHistory operationHistory;
+    /** Contents of the files with undoable Copilot edits, by workspace path. */
+    private final ConcurrentMap<String, FileUndoHistory> histories = new ConcurrentHashMap<>();
+    /** Locks ordering the operations on a file, picked by the hash of its workspace path. */
+    private final ReentrantLock[] fileLocks = new ReentrantLock[LOCK_STRIPES];
+    private final UndoContentStore contentStore;
+    private final int depth;
+    /** Recorded operations, oldest first. Guarded by itself. */
+    private final Deque<AbstractCopilotOperation> recorded = new ArrayDeque<>();
 
     private CopilotUndoManager() {
         operationHistory = OperationHistoryFactory.getOperationHistory();
-        fileOperations = new HashMap<>();
+        for (int i = 0; i < fileLocks.length; i++) {
+            // Fair, so that operations on a file are applied in the order they arrived
+            fileLocks[i] = new ReentrantLock(true);
+        }
+        contentStore = new UndoContentStore(Long.getLong(HEAP_BUDGET_PROPERTY, DEFAULT_HEAP_BUDGET),
+                createBlobStore());
+        depth = Math.max(1, Integer.getInteger(DEPTH_PROPERTY, DEFAULT_DEPTH));
     }
 
     public static synchronized CopilotUndoManager getInstance() {
@@ -46,6 +92,33 @@ public class CopilotUndoManager {
         return instance;
     }
 
+    /**
+     * Deletes the spilled undo contents. Copilot operations still in the operation history can then no longer be
+     * undone.
+     */
+    public static synchronized void dispose() {
+        if (instance != null) {
+            instance.contentStore.close();
+            instance = null;
+        }
+    }
+
+    private static UndoBlobStore createBlobStore() {
+        Activator activator = Activator.getDefault();
+        if (activator == null) {
+            // Not running inside the plug-in, nowhere to spill to
+            return null;
+        }
+        Path directory = activator.getStateLocation().toFile().toPath().resolve(SPILL_FOLDER);
+        try {
+            return new UndoBlobStore(directory);
+        } catch (IOException e) {
+            VaadinPluginLog.warning("Keeping undo contents in memory, cannot use " + directory + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Record a file modification operation for undo/redo.
      */
@@ -54,13 +127,57 @@ public class CopilotUndoManager {
     }
 
     /**
-     * Record a file modification operation for undo/redo with binary flag.
+     * Record a file modification operation for undo/redo with binary flag. When {@code isBase64} is set, the contents
+     * are base64 encoded binary data, otherwise they are text.
      */
     public void recordOperation(IFile file, String oldContent, String newContent, String label, boolean isBase64) {
-        // Create operation but don't execute it since content was already changed
-        CopilotFileEditOperation operation = new CopilotFileEditOperation(file, oldContent, newContent, label,
-                isBase64);
+        recordOperation(file, toBytes(oldContent, isBase64), toBytes(newContent, isBase64), label);
+    }
+
+    /**
+     * Record a file modification operation for undo/redo using the raw file contents. The arrays may be kept as
+     * checkpoints of the file history and must not be modified afterwards.
+     */
+    public void recordOperation(IFile file, byte[] oldContent, byte[] newContent, String label) {
+        recordOperation(file, oldContent, newContent, null, label);
+    }
+
+    /**
+     * Record a file modification operation for undo/redo using the raw file contents and the SHA-256 digest of the
+     * new content, taken while it was written.
+     *
+     * @param newDigest
+     *            the digest of the new content, or {@code null} to compute it
+     */
+    public void recordOperation(IFile file, byte[] oldContent, byte[] newContent, byte[] newDigest, String label) {
+        int[] stripes = lockFiles(List.of(file));
+        try {
+            // Create operation but don't execute it since content was already changed
+            addOperation(
+                    new CopilotFileEditOperation(getHistory(file), file, oldContent, newContent, newDigest, label));
+        } finally {
+            unlockFiles(stripes);
+        }
+        trimToDepth();
+    }
+
+    /**
+     * Record a patch for undo/redo. Only the replaced and inserted text is kept, not the content of the file.
+     */
+    public void recordTextEdits(IFile file, TextPatch.Result patch, String label) {
+        int[] stripes = lockFiles(List.of(file));
+        try {
+            addOperation(new CopilotTextEditOperation(file, patch, label));
+        } finally {
+            unlockFiles(stripes);
+        }
+        trimToDepth();
+    }
 
+    /**
+     * Adds an operation to the operation history. Must be called with the locks of the files of the operation held.
+     */
+    private void addOperation(AbstractCopilotOperation operation) {
         try {
             // The file content has already been changed externally
             // We add the operation to the history in executed state
@@ -69,17 +186,163 @@ public class CopilotUndoManager {
             if (context != null) {
                 operation.addContext(context);
             }
+            for (IFile file : operation.getFiles()) {
+                FileUndoContext fileContext = new FileUndoContext(file);
+                operation.addContext(fileContext);
+                operationHistory.setLimit(fileContext, depth);
+            }
             operationHistory.add(operation);
-
-            // Track operation for this file
-            String filePath = file.getFullPath().toString();
-            fileOperations.computeIfAbsent(filePath, k -> new ArrayList<>()).add(operation);
+            synchronized (recorded) {
+                recorded.addLast(operation);
+            }
 
         } catch (Exception e) {
             VaadinPluginLog.error("Failed to record operation: " + e.getMessage(), e);
         }
     }
 
+    private static byte[] toBytes(String content, boolean isBase64) {
+        if (isBase64) {
+            // For binary files, content is base64 encoded
+            return java.util.Base64.getDecoder().decode(content);
+        }
+        // For text files, content is plain text
+        return content.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Record several file modifications that were applied together as a single undo step. Undoing or redoing the group
+     * restores all files in one workspace operation.
+     */
+    public void recordOperations(List<FileChange> changes, String label) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        List<IFile> files = new ArrayList<>();
+        for (FileChange change : changes) {
+            files.add(change.file);
+        }
+        int[] stripes = lockFiles(files);
+        try {
+            List<CopilotFileEditOperation> fileEdits = new ArrayList<>();
+            for (FileChange change : changes) {
+                fileEdits.add(new CopilotFileEditOperation(getHistory(change.file), change.file, change.oldContent,
+                        change.newContent, change.newDigest, null));
+            }
+            addOperation(new CopilotBatchOperation(fileEdits, label));
+        } finally {
+            unlockFiles(stripes);
+        }
+        trimToDepth();
+    }
+
+    /**
+     * Returns the history of a file. Must be called with the lock of the file held.
+     */
+    private FileUndoHistory getHistory(IFile file) {
+        return histories.computeIfAbsent(file.getFullPath().toString(), path -> new FileUndoHistory(contentStore));
+    }
+
+    /**
+     * Removes the oldest Copilot operations beyond the configured depth from the operation history, and the histories
+     * of files without operations. Must be called without holding file locks.
+     */
+    private void trimToDepth() {
+        List<AbstractCopilotOperation> evicted = new ArrayList<>();
+        synchronized (recorded) {
+            // Operations the history has disposed itself, for example redo operations replaced by a new edit
+            recorded.removeIf(AbstractCopilotOperation::isDisposed);
+            while (recorded.size() > depth) {
+                evicted.add(recorded.removeFirst());
+            }
+        }
+        for (AbstractCopilotOperation operation : evicted) {
+            int[] stripes = lockFiles(operation.getFiles());
+            try {
+                operationHistory.replaceOperation(operation, new IUndoableOperation[0]);
+                operation.dispose();
+            } finally {
+                unlockFiles(stripes);
+            }
+        }
+
+        for (Map.Entry<String, FileUndoHistory> entry : histories.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                ReentrantLock lock = fileLocks[stripeOf(entry.getKey())];
+                // A busy file may be about to add to its empty history, it is cleaned up another time
+                if (lock.tryLock()) {
+                    try {
+                        histories.computeIfPresent(entry.getKey(),
+                                (path, history) -> history.isEmpty() ? null : history);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Locks the given files, always in stripe order so that operations on several files cannot deadlock.
+     *
+     * @return the locked stripes, to pass to {@link #unlockFiles(int[])}
+     */
+    private int[] lockFiles(Collection<IFile> files) {
+        int[] stripes = files.stream().mapToInt(file -> stripeOf(file.getFullPath().toString())).distinct().sorted()
+                .toArray();
+        for (int stripe : stripes) {
+            fileLocks[stripe].lock();
+        }
+        return stripes;
+    }
+
+    private void unlockFiles(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            fileLocks[stripes[i]].unlock();
+        }
+    }
+
+    private static int stripeOf(String path) {
+        int hash = path.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), LOCK_STRIPES);
+    }
+
+    /**
+     * Returns the bytes retained for undoing and redoing Copilot edits of each file, by workspace path.
+     */
+    public Map<String, Long> getRetainedBytesPerFile() {
+        Map<String, Long> footprint = new TreeMap<>();
+        histories.forEach((path, history) -> {
+            if (!history.isEmpty()) {
+                footprint.put(path, history.getRetainedBytes());
+            }
+        });
+        return footprint;
+    }
+
+    /**
+     * Returns the bytes retained on the heap for undoing and redoing Copilot edits of all files. Identical contents are
+     * stored once, so this counts unique bytes.
+     */
+    public long getRetainedBytes() {
+        return contentStore.getResidentBytes();
+    }
+
+    /**
+     * Returns the bytes the undo contents would take if identical contents were not shared.
+     */
+    public long getReferencedBytes() {
+        return contentStore.getReferencedBytes();
+    }
+
+    /**
+     * Returns the bytes of undo contents spilled to disk.
+     */
+    public long getSpilledBytes() {
+        return contentStore.getSpilledBytes();
+    }
+
     /**
      * Get or create a workspace undo context. This handles cases where the workspace adapter might not be available.
      */
@@ -100,54 +363,69 @@ public class CopilotUndoManager {
      * Perform undo for specified files.
      */
     public boolean performUndo(List<String> filePaths) {
+        return perform(filePaths, true);
+    }
+
+    /**
+     * Perform redo for specified files.
+     */
+    public boolean performRedo(List<String> filePaths) {
+        return perform(filePaths, false);
+    }
+
+    private boolean perform(List<String> filePaths, boolean undo) {
         boolean performed = false;
+        // Files already restored by a batch operation in this call
+        Set<IFile> covered = new HashSet<>();
 
         try {
             for (String filePath : filePaths) {
                 IFile file = findFile(filePath);
-                if (file != null) {
-                    // Get the workspace context which our operations use
-                    IUndoContext context = getOrCreateWorkspaceContext();
-                    if (context != null && operationHistory.canUndo(context)) {
-                        IStatus status = operationHistory.undo(context, null, null);
-                        if (status.isOK()) {
-                            performed = true;
-                        }
+                if (file != null && !covered.contains(file)) {
+                    List<IFile> restored = performLatest(file, undo);
+                    if (restored != null) {
+                        performed = true;
+                        covered.addAll(restored);
                     }
                 }
             }
         } catch (Exception e) {
-            VaadinPluginLog.error("Error performing undo: " + e.getMessage(), e);
+            VaadinPluginLog.error("Error performing " + (undo ? "undo" : "redo") + ": " + e.getMessage(), e);
         }
 
         return performed;
     }
 
     /**
-     * Perform redo for specified files.
+     * Undoes or redoes the latest Copilot operation on a file, holding the locks of all files the operation changes.
+     *
+     * @return the files of the operation, or {@code null} if there was no operation or it failed
      */
-    public boolean performRedo(List<String> filePaths) {
-        boolean performed = false;
-
-        try {
-            for (String filePath : filePaths) {
-                IFile file = findFile(filePath);
-                if (file != null) {
-                    // Get the workspace context which our operations use
-                    IUndoContext context = getOrCreateWorkspaceContext();
-                    if (context != null && operationHistory.canRedo(context)) {
-                        IStatus status = operationHistory.redo(context, null, null);
-                        if (status.isOK()) {
-                            performed = true;
-                        }
-                    }
+    private List<IFile> performLatest(IFile file, boolean undo) throws ExecutionException {
+        IUndoContext context = new FileUndoContext(file);
+        while (true) {
+            IUndoableOperation operation = getOperation(context, undo);
+            if (!(operation instanceof AbstractCopilotOperation)) {
+                return null;
+            }
+            List<IFile> files = ((AbstractCopilotOperation) operation).getFiles();
+            int[] stripes = lockFiles(files);
+            try {
+                if (getOperation(context, undo) != operation) {
+                    // Another thread recorded, undid or redid an operation on the file in the meantime
+                    continue;
                 }
+                IStatus status = undo ? operationHistory.undoOperation(operation, null, null)
+                        : operationHistory.redoOperation(operation, null, null);
+                return status.isOK() ? files : null;
+            } finally {
+                unlockFiles(stripes);
             }
-        } catch (Exception e) {
-            VaadinPluginLog.error("Error performing redo: " + e.getMessage(), e);
         }
+    }
 
-        return performed;
+    private IUndoableOperation getOperation(IUndoContext context, boolean undo) {
+        return undo ? operationHistory.getUndoOperation(context) : operationHistory.getRedoOperation(context);
     }
 
     /**
@@ -194,6 +472,31 @@ public class CopilotUndoManager {
         return ResourcesPlugin.getWorkspace().getAdapter(IUndoContext.class);
     }
 
+    /**
+     * A single file modification that is part of a batch recorded with {@link #recordOperations(List, String)}.
+     */
+    public static class FileChange {
+        private final IFile file;
+        private final byte[] oldContent;
+        private final byte[] newContent;
+        private final byte[] newDigest;
+
+        public FileChange(IFile file, byte[] oldContent, byte[] newContent) {
+            this(file, oldContent, newContent, null);
+        }
+
+        /**
+         * @param newDigest
+         *            the SHA-256 digest of the new content, or {@code null} to compute it
+         */
+        public FileChange(IFile file, byte[] oldContent, byte[] newContent, byte[] newDigest) {
+            this.file = file;
+            this.oldContent = oldContent;
+            this.newContent = newContent;
+            this.newDigest = newDigest;
+        }
+    }
+
     /**
      * Custom workspace undo context for when the default one isn't available. This is primarily for test environments
      * where the workspace might not be fully initialized.
@@ -215,67 +518,181 @@ public class CopilotUndoManager {
     }
 
     /**
-     * Custom undoable operation for Copilot file edits.
+     * Undo context of the Copilot operations on one file. Contexts of the same file are equal, so one can be created
+     * whenever needed.
      */
-    private static class CopilotFileEditOperation implements IUndoableOperation {
+    private static class FileUndoContext implements IUndoContext {
+        private final IPath path;
 
-        private final IFile file;
-        private final String oldContent;
-        private final String newContent;
-        private final String label;
-        private final boolean isBase64;
-        private IUndoContext[] contexts;
+        FileUndoContext(IFile file) {
+            this.path = file.getFullPath();
+        }
 
-        public CopilotFileEditOperation(IFile file, String oldContent, String newContent, String label) {
-            this(file, oldContent, newContent, label, false);
+        @Override
+        public String getLabel() {
+            return "Copilot " + path;
         }
 
-        public CopilotFileEditOperation(IFile file, String oldContent, String newContent, String label,
-                boolean isBase64) {
-            this.file = file;
-            this.oldContent = oldContent;
-            this.newContent = newContent;
-            this.label = label != null ? label : "Copilot Edit";
-            this.isBase64 = isBase64;
+        @Override
+        public boolean matches(IUndoContext context) {
+            return equals(context);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof FileUndoContext && path.equals(((FileUndoContext) other).path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode();
+        }
+    }
+
+    /**
+     * Base class for Copilot operations, handling the label and undo contexts.
+     */
+    private abstract static class AbstractCopilotOperation implements IUndoableOperation {
+
+        private final String label;
+        // Replaced on change, since the operation history reads the contexts from other threads
+        private volatile IUndoContext[] contexts;
+        private boolean disposed;
+
+        protected AbstractCopilotOperation(String label) {
+            this.label = label;
             // Initialize with empty contexts, will be added during recordOperation
             this.contexts = new IUndoContext[0];
         }
 
+        @Override
+        public String getLabel() {
+            return label;
+        }
+
+        @Override
+        public IUndoContext[] getContexts() {
+            return contexts;
+        }
+
+        @Override
+        public boolean hasContext(IUndoContext context) {
+            for (IUndoContext c : contexts) {
+                if (c.matches(context)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized void addContext(IUndoContext context) {
+            // Add context if not already present
+            for (IUndoContext c : contexts) {
+                if (c.matches(context)) {
+                    return; // Already has this context
+                }
+            }
+            // Create new array with added context
+            IUndoContext[] newContexts = new IUndoContext[contexts.length + 1];
+            System.arraycopy(contexts, 0, newContexts, 0, contexts.length);
+            newContexts[contexts.length] = context;
+            contexts = newContexts;
+        }
+
+        @Override
+        public synchronized void removeContext(IUndoContext context) {
+            // Not needed for our use case but implemented for completeness
+            List<IUndoContext> remaining = new ArrayList<>();
+            for (IUndoContext c : contexts) {
+                if (!c.matches(context)) {
+                    remaining.add(c);
+                }
+            }
+            contexts = remaining.toArray(new IUndoContext[0]);
+        }
+
+        @Override
+        public final synchronized void dispose() {
+            if (!disposed) {
+                disposed = true;
+                release();
+            }
+        }
+
+        /** Whether the operation history has disposed the operation. */
+        public synchronized boolean isDisposed() {
+            return disposed;
+        }
+
+        /**
+         * Releases the contents kept for the operation, called once when it is disposed.
+         */
+        protected void release() {
+        }
+
+        /** The files the operation changes. */
+        public abstract List<IFile> getFiles();
+    }
+
+    /**
+     * Custom undoable operation for Copilot file edits. The contents before and after the edit are kept as versions
+     * in the history of the file and read back from there when needed.
+     */
+    private static class CopilotFileEditOperation extends AbstractCopilotOperation {
+
+        private final FileUndoHistory history;
+        private final IFile file;
+        private final long oldVersion;
+        private final long newVersion;
+
+        public CopilotFileEditOperation(FileUndoHistory history, IFile file, byte[] oldContent, byte[] newContent,
+                byte[] newDigest, String label) {
+            super(label != null ? label : "Copilot Edit");
+            this.history = history;
+            this.file = file;
+            this.oldVersion = history.add(oldContent);
+            this.newVersion = newDigest != null ? history.add(newContent, newDigest) : history.add(newContent);
+        }
+
         @Override
         public IStatus execute(IProgressMonitor monitor, IAdaptable info) {
             // Should not be called since content is already applied
             // But if it is called, apply the new content
-            return setFileContent(newContent);
+            return setFileContent(newVersion);
         }
 
         @Override
         public IStatus undo(IProgressMonitor monitor, IAdaptable info) {
-            return setFileContent(oldContent);
+            return setFileContent(oldVersion);
         }
 
         @Override
         public IStatus redo(IProgressMonitor monitor, IAdaptable info) {
-            return setFileContent(newContent);
+            return setFileContent(newVersion);
+        }
+
+        @Override
+        protected void release() {
+            history.release(oldVersion);
+            history.release(newVersion);
+        }
+
+        @Override
+        public List<IFile> getFiles() {
+            return List.of(file);
         }
 
-        private IStatus setFileContent(String content) {
+        private IStatus setFileContent(long version) {
             try {
-                byte[] bytes;
-                if (isBase64) {
-                    // For binary files, content is base64 encoded
-                    if (content.isEmpty()) {
-                        // Empty content for file deletion
-                        bytes = new byte[0];
-                    } else {
-                        bytes = java.util.Base64.getDecoder().decode(content);
-                    }
+                byte[] content = history.get(version);
+                java.io.ByteArrayInputStream stream = new java.io.ByteArrayInputStream(content);
+                if (file.exists()) {
+                    file.setContents(stream, true, true, null);
                 } else {
-                    // For text files, content is plain text
-                    bytes = content.getBytes("UTF-8");
+                    // File was deleted as part of a batch, recreate it
+                    file.create(stream, true, null);
                 }
-
-                java.io.ByteArrayInputStream stream = new java.io.ByteArrayInputStream(bytes);
-                file.setContents(stream, true, true, null);
                 return Status.OK_STATUS;
             } catch (Exception e) {
                 return new Status(IStatus.ERROR, "vaadin-eclipse-plugin",
@@ -283,6 +700,77 @@ public class CopilotUndoManager {
             }
         }
 
+        @Override
+        public boolean canExecute() {
+            return isWritable();
+        }
+
+        @Override
+        public boolean canUndo() {
+            return isWritable();
+        }
+
+        @Override
+        public boolean canRedo() {
+            return isWritable();
+        }
+
+        private boolean isWritable() {
+            return !isDisposed() && (file.exists() || file.getParent().isAccessible());
+        }
+    }
+
+    /**
+     * Undoable operation for a Copilot patch, keeping the edits in both directions instead of file snapshots. Edits
+     * only apply to the text they were computed for, so undo and redo fail if the file has been changed since.
+     */
+    private static class CopilotTextEditOperation extends AbstractCopilotOperation {
+
+        private final IFile file;
+        private final List<TextPatch.Replacement> edits;
+        private final List<TextPatch.Replacement> inverse;
+        private final String oldHash;
+        private final String newHash;
+
+        public CopilotTextEditOperation(IFile file, TextPatch.Result patch, String label) {
+            super(label != null ? label : "Copilot Edit");
+            this.file = file;
+            this.edits = patch.getEdits();
+            this.inverse = patch.getInverse();
+            this.oldHash = patch.getOldHash();
+            this.newHash = patch.getNewHash();
+        }
+
+        @Override
+        public List<IFile> getFiles() {
+            return List.of(file);
+        }
+
+        @Override
+        public IStatus execute(IProgressMonitor monitor, IAdaptable info) {
+            return redo(monitor, info);
+        }
+
+        @Override
+        public IStatus undo(IProgressMonitor monitor, IAdaptable info) {
+            return apply(inverse, newHash);
+        }
+
+        @Override
+        public IStatus redo(IProgressMonitor monitor, IAdaptable info) {
+            return apply(edits, oldHash);
+        }
+
+        private IStatus apply(List<TextPatch.Replacement> replacements, String expectedHash) {
+            try {
+                TextPatch.apply(file, text -> replacements, expectedHash);
+                return Status.OK_STATUS;
+            } catch (Exception e) {
+                return new Status(IStatus.ERROR, "vaadin-eclipse-plugin",
+                        "Failed to apply edits to " + file.getFullPath() + ": " + e.getMessage(), e);
+            }
+        }
+
         @Override
         public boolean canExecute() {
             return file.exists();
@@ -297,57 +785,97 @@ public class CopilotUndoManager {
         public boolean canRedo() {
             return file.exists();
         }
+    }
+
+    /**
+     * Undoable operation grouping the file edits of one Copilot batch. All edits are applied inside a single workspace
+     * runnable so that they produce one resource delta and one build.
+     */
+    private static class CopilotBatchOperation extends AbstractCopilotOperation {
+
+        private final List<CopilotFileEditOperation> fileEdits;
+
+        public CopilotBatchOperation(List<CopilotFileEditOperation> fileEdits, String label) {
+            super(label != null ? label : "Copilot Batch Edit");
+            this.fileEdits = fileEdits;
+        }
 
         @Override
-        public String getLabel() {
-            return label;
+        public List<IFile> getFiles() {
+            List<IFile> files = new ArrayList<>();
+            for (CopilotFileEditOperation fileEdit : fileEdits) {
+                files.add(fileEdit.file);
+            }
+            return files;
         }
 
         @Override
-        public IUndoContext[] getContexts() {
-            return contexts;
+        public IStatus execute(IProgressMonitor monitor, IAdaptable info) {
+            return redo(monitor, info);
         }
 
         @Override
-        public boolean hasContext(IUndoContext context) {
-            for (IUndoContext c : contexts) {
-                if (c.matches(context)) {
-                    return true;
+        public IStatus undo(IProgressMonitor monitor, IAdaptable info) {
+            List<CopilotFileEditOperation> reversed = new ArrayList<>(fileEdits);
+            java.util.Collections.reverse(reversed);
+            return runAll(reversed, true);
+        }
+
+        @Override
+        public IStatus redo(IProgressMonitor monitor, IAdaptable info) {
+            return runAll(fileEdits, false);
+        }
+
+        private IStatus runAll(List<CopilotFileEditOperation> edits, boolean undo) {
+            IStatus[] result = { Status.OK_STATUS };
+            IWorkspaceRunnable runnable = monitor -> {
+                for (CopilotFileEditOperation edit : edits) {
+                    IStatus status = undo ? edit.undo(monitor, null) : edit.redo(monitor, null);
+                    if (!status.isOK()) {
+                        result[0] = status;
+                        return;
+                    }
                 }
+            };
+            try {
+                ResourcesPlugin.getWorkspace().run(runnable, ResourcesPlugin.getWorkspace().getRoot(),
+                        IWorkspace.AVOID_UPDATE, null);
+            } catch (CoreException e) {
+                return e.getStatus();
             }
-            return false;
+            return result[0];
         }
 
         @Override
-        public void addContext(IUndoContext context) {
-            // Add context if not already present
-            for (IUndoContext c : contexts) {
-                if (c.matches(context)) {
-                    return; // Already has this context
-                }
+        protected void release() {
+            for (CopilotFileEditOperation edit : fileEdits) {
+                edit.dispose();
             }
-            // Create new array with added context
-            IUndoContext[] newContexts = new IUndoContext[contexts.length + 1];
-            System.arraycopy(contexts, 0, newContexts, 0, contexts.length);
-            newContexts[contexts.length] = context;
-            contexts = newContexts;
         }
 
         @Override
-        public void removeContext(IUndoContext context) {
-            // Not needed for our use case but implemented for completeness
-            List<IUndoContext> remaining = new ArrayList<>();
-            for (IUndoContext c : contexts) {
-                if (!c.matches(context)) {
-                    remaining.add(c);
+        public boolean canExecute() {
+            return canRedo();
+        }
+
+        @Override
+        public boolean canUndo() {
+            for (CopilotFileEditOperation edit : fileEdits) {
+                if (!edit.canUndo()) {
+                    return false;
                 }
             }
-            contexts = remaining.toArray(new IUndoContext[0]);
+            return true;
         }
 
         @Override
-        public void dispose() {
-            // Nothing to dispose
+        public boolean canRedo() {
+            for (CopilotFileEditOperation edit : fileEdits) {
+                if (!edit.canRedo()) {
+                    return false;
+                }
+            }
+            return true;
         }
     }
 }
@@ -11,6 +11,9 @@ import com.vaadin.plugin.util.VaadinPluginLog;
  */
 public class CopilotUtil {
 
+    /** Dotfile key of the Unix domain socket path, present only when the socket transport is available. */
+    public static final String UNIX_SOCKET_KEY = "unixSocket";
+
     private static final String serviceName = "copilot-" + UUID.randomUUID();
 
     public static String getServiceName() {
@@ -22,19 +25,37 @@ public class CopilotUtil {
     }
 
     public static String getSupportedActions() {
-        String[] actions = { "write", "writeBase64", "delete", "undo", "redo", "refresh", "showInIde", "getModulePaths",
-                "compileFiles", "restartApplication", "getVaadinRoutes", "getVaadinVersion", "getVaadinComponents",
-                "getVaadinEntities", "getVaadinSecurity", "reloadMavenModule", "heartbeat" };
+        String[] actions = { "write", "writeBase64", "writeBinary", "patch", "delete", "batch", "undo", "redo",
+                "refresh", "showInIde", "getModulePaths", "compileFiles", "restartApplication", "getVaadinRoutes",
+                "getVaadinVersion", "getVaadinComponents", "getVaadinEntities", "getVaadinSecurity",
+                "getProjectSnapshot", "reloadMavenModule", "heartbeat" };
         return Arrays.stream(actions).collect(Collectors.joining(","));
     }
 
     public static void saveDotFile(String projectBasePath, int port) {
+        saveDotFile(projectBasePath, port, null);
+    }
+
+    /**
+     * Writes the Copilot dotfile of a project.
+     *
+     * @param projectBasePath
+     *            the project directory
+     * @param port
+     *            the port of the TCP endpoint
+     * @param unixSocketPath
+     *            the Unix domain socket serving the same endpoint, or {@code null} if there is none
+     */
+    public static void saveDotFile(String projectBasePath, int port, String unixSocketPath) {
         try {
             java.io.File dotFile = new java.io.File(projectBasePath, ".vaadin/copilot/vaadin-copilot.properties");
             dotFile.getParentFile().mkdirs();
 
             java.util.Properties props = new java.util.Properties();
             props.setProperty("endpoint", getEndpoint(port));
+            if (unixSocketPath != null) {
+                props.setProperty(UNIX_SOCKET_KEY, unixSocketPath);
+            }
             props.setProperty("ide", "eclipse");
             props.setProperty("version", "1.0.0");
             props.setProperty("supportedActions", getSupportedActions());
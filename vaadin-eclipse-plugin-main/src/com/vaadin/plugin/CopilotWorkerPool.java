@@ -0,0 +1,131 @@
+package com.vaadin.plugin;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Bounded executor used by the embedded Copilot HTTP server. Requests are handled by a fixed number of named worker
+ * threads with a limited queue in front of them. When both are full the request is not queued; instead it is run
+ * directly on the server dispatcher thread in "rejected" mode, where the handler only answers with a busy status.
+ * <p>
+ * The pool size and queue limit can be configured with the {@value #THREADS_PROPERTY} and {@value #QUEUE_PROPERTY}
+ * system properties.
+ */
+public class CopilotWorkerPool implements Executor {
+
+    public static final String THREADS_PROPERTY = "vaadin.copilot.workerThreads";
+    public static final String QUEUE_PROPERTY = "vaadin.copilot.workerQueueSize";
+
+    private static final int DEFAULT_QUEUE_SIZE = 64;
+    private static final ThreadLocal<Boolean> REJECTED = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public CopilotWorkerPool() {
+        this(Integer.getInteger(THREADS_PROPERTY, defaultThreadCount()),
+                Integer.getInteger(QUEUE_PROPERTY, DEFAULT_QUEUE_SIZE));
+    }
+
+    public CopilotWorkerPool(int threads, int queueCapacity) {
+        int poolSize = Math.max(1, threads);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity), new WorkerThreadFactory(), new BusyPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        VaadinPluginLog.debug("Copilot worker pool created with " + poolSize + " threads and queue limit "
+                + this.queueCapacity);
+    }
+
+    private static int defaultThreadCount() {
+        return Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Returns whether the current thread is running a request that the pool rejected because it was saturated.
+     * Handlers should answer such requests with a busy status without doing any work.
+     */
+    public static boolean isRejected() {
+        return Boolean.TRUE.equals(REJECTED.get());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /** Stops accepting new work and interrupts running requests. */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** Number of requests waiting for a free worker. */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /** Maximum number of requests that may wait for a free worker. */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /** Number of workers currently handling a request. */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /** Configured number of worker threads. */
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /** Total number of requests handled by the workers so far. */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /** Total number of requests rejected because the pool was saturated. */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Copilot-Worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    /**
+     * Runs the rejected exchange on the calling dispatcher thread with the rejected flag set, so the handler can close
+     * it quickly with a busy response instead of leaving the connection hanging. Exchanges arriving while the pool
+     * shuts down are answered the same way, but not counted as rejected.
+     */
+    private class BusyPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            if (!pool.isShutdown()) {
+                rejectedCount.incrementAndGet();
+            }
+            REJECTED.set(Boolean.TRUE);
+            try {
+                r.run();
+            } finally {
+                REJECTED.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.vaadin.plugin;
+
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The contents of one file at the points Copilot changed it, kept for undo and redo. Versions are stored as a chain:
+ * a full checkpoint followed by compact deltas, each against the version before it. Reading a version applies the
+ * deltas since the last checkpoint, so a new checkpoint is taken at regular intervals to bound that work, and whenever
+ * a delta would not be much smaller than the content.
+ * <p>
+ * Versions are reference counted by the undo operations using them. A consecutive write usually starts from the
+ * content the previous one produced, so adding the content of the latest version again returns that version. Once the
+ * operations are disposed by the operation history, unreferenced versions at either end of the chain are dropped.
+ * <p>
+ * The checkpoints and deltas are kept in an {@link UndoContentStore}, which may spill them to disk.
+ */
+public class FileUndoHistory {
+
+    /** Number of versions after which a full checkpoint is stored instead of a delta. */
+    static final int CHECKPOINT_INTERVAL = 16;
+
+    private final UndoContentStore store;
+    /** Stored versions, in increasing id order. */
+    private final List<Version> versions = new ArrayList<>();
+    /** Id of the next version added. Ids are never reused, not even after versions at the end are dropped. */
+    private long nextId;
+    /** Content of the latest version, so that the next delta does not need to reconstruct it. */
+    private SoftReference<byte[]> latestContent = new SoftReference<>(null);
+
+    /**
+     * Creates a history keeping all data on the heap.
+     */
+    public FileUndoHistory() {
+        this(new UndoContentStore(Long.MAX_VALUE, null));
+    }
+
+    public FileUndoHistory(UndoContentStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Adds a version and references it.
+     *
+     * @param content
+     *            the content, must not be modified afterwards
+     * @return the id of the version
+     */
+    public long add(byte[] content) {
+        return add(content, digest(content));
+    }
+
+    /**
+     * Adds a version whose SHA-256 digest is already known, see {@link #add(byte[])}.
+     *
+     * @param content
+     *            the content, must not be modified afterwards
+     * @param digest
+     *            the SHA-256 digest of the content
+     * @return the id of the version
+     */
+    public synchronized long add(byte[] content, byte[] digest) {
+        if (!versions.isEmpty()) {
+            Version latest = versions.get(versions.size() - 1);
+            if (Arrays.equals(latest.digest, digest)) {
+                latest.references++;
+                return latest.id;
+            }
+        }
+
+        Version version;
+        Version previous = versions.isEmpty() ? null : versions.get(versions.size() - 1);
+        if (previous == null || previous.depth + 1 >= CHECKPOINT_INTERVAL) {
+            version = new Version(store.put(content, digest), true, digest, content.length, 0);
+        } else {
+            byte[] delta = BinaryDelta.create(getLatest(), content);
+            if (delta.length >= content.length / 2) {
+                version = new Version(store.put(content, digest), true, digest, content.length, 0);
+            } else {
+                version = new Version(store.put(delta), false, digest, content.length, previous.depth + 1);
+            }
+        }
+        version.id = nextId++;
+        version.references = 1;
+        versions.add(version);
+        latestContent = new SoftReference<>(content);
+        return version.id;
+    }
+
+    /**
+     * Returns the content of a version.
+     *
+     * @throws IllegalArgumentException
+     *             if the version has been dropped
+     */
+    public synchronized byte[] get(long id) {
+        int index = indexOf(id);
+        if (index == versions.size() - 1) {
+            return getLatest();
+        }
+        return reconstruct(index);
+    }
+
+    /**
+     * Releases a reference to a version taken by {@link #add(byte[])}.
+     */
+    public synchronized void release(long id) {
+        int index = indexOf(id);
+        Version version = versions.get(index);
+        if (version.references > 0) {
+            version.references--;
+        }
+
+        // Later versions are deltas against earlier ones, so only the ends of the chain can go
+        while (!versions.isEmpty() && versions.get(versions.size() - 1).references == 0) {
+            store.release(versions.remove(versions.size() - 1).data);
+            latestContent = new SoftReference<>(null);
+        }
+        while (!versions.isEmpty() && versions.get(0).references == 0) {
+            if (versions.size() > 1 && !versions.get(1).checkpoint) {
+                Version next = versions.get(1);
+                byte[] content = reconstruct(1);
+                store.release(next.data);
+                next.data = store.put(content, next.digest);
+                next.checkpoint = true;
+            }
+            store.release(versions.remove(0).data);
+        }
+    }
+
+    /** Whether no version is referenced anymore. */
+    public synchronized boolean isEmpty() {
+        return versions.isEmpty();
+    }
+
+    /** Number of stored versions. */
+    public synchronized int getVersionCount() {
+        return versions.size();
+    }
+
+    /**
+     * Bytes of the checkpoints and deltas kept on the heap. Data shared by several versions counts once, data shared
+     * with other files counts for each of them.
+     */
+    public synchronized long getRetainedBytes() {
+        long bytes = 0;
+        for (UndoContentStore.Content content : getUniqueData()) {
+            if (store.isResident(content)) {
+                bytes += content.getLength();
+            }
+        }
+        return bytes;
+    }
+
+    /** Bytes of the checkpoints and deltas, on the heap or spilled. Data shared by several versions counts once. */
+    public synchronized long getStoredBytes() {
+        long bytes = 0;
+        for (UndoContentStore.Content content : getUniqueData()) {
+            bytes += content.getLength();
+        }
+        return bytes;
+    }
+
+    private Set<UndoContentStore.Content> getUniqueData() {
+        Set<UndoContentStore.Content> unique = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Version version : versions) {
+            unique.add(version.data);
+        }
+        return unique;
+    }
+
+    /** Bytes of the stored versions if every version were kept in full. */
+    public synchronized long getContentBytes() {
+        long bytes = 0;
+        for (Version version : versions) {
+            bytes += version.length;
+        }
+        return bytes;
+    }
+
+    private int indexOf(long id) {
+        int low = 0;
+        int high = versions.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = versions.get(middle).id;
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        throw new IllegalArgumentException("Version " + id + " is no longer available");
+    }
+
+    private byte[] getLatest() {
+        byte[] content = latestContent.get();
+        if (content == null) {
+            content = reconstruct(versions.size() - 1);
+            latestContent = new SoftReference<>(content);
+        }
+        return content;
+    }
+
+    private byte[] reconstruct(int index) {
+        int checkpoint = index;
+        while (!versions.get(checkpoint).checkpoint) {
+            checkpoint--;
+        }
+        byte[] content = store.get(versions.get(checkpoint).data);
+        for (int i = checkpoint + 1; i <= index; i++) {
+            content = BinaryDelta.apply(content, store.get(versions.get(i).data));
+        }
+        return content;
+    }
+
+    private static byte[] digest(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Version {
+        private long id;
+        private UndoContentStore.Content data;
+        private boolean checkpoint;
+        private final byte[] digest;
+        private final int length;
+        private final int depth;
+        private int references;
+
+        Version(UndoContentStore.Content data, boolean checkpoint, byte[] digest, int length, int depth) {
+            this.data = data;
+            this.checkpoint = checkpoint;
+            this.digest = digest;
+            this.length = length;
+            this.depth = depth;
+        }
+    }
+}
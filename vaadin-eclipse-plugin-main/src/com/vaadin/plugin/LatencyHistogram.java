@@ -0,0 +1,110 @@
+package com.vaadin.plugin;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the style of HdrHistogram. Values below
+ * {@value #LINEAR_LIMIT} microseconds are counted exactly; above that every power of two is split into
+ * {@value #SUB_BUCKETS} equal buckets, so a reported percentile is never more than 1/{@value #SUB_BUCKETS} above the
+ * recorded value. The memory use is fixed, regardless of how many values are recorded.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 16;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    /** Largest power of two that is tracked, larger values are counted in the last bucket (about 19 hours). */
+    private static final int MAX_EXPONENT = 36;
+    private static final int LINEAR_EXPONENT = Integer.numberOfTrailingZeros(LINEAR_LIMIT);
+    private static final int SUB_BUCKET_SHIFT = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - LINEAR_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a duration.
+     *
+     * @param micros
+     *            the duration in microseconds, negative values are recorded as zero
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /** Number of recorded values. */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /** Sum of the recorded values in microseconds. */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /** Largest recorded value in microseconds. */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded values lie. Values recorded while this runs may
+     * or may not be included.
+     *
+     * @param quantile
+     *            the fraction, between 0 and 1
+     * @return the highest value of the bucket holding the quantile in microseconds, or 0 if nothing was recorded
+     */
+    public long getValueAtQuantile(double quantile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, quantile)) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // The exact maximum is known, which is better than the bucket bound for the top values
+                return i == BUCKET_COUNT - 1 ? getMax() : Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_SHIFT;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int offset = index - LINEAR_LIMIT;
+        int exponent = LINEAR_EXPONENT + offset / SUB_BUCKETS;
+        long subBucket = SUB_BUCKETS + offset % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_SHIFT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
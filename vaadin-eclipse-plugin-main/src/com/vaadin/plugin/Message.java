@@ -50,6 +50,77 @@ public class Message {
         }
     }
 
+    public static class TextEdit {
+        public int offset;
+        public int length;
+        public String text;
+
+        public TextEdit() {
+        }
+
+        public TextEdit(int offset, int length, String text) {
+            this.offset = offset;
+            this.length = length;
+            this.text = text;
+        }
+    }
+
+    public static class PatchFileMessage {
+        public String file;
+        public String undoLabel;
+        /** SHA-256 of the UTF-8 encoded text the patch is based on, optional. */
+        public String baseHash;
+        /** Replacements relative to the text before the patch, or {@code null} if a diff is given. */
+        public List<TextEdit> edits;
+        /** A unified diff, used if no edits are given. */
+        public String diff;
+
+        public PatchFileMessage() {
+        }
+
+        public PatchFileMessage(String file, String undoLabel, String baseHash, List<TextEdit> edits) {
+            this.file = file;
+            this.undoLabel = undoLabel;
+            this.baseHash = baseHash;
+            this.edits = edits;
+        }
+
+        public PatchFileMessage(String file, String undoLabel, String baseHash, String diff) {
+            this.file = file;
+            this.undoLabel = undoLabel;
+            this.baseHash = baseHash;
+            this.diff = diff;
+        }
+    }
+
+    public static class BatchOperation {
+        public String command;
+        public String file;
+        public String content;
+
+        public BatchOperation() {
+        }
+
+        public BatchOperation(String command, String file, String content) {
+            this.command = command;
+            this.file = file;
+            this.content = content;
+        }
+    }
+
+    public static class BatchMessage {
+        public String undoLabel;
+        public List<BatchOperation> operations;
+
+        public BatchMessage() {
+        }
+
+        public BatchMessage(String undoLabel, List<BatchOperation> operations) {
+            this.undoLabel = undoLabel;
+            this.operations = operations;
+        }
+    }
+
     public static class UndoRedoMessage {
         public List<String> files;
 
@@ -120,6 +191,11 @@ public class Message {
 
     public static class GetVaadinComponentsMessage {
         public boolean includeMethods;
+        public String packagePrefix;
+        public String classNamePattern;
+        public String origin;
+        public Integer pageSize;
+        public String cursor;
 
         public GetVaadinComponentsMessage() {
         }
@@ -131,6 +207,11 @@ public class Message {
 
     public static class GetVaadinPersistenceMessage {
         public boolean includeMethods;
+        public String packagePrefix;
+        public String classNamePattern;
+        public String origin;
+        public Integer pageSize;
+        public String cursor;
 
         public GetVaadinPersistenceMessage() {
         }
@@ -145,6 +226,17 @@ public class Message {
         }
     }
 
+    public static class GetProjectSnapshotMessage {
+        public boolean includeMethods;
+
+        public GetProjectSnapshotMessage() {
+        }
+
+        public GetProjectSnapshotMessage(boolean includeMethods) {
+            this.includeMethods = includeMethods;
+        }
+    }
+
     public static class GetModulePathsMessage {
         public GetModulePathsMessage() {
         }
@@ -0,0 +1,138 @@
+package com.vaadin.plugin;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Per-project read/write locks for Copilot commands. Read-only commands on a project run in parallel, commands that
+ * modify files run one at a time in the order they arrived, and commands on different projects never wait for each
+ * other. Commands that neither read analysis results nor modify files, such as {@code refresh} or
+ * {@code showInIde}, are not locked.
+ * <p>
+ * A command waiting for a lock holds a worker thread. To keep one busy project from taking all workers, a command is
+ * refused instead of queued once the given number of commands already hold or wait for the lock of its project.
+ * <p>
+ * The lock of a project only exists while commands hold or wait for it, so projects that are deleted or renamed do not
+ * leave locks behind.
+ */
+public class ProjectCommandLocks {
+
+    /** How a command accesses its project. */
+    public enum Mode {
+        READ, WRITE, NONE
+    }
+
+    private static final Set<String> READ_COMMANDS = Set.of("getVaadinRoutes", "getVaadinVersion",
+            "getVaadinComponents", "getVaadinEntities", "getVaadinSecurity", "getProjectSnapshot", "getModulePaths",
+            "heartbeat");
+    private static final Set<String> WRITE_COMMANDS = Set.of("write", "writeBase64", "writeBinary", "patch", "delete",
+            "batch", "undo", "redo");
+
+    private final ConcurrentMap<String, ProjectLock> locks = new ConcurrentHashMap<>();
+    private final int maxPerProject;
+
+    /**
+     * @param maxPerProject
+     *            number of commands that may hold or wait for the lock of a project before further commands that
+     *            would have to wait are refused
+     */
+    public ProjectCommandLocks(int maxPerProject) {
+        this.maxPerProject = Math.max(1, maxPerProject);
+    }
+
+    /** Returns how the given command accesses its project. */
+    public static Mode getMode(String command) {
+        if (WRITE_COMMANDS.contains(command)) {
+            return Mode.WRITE;
+        }
+        return READ_COMMANDS.contains(command) ? Mode.READ : Mode.NONE;
+    }
+
+    /**
+     * Waits for the lock of a project.
+     *
+     * @param project
+     *            the name of the project
+     * @param mode
+     *            {@link Mode#READ} or {@link Mode#WRITE}
+     * @return the permit to close when the command is done, or {@code null} if the lock is not free and too many
+     *         commands already wait for it
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting
+     */
+    public Permit acquire(String project, Mode mode) throws InterruptedException {
+        if (mode == Mode.NONE) {
+            throw new IllegalArgumentException("Commands without project access are not locked");
+        }
+        // Counted inside compute, so that the lock cannot be removed between looking it up and counting it
+        int[] occupied = new int[1];
+        ProjectLock projectLock = locks.compute(project, (key, existing) -> {
+            ProjectLock counted = existing != null ? existing : new ProjectLock();
+            occupied[0] = counted.occupied.incrementAndGet();
+            return counted;
+        });
+        Lock lock = mode == Mode.READ ? projectLock.lock.readLock() : projectLock.lock.writeLock();
+
+        boolean acquired = false;
+        try {
+            // A timed tryLock respects the queue of a fair lock, unlike tryLock()
+            acquired = lock.tryLock(0, TimeUnit.NANOSECONDS);
+            if (!acquired && occupied[0] <= maxPerProject) {
+                lock.lockInterruptibly();
+                acquired = true;
+            }
+        } finally {
+            if (!acquired) {
+                release(project);
+            }
+        }
+        return acquired ? new Permit(this, project, lock) : null;
+    }
+
+    /** Number of projects with commands holding or waiting for their lock. */
+    public int size() {
+        return locks.size();
+    }
+
+    private void release(String project) {
+        locks.computeIfPresent(project, (key, projectLock) -> projectLock.occupied.decrementAndGet() == 0 ? null
+                : projectLock);
+    }
+
+    private static class ProjectLock {
+        // Fair, so that writes are applied in the order they arrived
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+        private final AtomicInteger occupied = new AtomicInteger();
+    }
+
+    /**
+     * A held project lock.
+     */
+    public static class Permit implements AutoCloseable {
+        private final ProjectCommandLocks owner;
+        private final String project;
+        private final Lock lock;
+        private boolean closed;
+
+        Permit(ProjectCommandLocks owner, String project, Lock lock) {
+            this.owner = owner;
+            this.project = project;
+            this.lock = lock;
+        }
+
+        /** Releases the lock. Must be called by the thread that acquired it. */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                lock.unlock();
+                owner.release(project);
+            }
+        }
+    }
+}
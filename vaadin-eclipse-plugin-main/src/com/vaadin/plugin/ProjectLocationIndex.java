@@ -0,0 +1,165 @@
+package com.vaadin.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Index of workspace projects by their file system location. Copilot identifies projects by their base path on every
+ * request; this index answers that lookup with a single hash lookup instead of scanning all projects in the workspace.
+ * <p>
+ * The index is kept up to date by a resource change listener which rebuilds it whenever a project is added, removed,
+ * opened, closed, renamed or moved. Regular file changes do not touch it. Paths that are not a project, such as
+ * module folders or heartbeats from other folders, are answered from the index too: a miss only rescans the workspace
+ * once per resource change, in case a project was created in a workspace operation that has not finished yet.
+ */
+public class ProjectLocationIndex implements IResourceChangeListener {
+
+    private static final int PROJECT_CHANGE_FLAGS = IResourceDelta.OPEN | IResourceDelta.DESCRIPTION
+            | IResourceDelta.MOVED_FROM | IResourceDelta.MOVED_TO;
+
+    private static ProjectLocationIndex instance;
+
+    private volatile Snapshot snapshot;
+    /** Counts resource changes, so that misses are verified against the workspace once per change. */
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long verifiedGeneration = -1;
+
+    public static synchronized ProjectLocationIndex getInstance() {
+        if (instance == null) {
+            instance = new ProjectLocationIndex();
+        }
+        return instance;
+    }
+
+    private ProjectLocationIndex() {
+        rebuild();
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+    }
+
+    /**
+     * Stops tracking workspace changes. A new index is created on the next call to {@link #getInstance()}.
+     */
+    public static synchronized void dispose() {
+        if (instance != null) {
+            ResourcesPlugin.getWorkspace().removeResourceChangeListener(instance);
+            instance = null;
+        }
+    }
+
+    /**
+     * Finds the project located at the given path.
+     *
+     * @param basePath
+     *            the project location, using either forward slashes or native separators
+     * @return the project or {@code null} if no project is located there
+     */
+    public IProject findProject(String basePath) {
+        String key = normalize(basePath);
+        IProject project = snapshot.byLocation.get(key);
+        if (project != null && project.exists()) {
+            return project;
+        }
+
+        long current = generation.get();
+        if (verifiedGeneration == current) {
+            return null;
+        }
+        // The index may lag behind a change made in the middle of a workspace operation, verify the first miss
+        verifiedGeneration = current;
+        rebuild();
+        project = snapshot.byLocation.get(key);
+        if (project != null && project.exists()) {
+            VaadinPluginLog.debug("Project location index was stale for " + basePath);
+            return project;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the projects located below the given project, sorted by location.
+     *
+     * @param project
+     *            the parent project
+     * @return the nested projects, not including the project itself
+     */
+    public List<IProject> findNestedProjects(IProject project) {
+        IPath location = project.getLocation();
+        if (location == null) {
+            return Collections.emptyList();
+        }
+        String prefix = normalize(location.toPortableString()) + "/";
+        // '0' is the character after '/', so this range covers every location starting with the prefix
+        String end = prefix.substring(0, prefix.length() - 1) + "0";
+        return new ArrayList<>(snapshot.sortedByLocation.subMap(prefix, true, end, false).values());
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        generation.incrementAndGet();
+        IResourceDelta delta = event.getDelta();
+        if (delta == null) {
+            return;
+        }
+        for (IResourceDelta child : delta.getAffectedChildren()) {
+            int kind = child.getKind();
+            if (kind == IResourceDelta.ADDED || kind == IResourceDelta.REMOVED
+                    || (child.getFlags() & PROJECT_CHANGE_FLAGS) != 0) {
+                rebuild();
+                return;
+            }
+        }
+    }
+
+    private void rebuild() {
+        Map<String, IProject> byLocation = new HashMap<>();
+        NavigableMap<String, IProject> sortedByLocation = new TreeMap<>();
+        for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+            IPath location = project.getLocation();
+            if (location != null) {
+                String key = normalize(location.toPortableString());
+                byLocation.put(key, project);
+                sortedByLocation.put(key, project);
+            }
+        }
+        snapshot = new Snapshot(byLocation, sortedByLocation);
+    }
+
+    /**
+     * Normalizes a path to use forward slashes without a trailing separator.
+     */
+    private static String normalize(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    /**
+     * Immutable view of the project locations, replaced as a whole on every change so lookups never need locking.
+     */
+    private static class Snapshot {
+        private final Map<String, IProject> byLocation;
+        private final NavigableMap<String, IProject> sortedByLocation;
+
+        Snapshot(Map<String, IProject> byLocation, NavigableMap<String, IProject> sortedByLocation) {
+            this.byLocation = byLocation;
+            this.sortedByLocation = sortedByLocation;
+        }
+    }
+}
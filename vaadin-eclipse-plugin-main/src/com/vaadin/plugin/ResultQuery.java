@@ -0,0 +1,201 @@
+package com.vaadin.plugin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Filter and page parameters for analyzer results such as components and entities. Clients can restrict results to a
+ * package, a class name pattern or an origin, and fetch them in pages so that large projects do not produce a single
+ * huge response.
+ * <p>
+ * Pages are ordered by class name and the cursor holds the class name of the last returned item. A cursor therefore
+ * stays valid when the project changes between two pages: classes added before it are not returned, but no class is
+ * returned twice.
+ */
+public class ResultQuery {
+
+    /** Largest page size a client can request. */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final String packagePrefix;
+    private final Pattern classNamePattern;
+    private final boolean qualifiedPattern;
+    private final String origin;
+    private final int pageSize;
+    private final String after;
+
+    private ResultQuery(String packagePrefix, String classNamePattern, String origin, int pageSize, String after) {
+        this.packagePrefix = packagePrefix;
+        this.classNamePattern = classNamePattern != null ? globToPattern(classNamePattern) : null;
+        this.qualifiedPattern = classNamePattern != null && classNamePattern.indexOf('.') >= 0;
+        this.origin = origin;
+        this.pageSize = pageSize;
+        this.after = after;
+    }
+
+    /**
+     * Reads the query from the optional {@code packagePrefix}, {@code classNamePattern}, {@code origin},
+     * {@code pageSize} and {@code cursor} fields of a command.
+     *
+     * @throws IllegalArgumentException
+     *             if the page size or cursor is invalid
+     */
+    public static ResultQuery fromJson(JsonObject data) {
+        int pageSize = 0;
+        JsonElement pageSizeElement = data.get("pageSize");
+        if (pageSizeElement != null && !pageSizeElement.isJsonNull()) {
+            pageSize = pageSizeElement.getAsInt();
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("pageSize must be positive");
+            }
+            pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+        }
+        String cursor = getString(data, "cursor");
+        return new ResultQuery(getString(data, "packagePrefix"), getString(data, "classNamePattern"),
+                getString(data, "origin"), pageSize, cursor != null ? decodeCursor(cursor) : null);
+    }
+
+    /**
+     * Returns whether the query neither filters nor pages, in which case results can be returned as they are.
+     */
+    public boolean isEmpty() {
+        return packagePrefix == null && classNamePattern == null && origin == null && pageSize == 0 && after == null;
+    }
+
+    /**
+     * Applies the query to a list of results.
+     *
+     * @param items
+     *            the results
+     * @param classKey
+     *            the key holding the fully qualified class name of a result
+     * @return the requested page
+     */
+    public Page apply(List<Map<String, Object>> items, String classKey) {
+        List<Map<String, Object>> matches = new ArrayList<>();
+        for (Map<String, Object> item : items) {
+            String className = String.valueOf(item.get(classKey));
+            if (matches(className, item)) {
+                matches.add(item);
+            }
+        }
+        matches.sort(Comparator.comparing(item -> String.valueOf(item.get(classKey))));
+
+        int start = 0;
+        if (after != null) {
+            while (start < matches.size() && String.valueOf(matches.get(start).get(classKey)).compareTo(after) <= 0) {
+                start++;
+            }
+        }
+        int end = pageSize > 0 ? Math.min(matches.size(), start + pageSize) : matches.size();
+        String nextCursor = end < matches.size() ? encodeCursor(String.valueOf(matches.get(end - 1).get(classKey)))
+                : null;
+        return new Page(new ArrayList<>(matches.subList(start, end)), matches.size(), nextCursor);
+    }
+
+    private boolean matches(String className, Map<String, Object> item) {
+        if (packagePrefix != null) {
+            int lastDot = className.lastIndexOf('.');
+            String packageName = lastDot > 0 ? className.substring(0, lastDot) : "";
+            if (!packageName.equals(packagePrefix) && !packageName.startsWith(packagePrefix + ".")) {
+                return false;
+            }
+        }
+        if (classNamePattern != null) {
+            // Without a dot the pattern applies to the simple name, nested class names included
+            String name = qualifiedPattern ? className : className.substring(className.lastIndexOf('.') + 1);
+            if (!classNamePattern.matcher(name).matches()) {
+                return false;
+            }
+        }
+        // The analyzers only report project types unless they say otherwise
+        return origin == null || origin.equals(String.valueOf(item.getOrDefault("origin", "project")));
+    }
+
+    /**
+     * Converts a pattern using {@code *} and {@code ?} wildcards to a regular expression.
+     */
+    private static Pattern globToPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static String getString(JsonObject data, String key) {
+        JsonElement element = data.get(key);
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        String value = element.getAsString();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String encodeCursor(String className) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(className.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * One page of results.
+     */
+    public static class Page {
+        private final List<Map<String, Object>> items;
+        private final int total;
+        private final String nextCursor;
+
+        Page(List<Map<String, Object>> items, int total, String nextCursor) {
+            this.items = items;
+            this.total = total;
+            this.nextCursor = nextCursor;
+        }
+
+        /** The results of this page. */
+        public List<Map<String, Object>> getItems() {
+            return items;
+        }
+
+        /** Returns the same page with other items, e.g. the items with more details added. */
+        public Page withItems(List<Map<String, Object>> newItems) {
+            return new Page(newItems, total, nextCursor);
+        }
+
+        /** Number of results matching the filters, over all pages. */
+        public int getTotal() {
+            return total;
+        }
+
+        /** Cursor of the next page, or {@code null} if this is the last page. */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.vaadin.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.filebuffers.LocationKind;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.UndoEdit;
+import org.eclipse.ui.PlatformUI;
+
+/**
+ * Applies text edits to a file without rewriting it as a whole. When the file is open in an editor the edits go
+ * through the editor's document, so the editor keeps its state and only the changed regions are updated; the document
+ * is saved unless it already had unsaved changes. Otherwise the file is read, edited and written.
+ * <p>
+ * Edits are given as replacements of character ranges of the current text, all relative to the text before the patch,
+ * or as a unified diff. Applying them yields the inverse replacements, which is all an undo step needs to keep.
+ */
+public class TextPatch {
+
+    private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@.*");
+
+    private TextPatch() {
+    }
+
+    /**
+     * Replacement of a range of characters.
+     */
+    public static class Replacement {
+        private final int offset;
+        private final int length;
+        private final String text;
+
+        public Replacement(int offset, int length, String text) {
+            if (offset < 0 || length < 0) {
+                throw new IllegalArgumentException("Invalid edit range " + offset + "+" + length);
+            }
+            this.offset = offset;
+            this.length = length;
+            this.text = text != null ? text : "";
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * Outcome of applying a patch to a file.
+     */
+    public static class Result {
+        private final List<Replacement> edits;
+        private final List<Replacement> inverse;
+        private final String oldHash;
+        private final String newHash;
+        private final boolean inEditor;
+        private final boolean saved;
+
+        Result(List<Replacement> edits, List<Replacement> inverse, String oldHash, String newHash, boolean inEditor,
+                boolean saved) {
+            this.edits = edits;
+            this.inverse = inverse;
+            this.oldHash = oldHash;
+            this.newHash = newHash;
+            this.inEditor = inEditor;
+            this.saved = saved;
+        }
+
+        /** The applied replacements, relative to the text before the patch. */
+        public List<Replacement> getEdits() {
+            return edits;
+        }
+
+        /** The replacements restoring the previous text, relative to the text after the patch. */
+        public List<Replacement> getInverse() {
+            return inverse;
+        }
+
+        /** Hash of the text before the patch, see {@link TextPatch#hash(String)}. */
+        public String getOldHash() {
+            return oldHash;
+        }
+
+        /** Hash of the text after the patch. */
+        public String getNewHash() {
+            return newHash;
+        }
+
+        /** Whether the text changed at all. */
+        public boolean isChanged() {
+            return !oldHash.equals(newHash);
+        }
+
+        /** Whether the patch was applied to the document of an open editor. */
+        public boolean isInEditor() {
+            return inEditor;
+        }
+
+        /** Whether the file on disk has the patched text. */
+        public boolean isSaved() {
+            return saved;
+        }
+    }
+
+    /**
+     * Returns the hash clients use to identify the text a patch is based on: the hex encoded SHA-256 of the UTF-8
+     * encoded text.
+     */
+    public static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Applies edits to a file.
+     *
+     * @param file
+     *            the file to patch, must exist
+     * @param editsForText
+     *            computes the replacements from the current text of the file
+     * @param expectedHash
+     *            the hash of the text the edits are based on, or {@code null} to skip the check
+     * @return the applied edits and their inverse
+     * @throws IllegalStateException
+     *             if the text does not have the expected hash or does not match the context of a diff
+     * @throws IllegalArgumentException
+     *             if the edits are out of range, overlap or cannot be parsed
+     */
+    public static Result apply(IFile file, Function<String, List<Replacement>> editsForText, String expectedHash)
+            throws CoreException, IOException {
+        ITextFileBufferManager manager = FileBuffers.getTextFileBufferManager();
+        IPath path = file.getFullPath();
+        if (manager.getTextFileBuffer(path, LocationKind.IFILE) == null) {
+            return applyToFile(file, editsForText, expectedHash);
+        }
+
+        // Connected for the duration of the patch, so that the buffer cannot go away if the editor is closed
+        manager.connect(path, LocationKind.IFILE, null);
+        try {
+            ITextFileBuffer buffer = manager.getTextFileBuffer(path, LocationKind.IFILE);
+            Result[] result = new Result[1];
+            Exception[] failure = new Exception[1];
+            Runnable patch = () -> {
+                try {
+                    boolean wasDirty = buffer.isDirty();
+                    IDocument document = buffer.getDocument();
+                    Result applied = applyToDocument(document, editsForText, expectedHash);
+                    boolean saved = !wasDirty;
+                    if (saved && applied.isChanged()) {
+                        buffer.commit(null, false);
+                    }
+                    result[0] = new Result(applied.edits, applied.inverse, applied.oldHash, applied.newHash, true,
+                            saved);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            };
+            if (PlatformUI.isWorkbenchRunning()) {
+                // Editors expect their documents to change on the UI thread only
+                PlatformUI.getWorkbench().getDisplay().syncExec(patch);
+            } else {
+                patch.run();
+            }
+            if (failure[0] instanceof CoreException) {
+                throw (CoreException) failure[0];
+            } else if (failure[0] instanceof RuntimeException) {
+                throw (RuntimeException) failure[0];
+            } else if (failure[0] != null) {
+                throw new IllegalArgumentException(failure[0].getMessage(), failure[0]);
+            }
+            return result[0];
+        } finally {
+            manager.disconnect(path, LocationKind.IFILE, null);
+        }
+    }
+
+    private static Result applyToFile(IFile file, Function<String, List<Replacement>> editsForText,
+            String expectedHash) throws CoreException, IOException {
+        String charset = file.getCharset();
+        String text;
+        try (InputStream in = file.getContents(true)) {
+            text = new String(in.readAllBytes(), charset);
+        }
+        IDocument document = new Document(text);
+        try {
+            Result result = applyToDocument(document, editsForText, expectedHash);
+            if (result.isChanged()) {
+                byte[] content = document.get().getBytes(charset);
+                file.setContents(new ByteArrayInputStream(content), true, true, null);
+                ContentDigestCache.getInstance().update(file, content);
+            }
+            return result;
+        } catch (BadLocationException e) {
+            throw new IllegalArgumentException("Edit outside of the file: " + e.getMessage(), e);
+        }
+    }
+
+    private static Result applyToDocument(IDocument document, Function<String, List<Replacement>> editsForText,
+            String expectedHash) throws BadLocationException {
+        String text = document.get();
+        String oldHash = hash(text);
+        if (expectedHash != null && !expectedHash.equalsIgnoreCase(oldHash)) {
+            throw new IllegalStateException("File has changed, expected base hash " + expectedHash);
+        }
+        List<Replacement> edits = editsForText.apply(text);
+
+        MultiTextEdit root = new MultiTextEdit();
+        try {
+            for (Replacement edit : edits) {
+                root.addChild(new ReplaceEdit(edit.offset, edit.length, edit.text));
+            }
+        } catch (MalformedTreeException e) {
+            throw new IllegalArgumentException("Edits must not overlap", e);
+        }
+        if (root.getExclusiveEnd() > text.length()) {
+            throw new IllegalArgumentException("Edit outside of the file, length is " + text.length());
+        }
+        UndoEdit undo = root.apply(document, TextEdit.CREATE_UNDO);
+
+        List<Replacement> inverse = new ArrayList<>();
+        for (TextEdit child : undo.getChildren()) {
+            ReplaceEdit replace = (ReplaceEdit) child;
+            inverse.add(new Replacement(replace.getOffset(), replace.getLength(), replace.getText()));
+        }
+        return new Result(edits, inverse, oldHash, hash(document.get()), false, false);
+    }
+
+    /**
+     * Converts a unified diff to replacements of the given text. Only the hunks are used, file headers are ignored.
+     *
+     * @throws IllegalStateException
+     *             if the removed or context lines of a hunk do not match the text
+     * @throws IllegalArgumentException
+     *             if the diff is malformed
+     */
+    public static List<Replacement> parseUnifiedDiff(String text, String diff) {
+        List<Integer> lineStarts = new ArrayList<>();
+        lineStarts.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n' && i + 1 < text.length()) {
+                lineStarts.add(i + 1);
+            }
+        }
+        int lineCount = text.isEmpty() ? 0 : lineStarts.size();
+        String delimiter = text.contains("\r\n") ? "\r\n" : "\n";
+
+        List<Replacement> replacements = new ArrayList<>();
+        String[] diffLines = diff.split("\n", -1);
+        int i = 0;
+        while (i < diffLines.length) {
+            Matcher header = HUNK_HEADER.matcher(stripCarriageReturn(diffLines[i]));
+            i++;
+            if (!header.matches()) {
+                continue;
+            }
+            int oldStart = Integer.parseInt(header.group(1));
+            int oldCount = header.group(2) != null ? Integer.parseInt(header.group(2)) : 1;
+            int newCount = header.group(4) != null ? Integer.parseInt(header.group(4)) : 1;
+
+            List<String> oldLines = new ArrayList<>();
+            StringBuilder newText = new StringBuilder();
+            boolean oldHasFinalNewline = true;
+            boolean newHasFinalNewline = true;
+            int newLines = 0;
+            char last = ' ';
+            while (i < diffLines.length && (oldLines.size() < oldCount || newLines < newCount
+                    || diffLines[i].startsWith("\\"))) {
+                String line = stripCarriageReturn(diffLines[i]);
+                i++;
+                char kind = line.isEmpty() ? ' ' : line.charAt(0);
+                String content = line.isEmpty() ? "" : line.substring(1);
+                if (kind == '\\') {
+                    // "\ No newline at end of file" applies to the line before it
+                    if (last != '+') {
+                        oldHasFinalNewline = false;
+                    }
+                    if (last != '-') {
+                        newHasFinalNewline = false;
+                    }
+                    continue;
+                }
+                if (kind != ' ' && kind != '-' && kind != '+') {
+                    throw new IllegalArgumentException("Unexpected line in hunk: " + line);
+                }
+                if (kind != '+') {
+                    oldLines.add(content);
+                }
+                if (kind != '-') {
+                    newText.append(content).append(delimiter);
+                    newLines++;
+                }
+                last = kind;
+            }
+            if (oldLines.size() != oldCount || newLines != newCount) {
+                throw new IllegalArgumentException("Hunk at line " + oldStart + " is truncated");
+            }
+            if (!newHasFinalNewline && newText.length() > 0) {
+                newText.setLength(newText.length() - delimiter.length());
+            }
+
+            // Without removed or context lines, a hunk inserts after the given line
+            int firstLine = oldCount == 0 ? oldStart : oldStart - 1;
+            if (firstLine < 0 || firstLine + oldCount > lineCount) {
+                throw new IllegalStateException("Hunk at line " + oldStart + " is outside of the file");
+            }
+            for (int j = 0; j < oldCount; j++) {
+                if (!getLine(text, lineStarts, firstLine + j).equals(oldLines.get(j))) {
+                    throw new IllegalStateException("Hunk at line " + oldStart + " does not match line "
+                            + (firstLine + j + 1) + " of the file");
+                }
+            }
+            int start = firstLine < lineCount ? lineStarts.get(firstLine) : text.length();
+            int end = firstLine + oldCount < lineCount ? lineStarts.get(firstLine + oldCount) : text.length();
+            if (oldCount > 0 && firstLine + oldCount == lineCount && oldHasFinalNewline != text.endsWith("\n")) {
+                throw new IllegalStateException("Hunk at line " + oldStart + " does not match the end of the file");
+            }
+            if (newHasFinalNewline && end == text.length() && !text.isEmpty() && !text.endsWith("\n")
+                    && oldCount == 0) {
+                // Appending to a last line without a line break
+                newText.insert(0, delimiter);
+            }
+            replacements.add(new Replacement(start, end - start, newText.toString()));
+        }
+        if (replacements.isEmpty()) {
+            throw new IllegalArgumentException("Diff does not contain any hunks");
+        }
+        return replacements;
+    }
+
+    private static String getLine(String text, List<Integer> lineStarts, int line) {
+        int start = lineStarts.get(line);
+        int end = line + 1 < lineStarts.size() ? lineStarts.get(line + 1) : text.length();
+        String content = text.substring(start, end);
+        if (content.endsWith("\n")) {
+            content = content.substring(0, content.length() - 1);
+        }
+        return stripCarriageReturn(content);
+    }
+
+    private static String stripCarriageReturn(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+}
@@ -0,0 +1,137 @@
+package com.vaadin.plugin;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.ITypeHierarchyChangedListener;
+import org.eclipse.jdt.core.JavaModelException;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Keeps type hierarchies alive between requests. Building the hierarchy of a type such as
+ * {@code com.vaadin.flow.component.Component} has to resolve a large number of library subtypes, so each hierarchy is
+ * built once per project and root type. JDT notifies the cache through {@link ITypeHierarchyChangedListener} when a
+ * hierarchy may have changed; it is then refreshed the next time it is requested.
+ */
+public class TypeHierarchyCache {
+
+    private static TypeHierarchyCache instance;
+
+    private final Map<Key, Entry> hierarchies = new ConcurrentHashMap<>();
+
+    public static synchronized TypeHierarchyCache getInstance() {
+        if (instance == null) {
+            instance = new TypeHierarchyCache();
+        }
+        return instance;
+    }
+
+    private TypeHierarchyCache() {
+    }
+
+    /**
+     * Releases all cached hierarchies.
+     */
+    public static synchronized void dispose() {
+        if (instance != null) {
+            instance.hierarchies.values().forEach(Entry::dispose);
+            instance.hierarchies.clear();
+            instance = null;
+        }
+    }
+
+    /**
+     * Returns all subtypes of the given type in the context of the project, building or refreshing the cached
+     * hierarchy if needed.
+     *
+     * @param javaProject
+     *            the project whose classpath defines the hierarchy
+     * @param rootType
+     *            the type at the root of the hierarchy
+     * @return the direct and indirect subtypes of the type
+     */
+    public IType[] getAllSubtypes(IJavaProject javaProject, IType rootType) throws JavaModelException {
+        Key key = new Key(javaProject, rootType.getFullyQualifiedName());
+        Entry entry = hierarchies.computeIfAbsent(key, k -> new Entry());
+        return entry.getAllSubtypes(javaProject, rootType);
+    }
+
+    /**
+     * Drops the hierarchies of a project, for example when it is closed or its classpath changes.
+     */
+    public void remove(IJavaProject javaProject) {
+        hierarchies.entrySet().removeIf(e -> {
+            if (e.getKey().javaProject.equals(javaProject)) {
+                e.getValue().dispose();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static class Key {
+        private final IJavaProject javaProject;
+        private final String typeName;
+
+        Key(IJavaProject javaProject, String typeName) {
+            this.javaProject = javaProject;
+            this.typeName = typeName;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return javaProject.equals(other.javaProject) && typeName.equals(other.typeName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(javaProject, typeName);
+        }
+    }
+
+    /**
+     * One cached hierarchy. The listener only flags the hierarchy as stale; the refresh runs on the next request.
+     */
+    private static class Entry implements ITypeHierarchyChangedListener {
+        private ITypeHierarchy hierarchy;
+        private volatile boolean stale;
+
+        synchronized IType[] getAllSubtypes(IJavaProject javaProject, IType rootType) throws JavaModelException {
+            if (hierarchy == null || !rootType.equals(hierarchy.getType()) || !hierarchy.exists()) {
+                dispose();
+                stale = false;
+                hierarchy = rootType.newTypeHierarchy(javaProject, null);
+                hierarchy.addTypeHierarchyChangedListener(this);
+                VaadinPluginLog.debug("Built type hierarchy of " + rootType.getFullyQualifiedName());
+            } else if (stale) {
+                // Cleared first, a change arriving during the refresh then triggers another one
+                stale = false;
+                hierarchy.refresh(null);
+                VaadinPluginLog.debug("Refreshed type hierarchy of " + rootType.getFullyQualifiedName());
+            }
+            // Read under the lock, the hierarchy must not be refreshed meanwhile
+            return hierarchy.getAllSubtypes(rootType);
+        }
+
+        synchronized void dispose() {
+            if (hierarchy != null) {
+                hierarchy.removeTypeHierarchyChangedListener(this);
+                hierarchy = null;
+            }
+        }
+
+        @Override
+        public void typeHierarchyChanged(ITypeHierarchy typeHierarchy) {
+            stale = true;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.vaadin.plugin;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Content-addressed files holding undo data that does not fit the heap budget of the {@link UndoContentStore}. Each
+ * blob is stored once under the SHA-256 of its content and reference counted, so identical data spilled for several
+ * files or versions takes the space once. Blobs are read through a memory mapping, leaving the caching of hot blobs to
+ * the operating system.
+ * <p>
+ * Hashing and writing a blob happen outside the store's monitor, only checking and updating the references and moving
+ * the finished file in place are done while holding it.
+ * <p>
+ * Undo history does not survive a restart, so blobs left over from a previous session are deleted when the store is
+ * opened and all blobs are deleted when it is closed.
+ */
+public class UndoBlobStore {
+
+    private final Path directory;
+    private final Map<String, Integer> references = new HashMap<>();
+    private final Map<String, Integer> lengths = new HashMap<>();
+    private long storedBytes;
+
+    public UndoBlobStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        deleteBlobs();
+    }
+
+    /**
+     * Stores data and references it.
+     *
+     * @return the key to read the data with
+     */
+    public String put(byte[] data) throws IOException {
+        String key = hash(data);
+        put(key, data);
+        return key;
+    }
+
+    /**
+     * Stores data under a key already computed by the caller and references it.
+     *
+     * @param key
+     *            the hex encoded SHA-256 of the data
+     */
+    void put(String key, byte[] data) throws IOException {
+        if (addReference(key)) {
+            return;
+        }
+        // Concurrent writers of the same data use their own temporary file
+        Path temp = Files.createTempFile(directory, key + ".", ".tmp");
+        try {
+            Files.write(temp, data);
+            synchronized (this) {
+                if (addReference(key)) {
+                    return;
+                }
+                // Blobs are only created and deleted while holding the monitor, so a release cannot delete this one
+                Files.move(temp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                references.put(key, 1);
+                lengths.put(key, data.length);
+                storedBytes += data.length;
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private synchronized boolean addReference(String key) {
+        Integer count = references.get(key);
+        if (count == null) {
+            return false;
+        }
+        references.put(key, count + 1);
+        return true;
+    }
+
+    /**
+     * Reads the data stored under the given key.
+     */
+    public byte[] get(String key) throws IOException {
+        synchronized (this) {
+            if (!references.containsKey(key)) {
+                throw new IOException("Undo data " + key + " is no longer stored");
+            }
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve(key), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return data;
+        }
+    }
+
+    /**
+     * Releases a reference taken by {@link #put(byte[])}, deleting the blob when it is no longer referenced.
+     */
+    public synchronized void release(String key) {
+        Integer count = references.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            references.put(key, count - 1);
+            return;
+        }
+        references.remove(key);
+        storedBytes -= lengths.remove(key);
+        try {
+            Files.deleteIfExists(directory.resolve(key));
+        } catch (IOException e) {
+            VaadinPluginLog.debug("Could not delete undo data " + key + ": " + e.getMessage());
+        }
+    }
+
+    /** Bytes stored in blobs. */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /** Number of stored blobs. */
+    public synchronized int size() {
+        return references.size();
+    }
+
+    /**
+     * Deletes all blobs.
+     */
+    public synchronized void close() {
+        references.clear();
+        lengths.clear();
+        storedBytes = 0;
+        try {
+            deleteBlobs();
+        } catch (IOException e) {
+            VaadinPluginLog.debug("Could not delete undo data in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void deleteBlobs() throws IOException {
+        Set<Path> files = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(files::add);
+        }
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.vaadin.plugin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Holds the checkpoints and deltas of the {@link FileUndoHistory file histories} within a heap budget. When the data
+ * kept on the heap exceeds the budget, the least recently used data is spilled to an {@link UndoBlobStore} and read
+ * back from there when an undo or redo needs it. Without a blob store, or if spilling fails, all data stays on the
+ * heap.
+ * <p>
+ * Data is interned by its SHA-256: Copilot often moves a file back and forth between a few states, so the same
+ * checkpoints and deltas come up again for other versions and even other files. Storing identical data returns the
+ * existing {@link Content} with one more reference, and the byte counts only include each unique content once.
+ * <p>
+ * Only the bookkeeping is done while holding the store's monitor. Hashing and writing spilled data happen outside it,
+ * so storing a large file does not hold up the undo operations of other files. Data chosen to be spilled is reserved
+ * first, stays readable from the heap while it is written and is only marked spilled once the write has finished.
+ */
+public class UndoContentStore {
+
+    private final long heapBudget;
+    private final UndoBlobStore blobStore;
+    /** Data on the heap, least recently used first. */
+    private final LinkedHashMap<Content, Boolean> resident = new LinkedHashMap<>(16, 0.75f, true);
+    /** All stored data by its hash. */
+    private final Map<String, Content> interned = new HashMap<>();
+    private long residentBytes;
+    /** Part of the resident bytes being written to the blob store. */
+    private long spillingBytes;
+    private long spilledBytes;
+    private long referencedBytes;
+
+    /**
+     * @param heapBudget
+     *            bytes of undo data to keep on the heap
+     * @param blobStore
+     *            where to spill data beyond the budget, or {@code null} to keep everything on the heap
+     */
+    public UndoContentStore(long heapBudget, UndoBlobStore blobStore) {
+        this.heapBudget = heapBudget;
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Stored data, on the heap or spilled.
+     */
+    public static class Content {
+        private byte[] data;
+        private final String hash;
+        private final int length;
+        private boolean spilling;
+        private boolean spilled;
+        private int references;
+
+        private Content(byte[] data, String hash) {
+            this.data = data;
+            this.hash = hash;
+            this.length = data.length;
+        }
+
+        /** Length of the data in bytes. */
+        public int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Stores data, or references the stored data if identical data is already stored. Every call must be matched by a
+     * call to {@link #release(Content)}.
+     *
+     * @param data
+     *            the data, must not be modified afterwards
+     */
+    public Content put(byte[] data) {
+        return intern(data, hash(data));
+    }
+
+    /**
+     * Stores data whose SHA-256 digest is already known, see {@link #put(byte[])}.
+     *
+     * @param data
+     *            the data, must not be modified afterwards
+     * @param digest
+     *            the SHA-256 digest of the data
+     */
+    public Content put(byte[] data, byte[] digest) {
+        return intern(data, HexFormat.of().formatHex(digest));
+    }
+
+    private Content intern(byte[] data, String hash) {
+        Content content;
+        List<Content> spills;
+        synchronized (this) {
+            content = interned.get(hash);
+            if (content == null) {
+                content = new Content(data, hash);
+                interned.put(hash, content);
+                resident.put(content, Boolean.TRUE);
+                residentBytes += content.length;
+            } else if (!content.spilled) {
+                // Marks the data as recently used
+                resident.get(content);
+            }
+            content.references++;
+            referencedBytes += content.length;
+            spills = reserveSpills();
+        }
+        spill(spills);
+        return content;
+    }
+
+    /**
+     * Returns stored data, reading it back from the blob store if it has been spilled. Spilled data stays spilled.
+     *
+     * @throws UncheckedIOException
+     *             if spilled data cannot be read
+     */
+    public byte[] get(Content content) {
+        synchronized (this) {
+            if (content.references == 0) {
+                throw new IllegalStateException("Undo data has been released");
+            }
+            if (!content.spilled) {
+                // Marks the data as recently used, data being spilled is no longer in the LRU order
+                resident.get(content);
+                return content.data;
+            }
+        }
+        try {
+            return blobStore.get(content.hash);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Whether the data is on the heap. */
+    public synchronized boolean isResident(Content content) {
+        return !content.spilled;
+    }
+
+    /**
+     * Releases a reference to stored data, dropping the data when it is no longer referenced.
+     */
+    public synchronized void release(Content content) {
+        if (content.references == 0) {
+            return;
+        }
+        content.references--;
+        referencedBytes -= content.length;
+        if (content.references > 0) {
+            return;
+        }
+        interned.remove(content.hash);
+        if (content.spilled) {
+            blobStore.release(content.hash);
+            spilledBytes -= content.length;
+        } else {
+            resident.remove(content);
+            residentBytes -= content.length;
+            content.data = null;
+            if (content.spilling) {
+                content.spilling = false;
+                spillingBytes -= content.length;
+            }
+        }
+    }
+
+    /** Bytes of unique data kept on the heap. */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /** Bytes of unique data spilled to the blob store. */
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /** Bytes of unique data, on the heap or spilled. */
+    public synchronized long getUniqueBytes() {
+        return residentBytes + spilledBytes;
+    }
+
+    /** Bytes of all references to stored data, what storing every copy separately would take. */
+    public synchronized long getReferencedBytes() {
+        return referencedBytes;
+    }
+
+    /** Number of unique data stored. */
+    public synchronized int size() {
+        return interned.size();
+    }
+
+    /**
+     * Releases all data and deletes the spilled data.
+     */
+    public synchronized void close() {
+        resident.clear();
+        interned.clear();
+        residentBytes = 0;
+        spillingBytes = 0;
+        spilledBytes = 0;
+        referencedBytes = 0;
+        if (blobStore != null) {
+            blobStore.close();
+        }
+    }
+
+    /**
+     * Takes the least recently used data over the budget out of the LRU order, so no other thread spills it too. The
+     * data stays resident until {@link #spill(List)} has written it.
+     */
+    private List<Content> reserveSpills() {
+        List<Content> spills = new ArrayList<>();
+        if (blobStore == null) {
+            return spills;
+        }
+        Iterator<Content> eldest = resident.keySet().iterator();
+        while (residentBytes - spillingBytes > heapBudget && eldest.hasNext()) {
+            Content content = eldest.next();
+            eldest.remove();
+            content.spilling = true;
+            spillingBytes += content.length;
+            spills.add(content);
+        }
+        return spills;
+    }
+
+    /**
+     * Writes reserved data to the blob store without holding the monitor, then publishes the result.
+     */
+    private void spill(List<Content> spills) {
+        for (Content content : spills) {
+            byte[] data;
+            synchronized (this) {
+                data = content.data;
+            }
+            boolean written = false;
+            if (data != null) {
+                try {
+                    blobStore.put(content.hash, data);
+                    written = true;
+                } catch (IOException e) {
+                    VaadinPluginLog.warning("Could not spill undo data, keeping it in memory: " + e.getMessage());
+                }
+            }
+            publishSpill(content, written);
+        }
+    }
+
+    private synchronized void publishSpill(Content content, boolean written) {
+        if (interned.get(content.hash) != content) {
+            // Released or closed while being written, the counts no longer include it
+            if (written) {
+                blobStore.release(content.hash);
+            }
+            return;
+        }
+        content.spilling = false;
+        spillingBytes -= content.length;
+        if (!written) {
+            resident.put(content, Boolean.TRUE);
+            return;
+        }
+        content.data = null;
+        content.spilled = true;
+        residentBytes -= content.length;
+        spilledBytes += content.length;
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,804 @@
+package com.vaadin.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Serves the Copilot handlers over a Unix domain socket. Local clients avoid the TCP stack and do not use up
+ * ephemeral loopback ports when they poll heavily.
+ * <p>
+ * The JDK {@code HttpServer} can only bind to TCP addresses, so this class implements the small part of HTTP/1.1 the
+ * handlers need: keep-alive connections, fixed length and chunked bodies in both directions. Each connection has its
+ * own reader thread, requests are handled on the same executor as the TCP server, and the next request of a
+ * connection is read when the previous exchange is closed. At most {@value #DEFAULT_MAX_CONNECTIONS} connections are
+ * open at a time, or as many as the {@value #CONNECTIONS_PROPERTY} system property allows, further clients get a busy
+ * status.
+ * <p>
+ * The socket file is created in a new directory only the current user can access, so other local users cannot
+ * connect to it, not even before its own permissions are set.
+ * <p>
+ * The transport is enabled unless the {@value #ENABLED_PROPERTY} system property is {@code false}.
+ */
+public class UnixSocketServer {
+
+    public static final String ENABLED_PROPERTY = "vaadin.copilot.unixSocket";
+    public static final String CONNECTIONS_PROPERTY = "vaadin.copilot.unixSocketConnections";
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 32;
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int MAX_HEADER_COUNT = 100;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final String fileName;
+    private final Executor executor;
+    private final int maxConnections;
+    private final Map<String, HttpHandler> contexts = new TreeMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocketChannel serverChannel;
+    private Path directory;
+    private Path path;
+
+    /**
+     * Creates a server for a socket file with the given name.
+     *
+     * @param fileName
+     *            the name of the socket file, created in a private temporary directory when the server starts
+     * @param executor
+     *            runs the handlers
+     */
+    public UnixSocketServer(String fileName, Executor executor) {
+        this.fileName = fileName;
+        this.executor = executor;
+        this.maxConnections = Math.max(1, Integer.getInteger(CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS));
+    }
+
+    /** Returns whether the Unix socket transport should be started. */
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+    }
+
+    /**
+     * Registers a handler for all request paths starting with the given path. The handler with the longest matching
+     * path handles a request, as with {@code HttpServer}.
+     */
+    public synchronized void createContext(String contextPath, HttpHandler handler) {
+        contexts.put(contextPath, handler);
+    }
+
+    /** Binds the socket and starts accepting connections. */
+    public void start() throws IOException {
+        // Loopback TCP is open to all local users, the socket need not be. A directory created as private leaves no
+        // window in which the socket file has the default permissions.
+        directory = createPrivateDirectory();
+        path = directory.resolve(fileName);
+        serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            serverChannel.bind(UnixDomainSocketAddress.of(path));
+        } catch (IOException | RuntimeException e) {
+            serverChannel.close();
+            serverChannel = null;
+            deleteFiles();
+            throw e;
+        }
+
+        Thread acceptor = new Thread(this::accept, "Copilot-UnixSocket");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Closes the socket, all open connections and deletes the socket file. */
+    public void stop() {
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                VaadinPluginLog.debug("Failed to close Unix socket: " + e.getMessage());
+            }
+            serverChannel = null;
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        deleteFiles();
+    }
+
+    /** The socket file clients connect to, {@code null} until the server is started. */
+    public Path getPath() {
+        return path;
+    }
+
+    private static Path createPrivateDirectory() throws IOException {
+        FileAttribute<Set<PosixFilePermission>> permissions = PosixFilePermissions
+                .asFileAttribute(PosixFilePermissions.fromString("rwx------"));
+        try {
+            return Files.createTempDirectory("vaadin-copilot-", permissions);
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system, the temporary directory is already per user
+            return Files.createTempDirectory("vaadin-copilot-");
+        }
+    }
+
+    private void deleteFiles() {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            VaadinPluginLog.debug("Failed to delete Unix socket file " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void accept() {
+        ServerSocketChannel channel = serverChannel;
+        while (channel != null && channel.isOpen()) {
+            try {
+                SocketChannel client = channel.accept();
+                if (connections.size() >= maxConnections) {
+                    // Only this thread adds connections, so the limit cannot be exceeded
+                    reject(client);
+                    continue;
+                }
+                Connection connection = new Connection(client);
+                connections.add(connection);
+                Thread thread = new Thread(connection, "Copilot-UnixSocket-Connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (channel.isOpen()) {
+                    VaadinPluginLog.warning("Failed to accept Unix socket connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers a client over the connection limit with a busy status and closes its connection, without starting a
+     * thread for it.
+     */
+    private static void reject(SocketChannel client) {
+        VaadinPluginLog.warning("Unix socket connection rejected, too many open connections");
+        try (client) {
+            client.configureBlocking(false);
+            // The response fits into the socket buffer, a client that does not read cannot block the acceptor
+            client.write(ByteBuffer.wrap(
+                    "HTTP/1.1 503 \r\nRetry-After: 1\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                            .getBytes(StandardCharsets.ISO_8859_1)));
+        } catch (IOException e) {
+            VaadinPluginLog.debug("Failed to reject Unix socket connection: " + e.getMessage());
+        }
+    }
+
+    private synchronized HttpHandler findHandler(String requestPath) {
+        HttpHandler handler = null;
+        int matchLength = -1;
+        for (Map.Entry<String, HttpHandler> context : contexts.entrySet()) {
+            String contextPath = context.getKey();
+            if (requestPath.startsWith(contextPath) && contextPath.length() > matchLength) {
+                handler = context.getValue();
+                matchLength = contextPath.length();
+            }
+        }
+        return handler;
+    }
+
+    /**
+     * Reads the requests of one client connection.
+     */
+    private class Connection implements Runnable {
+        private final SocketChannel channel;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.in = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+            this.out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (channel.isOpen()) {
+                    String requestLine = readLine(in);
+                    if (requestLine == null) {
+                        break;
+                    }
+                    if (requestLine.isEmpty()) {
+                        // Clients may send an empty line between requests
+                        continue;
+                    }
+                    Exchange exchange = readRequest(requestLine);
+                    if (exchange == null || !handle(exchange) || !exchange.keepAlive) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                VaadinPluginLog.debug("Unix socket connection closed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        private Exchange readRequest(String requestLine) throws IOException {
+            String[] parts = requestLine.split(" ");
+            if (parts.length != 3 || !parts[2].startsWith("HTTP/1.")) {
+                sendError(400);
+                return null;
+            }
+            URI uri;
+            try {
+                uri = new URI(parts[1]);
+            } catch (URISyntaxException e) {
+                sendError(400);
+                return null;
+            }
+
+            Headers requestHeaders = new Headers();
+            for (int i = 0;; i++) {
+                String line = readLine(in);
+                if (line == null) {
+                    return null;
+                }
+                if (line.isEmpty()) {
+                    break;
+                }
+                int colon = line.indexOf(':');
+                if (colon <= 0 || i >= MAX_HEADER_COUNT) {
+                    sendError(400);
+                    return null;
+                }
+                requestHeaders.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+
+            InputStream body;
+            String transferEncoding = requestHeaders.getFirst("Transfer-Encoding");
+            String contentLength = requestHeaders.getFirst("Content-Length");
+            if (transferEncoding != null && transferEncoding.equalsIgnoreCase("chunked")) {
+                body = new ChunkedInputStream(in);
+            } else if (contentLength != null) {
+                try {
+                    body = new FixedLengthInputStream(in, Long.parseLong(contentLength.trim()));
+                } catch (NumberFormatException e) {
+                    sendError(400);
+                    return null;
+                }
+            } else {
+                body = new FixedLengthInputStream(in, 0);
+            }
+
+            String connection = requestHeaders.getFirst("Connection");
+            boolean keepAlive = parts[2].equals("HTTP/1.1") ? !"close".equalsIgnoreCase(connection)
+                    : "keep-alive".equalsIgnoreCase(connection);
+            return new Exchange(this, parts[0], uri, parts[2], requestHeaders, body, keepAlive);
+        }
+
+        /**
+         * Runs the handler of a request and waits until the response is complete.
+         *
+         * @return {@code false} if the connection cannot be used for another request
+         */
+        private boolean handle(Exchange exchange) throws InterruptedException {
+            HttpHandler handler = findHandler(exchange.getRequestURI().getPath());
+            if (handler == null) {
+                exchange.sendNotFound();
+                return exchange.keepAlive;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        handler.handle(exchange);
+                    } catch (Exception e) {
+                        VaadinPluginLog.error("Error in Unix socket request handler", e);
+                        exchange.keepAlive = false;
+                        exchange.close();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The server is stopping
+                return false;
+            }
+            exchange.completed.await();
+            return exchange.finish();
+        }
+
+        private void sendError(int status) throws IOException {
+            out.write(("HTTP/1.1 " + status + " \r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+        }
+
+        void close() {
+            connections.remove(this);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * A request and its response on a Unix socket connection.
+     */
+    private static class Exchange extends HttpExchange {
+        private final Connection connection;
+        private final String method;
+        private final URI uri;
+        private final String protocol;
+        private final Headers requestHeaders;
+        private final InputStream originalRequestBody;
+        private final Headers responseHeaders = new Headers();
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private InputStream requestBody;
+        private OutputStream responseBody = new ResponseBody();
+        private OutputStream target;
+        private int responseCode = -1;
+        private volatile boolean keepAlive;
+
+        Exchange(Connection connection, String method, URI uri, String protocol, Headers requestHeaders,
+                InputStream requestBody, boolean keepAlive) {
+            this.connection = connection;
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.requestHeaders = requestHeaders;
+            this.requestBody = requestBody;
+            this.originalRequestBody = requestBody;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return responseHeaders;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return method;
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return null;
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return requestBody;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return responseBody;
+        }
+
+        @Override
+        public synchronized void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+            if (responseCode != -1) {
+                throw new IOException("Response headers already sent");
+            }
+            responseCode = rCode;
+            boolean noBody = responseLength == -1 || rCode == 204 || rCode == 304 || "HEAD".equals(method);
+            if (noBody) {
+                if (rCode != 204 && rCode != 304) {
+                    responseHeaders.set("Content-Length", "0");
+                }
+                responseHeaders.remove("Transfer-Encoding");
+            } else if (responseLength == 0) {
+                responseHeaders.set("Transfer-Encoding", "chunked");
+                responseHeaders.remove("Content-Length");
+            } else {
+                responseHeaders.set("Content-Length", Long.toString(responseLength));
+                responseHeaders.remove("Transfer-Encoding");
+            }
+            if (!keepAlive) {
+                responseHeaders.set("Connection", "close");
+            }
+
+            StringBuilder head = new StringBuilder("HTTP/1.1 ").append(rCode).append(" \r\n");
+            for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+                for (String value : header.getValue()) {
+                    head.append(header.getKey()).append(": ").append(value).append("\r\n");
+                }
+            }
+            head.append("\r\n");
+            connection.out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+            if (noBody) {
+                // As with HttpServer, the exchange is complete without being closed
+                target = new FixedLengthOutputStream(connection.out, 0);
+                connection.out.flush();
+                completed.countDown();
+            } else if (responseLength == 0) {
+                target = new ChunkedOutputStream(connection.out);
+            } else {
+                target = new FixedLengthOutputStream(connection.out, responseLength);
+            }
+        }
+
+        void sendNotFound() {
+            try {
+                sendResponseHeaders(404, -1);
+            } catch (IOException e) {
+                keepAlive = false;
+            }
+            close();
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public synchronized int getResponseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public String getProtocol() {
+            return protocol;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            if (value == null) {
+                attributes.remove(name);
+            } else {
+                attributes.put(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void setStreams(InputStream i, OutputStream o) {
+            if (i != null) {
+                requestBody = i;
+            }
+            if (o != null) {
+                responseBody = o;
+            }
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            try {
+                synchronized (this) {
+                    if (completed.getCount() == 0) {
+                        return;
+                    }
+                    if (target == null) {
+                        // No response was sent, the client can only tell from the connection closing
+                        keepAlive = false;
+                    } else {
+                        target.close();
+                    }
+                }
+            } catch (IOException e) {
+                keepAlive = false;
+            } finally {
+                completed.countDown();
+            }
+        }
+
+        /**
+         * Skips what the handler did not read of the request, so the next request can be read.
+         *
+         * @return {@code false} if the connection cannot be used for another request
+         */
+        boolean finish() {
+            if (!keepAlive) {
+                return false;
+            }
+            try {
+                originalRequestBody.transferTo(OutputStream.nullOutputStream());
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Writes to the stream chosen when the headers are sent.
+         */
+        private class ResponseBody extends OutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                getTarget().write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                getTarget().flush();
+            }
+
+            @Override
+            public void close() {
+                Exchange.this.close();
+            }
+
+            private OutputStream getTarget() throws IOException {
+                synchronized (Exchange.this) {
+                    if (target == null) {
+                        throw new IOException("Response headers not sent");
+                    }
+                    return target;
+                }
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Line too long");
+            }
+            line.write(b);
+        }
+        if (line.size() > 0) {
+            throw new IOException("Unexpected end of stream");
+        }
+        return null;
+    }
+
+    /**
+     * Reads a body of known length without reading past it, and never closes the connection.
+     */
+    private static class FixedLengthInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        FixedLengthInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                throw new IOException("Unexpected end of request body");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // Drained when the exchange finishes
+        }
+    }
+
+    private static class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+        private boolean eof;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+            if (remaining == 0) {
+                String sizeLine = readLine(in);
+                if (sizeLine == null) {
+                    throw new IOException("Unexpected end of request body");
+                }
+                int extension = sizeLine.indexOf(';');
+                try {
+                    remaining = Long.parseLong((extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim(),
+                            16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size: " + sizeLine);
+                }
+                if (remaining == 0) {
+                    // Skip trailers up to the empty line ending the body
+                    String trailer;
+                    while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+                        // Trailers are not used by the handlers
+                    }
+                    eof = true;
+                    return -1;
+                }
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                throw new IOException("Unexpected end of request body");
+            }
+            remaining -= n;
+            if (remaining == 0 && readLine(in) == null) {
+                throw new IOException("Unexpected end of request body");
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // Drained when the exchange finishes
+        }
+    }
+
+    private static class FixedLengthOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long remaining;
+        private boolean closed;
+
+        FixedLengthOutputStream(OutputStream out, long length) {
+            this.out = out;
+            this.remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Response body closed");
+            }
+            if (len > remaining) {
+                throw new IOException("Response body longer than the announced length");
+            }
+            out.write(b, off, len);
+            remaining -= len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            out.flush();
+            if (remaining > 0) {
+                throw new IOException("Response body shorter than the announced length");
+            }
+        }
+    }
+
+    private static class ChunkedOutputStream extends OutputStream {
+        private final OutputStream out;
+        private boolean closed;
+
+        ChunkedOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Response body closed");
+            }
+            if (len == 0) {
+                // An empty chunk would end the body
+                return;
+            }
+            out.write((Integer.toHexString(len) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.write(b, off, len);
+            out.write('\r');
+            out.write('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.vaadin.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Stores the per compilation unit analysis results of {@link VaadinModelIndex} in the plug-in state location, so that
+ * the first queries after a restart only analyze the files that changed in between.
+ * <p>
+ * Each project is stored in its own file using a compact binary format: a header followed by one entry per
+ * compilation unit holding its project relative path, the modification stamps of the file at analysis time and the
+ * analysis results.
+ */
+public class VaadinModelCache {
+
+    private static final int MAGIC = 0x5641444D; // "VADM"
+    private static final int FORMAT_VERSION = 1;
+    private static final String CACHE_FOLDER = "model-cache";
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    private VaadinModelCache() {
+    }
+
+    /**
+     * Loads the cached analysis results of a project.
+     *
+     * @param project
+     *            the project
+     * @return the cached unit models by project relative path, empty if there is no usable cache
+     */
+    public static Map<String, VaadinModelIndex.UnitModel> load(IProject project) {
+        Path file = getCacheFile(project);
+        if (file == null) {
+            return new HashMap<>();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !project.getName().equals(readString(in))) {
+                VaadinPluginLog.debug("Ignoring incompatible model cache " + file);
+                return new HashMap<>();
+            }
+            int count = in.readInt();
+            Map<String, VaadinModelIndex.UnitModel> units = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String path = readString(in);
+                long modificationStamp = in.readLong();
+                long localTimeStamp = in.readLong();
+                List<Map<String, Object>> routes = readList(in);
+                List<Map<String, Object>> entities = readList(in);
+                List<Map<String, Object>> securityConfigurations = readList(in);
+                units.put(path, new VaadinModelIndex.UnitModel(modificationStamp, localTimeStamp, routes, entities,
+                        securityConfigurations));
+            }
+            VaadinPluginLog.debug("Loaded " + count + " cached units for project " + project.getName());
+            return units;
+        } catch (NoSuchFileException e) {
+            return new HashMap<>();
+        } catch (IOException | RuntimeException e) {
+            VaadinPluginLog.warning("Could not read model cache " + file + ": " + e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Stores the analysis results of a project, replacing any earlier cache.
+     *
+     * @param project
+     *            the project
+     * @param units
+     *            the unit models by project relative path
+     */
+    public static void save(IProject project, Map<String, VaadinModelIndex.UnitModel> units) {
+        Path file = getCacheFile(project);
+        if (file == null) {
+            return;
+        }
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            // Write to a temporary file first so a crash never leaves a truncated cache behind
+            temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, project.getName());
+                out.writeInt(units.size());
+                for (Map.Entry<String, VaadinModelIndex.UnitModel> entry : units.entrySet()) {
+                    VaadinModelIndex.UnitModel unit = entry.getValue();
+                    writeString(out, entry.getKey());
+                    out.writeLong(unit.modificationStamp);
+                    out.writeLong(unit.localTimeStamp);
+                    writeList(out, unit.routes);
+                    writeList(out, unit.entities);
+                    writeList(out, unit.securityConfigurations);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            VaadinPluginLog.warning("Could not write model cache " + file + ": " + e.getMessage());
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the cached analysis results of a project, for example when the project is deleted.
+     */
+    public static void delete(IProject project) {
+        Path file = getCacheFile(project);
+        if (file != null) {
+            file.toFile().delete();
+        }
+    }
+
+    private static Path getCacheFile(IProject project) {
+        Activator activator = Activator.getDefault();
+        if (activator == null) {
+            // Not running inside the plug-in, nowhere to store the cache
+            return null;
+        }
+        String fileName = project.getName().replaceAll("[^A-Za-z0-9._-]", "_") + ".bin";
+        return activator.getStateLocation().toFile().toPath().resolve(CACHE_FOLDER).resolve(fileName);
+    }
+
+    private static void writeList(DataOutputStream out, List<Map<String, Object>> list) throws IOException {
+        out.writeInt(list.size());
+        for (Map<String, Object> map : list) {
+            out.writeInt(map.size());
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, String.valueOf(entry.getValue()));
+            }
+        }
+    }
+
+    private static List<Map<String, Object>> readList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int entries = in.readInt();
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int j = 0; j < entries; j++) {
+                map.put(readString(in), readString(in));
+            }
+            list.add(map);
+        }
+        return list;
+    }
+
+    /**
+     * Writes a length prefixed UTF-8 string. Unlike {@link DataOutputStream#writeUTF(String)} this has no 64 KB limit,
+     * which long method lists could exceed.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
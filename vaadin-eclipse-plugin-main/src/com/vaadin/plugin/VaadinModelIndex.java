@@ -0,0 +1,468 @@
+package com.vaadin.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import com.vaadin.plugin.util.VaadinPluginLog;
+
+/**
+ * Per-project index of the routes, components, entities and security configurations found by
+ * {@link VaadinProjectAnalyzer}.
+ * <p>
+ * A project is analyzed in full the first time it is queried. After that, Java element deltas mark the compilation
+ * units that changed, and only those are analyzed again on the next query. Components and user details services are
+ * found through type hierarchies which any change can affect, so they are cached as a whole and dropped whenever the
+ * project changes.
+ * <p>
+ * The per unit results are persisted with {@link VaadinModelCache}, so after a restart only the files that changed in
+ * the meantime are analyzed.
+ */
+public class VaadinModelIndex implements IElementChangedListener {
+
+    private static final int PROJECT_RESET_FLAGS = IJavaElementDelta.F_CLOSED | IJavaElementDelta.F_OPENED
+            | IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED;
+
+    /** Shared by all projects so that a stamp is never reused, even after a project index is dropped. */
+    private static final AtomicLong MODIFICATIONS = new AtomicLong();
+
+    /** Number of changed units above which the search index is used to skip units without annotations. */
+    private static final int SEARCH_THRESHOLD = 32;
+
+    private static VaadinModelIndex instance;
+
+    private final Map<IJavaProject, ProjectIndex> projects = new ConcurrentHashMap<>();
+    private final String session = Long.toString(System.currentTimeMillis(), 36);
+
+    public static synchronized VaadinModelIndex getInstance() {
+        if (instance == null) {
+            instance = new VaadinModelIndex();
+        }
+        return instance;
+    }
+
+    private VaadinModelIndex() {
+        JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+    }
+
+    /**
+     * Stops tracking Java model changes, persists the analysis results and drops all indexed data.
+     */
+    public static synchronized void dispose() {
+        if (instance != null) {
+            JavaCore.removeElementChangedListener(instance);
+            for (ProjectIndex index : instance.projects.values()) {
+                index.save();
+            }
+            instance.projects.clear();
+            instance = null;
+        }
+    }
+
+    /**
+     * Find all classes with @Route annotation.
+     */
+    public List<Map<String, Object>> getRoutes(IJavaProject javaProject) throws CoreException {
+        return getProject(javaProject).collect(unit -> unit.routes);
+    }
+
+    /**
+     * Find all Vaadin components (classes extending Component).
+     */
+    public List<Map<String, Object>> getComponents(IJavaProject javaProject, boolean includeMethods)
+            throws CoreException {
+        ProjectIndex index = getProject(javaProject);
+        Cached cached = includeMethods ? index.componentsWithMethods : index.components;
+        if (cached != null && cached.stamp == index.stamp) {
+            return cached.values;
+        }
+        long stamp = index.stamp;
+        List<Map<String, Object>> components = Collections
+                .unmodifiableList(index.analyzer.findVaadinComponents(includeMethods));
+        if (includeMethods) {
+            index.componentsWithMethods = new Cached(stamp, components);
+        } else {
+            index.components = new Cached(stamp, components);
+        }
+        return components;
+    }
+
+    /**
+     * Adds the methods to components returned by {@link #getComponents(IJavaProject, boolean)} without them. Filtered
+     * requests use this to build method signatures only for the components they return.
+     */
+    public List<Map<String, Object>> addComponentMethods(IJavaProject javaProject,
+            List<Map<String, Object>> components) throws CoreException {
+        return getProject(javaProject).analyzer.addComponentMethods(components);
+    }
+
+    /**
+     * Find all JPA entities.
+     */
+    public List<Map<String, Object>> getEntities(IJavaProject javaProject, boolean includeMethods)
+            throws CoreException {
+        List<Map<String, Object>> entities = getProject(javaProject).collect(unit -> unit.entities);
+        if (includeMethods) {
+            return entities;
+        }
+        List<Map<String, Object>> withoutMethods = new ArrayList<>(entities.size());
+        for (Map<String, Object> entity : entities) {
+            Map<String, Object> copy = new HashMap<>(entity);
+            copy.remove("methods");
+            withoutMethods.add(copy);
+        }
+        return withoutMethods;
+    }
+
+    /**
+     * Find Spring Security configurations.
+     */
+    public List<Map<String, Object>> getSecurityConfigurations(IJavaProject javaProject) throws CoreException {
+        return getProject(javaProject).collect(unit -> unit.securityConfigurations);
+    }
+
+    /**
+     * Find UserDetailsService implementations.
+     */
+    public List<Map<String, Object>> getUserDetailsServices(IJavaProject javaProject) throws CoreException {
+        ProjectIndex index = getProject(javaProject);
+        Cached cached = index.userDetailsServices;
+        if (cached != null && cached.stamp == index.stamp) {
+            return cached.values;
+        }
+        long stamp = index.stamp;
+        List<Map<String, Object>> services = Collections
+                .unmodifiableList(index.analyzer.findUserDetailsServices());
+        index.userDetailsServices = new Cached(stamp, services);
+        return services;
+    }
+
+    /**
+     * Returns a stamp that changes whenever the Java model of the project changes. Stamps are unique across projects
+     * and over the lifetime of the index.
+     */
+    public long getModificationStamp(IJavaProject javaProject) {
+        return getProject(javaProject).stamp;
+    }
+
+    /**
+     * Returns an opaque version stamp for the analysis results of the project. Unlike the modification stamp it is
+     * also unique across restarts, so clients may keep it between sessions.
+     */
+    public String getVersionStamp(IJavaProject javaProject) {
+        return session + "-" + Long.toString(getModificationStamp(javaProject), 36);
+    }
+
+    private ProjectIndex getProject(IJavaProject javaProject) {
+        return projects.computeIfAbsent(javaProject, ProjectIndex::new);
+    }
+
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+        Map<IJavaProject, Long> stamps = new HashMap<>();
+        for (Map.Entry<IJavaProject, ProjectIndex> entry : projects.entrySet()) {
+            stamps.put(entry.getKey(), entry.getValue().stamp);
+        }
+
+        processDelta(event.getDelta(), null);
+
+        // One event per project and change notification, however many units changed
+        for (Map.Entry<IJavaProject, Long> entry : stamps.entrySet()) {
+            ProjectIndex index = projects.get(entry.getKey());
+            if (index == null || index.stamp != entry.getValue()) {
+                Map<String, Object> data = new HashMap<>();
+                if (index != null) {
+                    data.put("stamp", getVersionStamp(entry.getKey()));
+                }
+                CopilotEventBus.publishIfActive(CopilotEventBus.INDEX_CHANGED, entry.getKey().getElementName(), data);
+            }
+        }
+    }
+
+    private void processDelta(IJavaElementDelta delta, ProjectIndex index) {
+        IJavaElement element = delta.getElement();
+        switch (element.getElementType()) {
+        case IJavaElement.JAVA_MODEL:
+            break;
+        case IJavaElement.JAVA_PROJECT:
+            index = projects.get(element);
+            if (index == null) {
+                // Not queried yet, nothing to update
+                return;
+            }
+            if (delta.getKind() == IJavaElementDelta.REMOVED || (delta.getFlags() & PROJECT_RESET_FLAGS) != 0) {
+                projects.remove(element);
+                TypeHierarchyCache.getInstance().remove((IJavaProject) element);
+                if (!index.project.exists()) {
+                    // Deleted, a new project with the same name must not pick up the old results
+                    VaadinModelCache.delete(index.project);
+                }
+                return;
+            }
+            break;
+        case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+            if (delta.getKind() != IJavaElementDelta.CHANGED) {
+                // A whole source folder came or went, analyze the project again
+                index.invalidateAll();
+                return;
+            }
+            break;
+        case IJavaElement.PACKAGE_FRAGMENT:
+            if (delta.getKind() == IJavaElementDelta.ADDED) {
+                index.invalidate((IPackageFragment) element);
+                return;
+            } else if (delta.getKind() == IJavaElementDelta.REMOVED) {
+                index.invalidateAll();
+                return;
+            }
+            break;
+        case IJavaElement.COMPILATION_UNIT:
+            index.invalidate(((ICompilationUnit) element).getPrimary());
+            return;
+        default:
+            return;
+        }
+        for (IJavaElementDelta child : delta.getAffectedChildren()) {
+            processDelta(child, index);
+        }
+    }
+
+    /**
+     * Analysis results of a single compilation unit, together with the modification stamps of its file when it was
+     * analyzed.
+     */
+    static class UnitModel {
+        final long modificationStamp;
+        final long localTimeStamp;
+        final List<Map<String, Object>> routes;
+        final List<Map<String, Object>> entities;
+        final List<Map<String, Object>> securityConfigurations;
+
+        UnitModel(long modificationStamp, long localTimeStamp, List<Map<String, Object>> routes,
+                List<Map<String, Object>> entities, List<Map<String, Object>> securityConfigurations) {
+            this.modificationStamp = modificationStamp;
+            this.localTimeStamp = localTimeStamp;
+            this.routes = routes;
+            this.entities = entities;
+            this.securityConfigurations = securityConfigurations;
+        }
+
+        static UnitModel analyze(VaadinProjectAnalyzer analyzer, ICompilationUnit unit) throws CoreException {
+            // Read the stamps first, an edit during the analysis then makes the result stale
+            long[] stamps = getStamps(unit);
+            return new UnitModel(stamps[0], stamps[1], analyzer.findVaadinRoutes(unit),
+                    analyzer.findEntities(unit, true), analyzer.findSecurityConfigurations(unit));
+        }
+
+        static UnitModel empty(ICompilationUnit unit) {
+            long[] stamps = getStamps(unit);
+            return new UnitModel(stamps[0], stamps[1], Collections.emptyList(), Collections.emptyList(),
+                    Collections.emptyList());
+        }
+
+        /**
+         * Checks whether this model was computed from the current content of the unit's file.
+         */
+        boolean isCurrent(ICompilationUnit unit) {
+            long[] stamps = getStamps(unit);
+            return modificationStamp != IResource.NULL_STAMP && modificationStamp == stamps[0]
+                    && localTimeStamp == stamps[1];
+        }
+
+        private static long[] getStamps(ICompilationUnit unit) {
+            IResource resource = unit.getResource();
+            try {
+                if (resource == null || unit.hasUnsavedChanges()) {
+                    // Content of an editor buffer, the file stamps do not describe it
+                    return new long[] { IResource.NULL_STAMP, IResource.NULL_STAMP };
+                }
+            } catch (JavaModelException e) {
+                return new long[] { IResource.NULL_STAMP, IResource.NULL_STAMP };
+            }
+            return new long[] { resource.getModificationStamp(), resource.getLocalTimeStamp() };
+        }
+    }
+
+    /**
+     * Result computed for a given modification stamp.
+     */
+    private static class Cached {
+        private final long stamp;
+        private final List<Map<String, Object>> values;
+
+        Cached(long stamp, List<Map<String, Object>> values) {
+            this.stamp = stamp;
+            this.values = values;
+        }
+    }
+
+    private interface UnitResults {
+        List<Map<String, Object>> get(UnitModel unit);
+    }
+
+    /**
+     * Index of one project. Change notifications only mark data as stale; the analysis itself runs on the querying
+     * thread, so the Java model listener never waits for it.
+     */
+    private static class ProjectIndex {
+        private final IProject project;
+        private final VaadinProjectAnalyzer analyzer;
+        private final Map<ICompilationUnit, UnitModel> units = new LinkedHashMap<>();
+        private final Set<ICompilationUnit> dirtyUnits = ConcurrentHashMap.newKeySet();
+        private volatile boolean built;
+        private volatile long stamp = MODIFICATIONS.incrementAndGet();
+        private volatile Cached components;
+        private volatile Cached componentsWithMethods;
+        private volatile Cached userDetailsServices;
+
+        ProjectIndex(IJavaProject javaProject) {
+            this.project = javaProject.getProject();
+            this.analyzer = new VaadinProjectAnalyzer(javaProject);
+        }
+
+        void invalidate(ICompilationUnit unit) {
+            dirtyUnits.add(unit);
+            stamp = MODIFICATIONS.incrementAndGet();
+        }
+
+        void invalidate(IPackageFragment pkg) {
+            try {
+                for (ICompilationUnit unit : pkg.getCompilationUnits()) {
+                    dirtyUnits.add(unit);
+                }
+                stamp = MODIFICATIONS.incrementAndGet();
+            } catch (JavaModelException e) {
+                invalidateAll();
+            }
+        }
+
+        void invalidateAll() {
+            built = false;
+            stamp = MODIFICATIONS.incrementAndGet();
+        }
+
+        synchronized List<Map<String, Object>> collect(UnitResults results) throws CoreException {
+            refresh();
+            List<Map<String, Object>> collected = new ArrayList<>();
+            for (UnitModel unit : units.values()) {
+                collected.addAll(results.get(unit));
+            }
+            return collected;
+        }
+
+        private void refresh() throws CoreException {
+            if (!built) {
+                // Flags are cleared before analyzing, so changes arriving meanwhile are picked up next time
+                built = true;
+                dirtyUnits.clear();
+                units.clear();
+                try {
+                    build();
+                } catch (CoreException | RuntimeException e) {
+                    built = false;
+                    throw e;
+                }
+                return;
+            }
+
+            Iterator<ICompilationUnit> dirty = dirtyUnits.iterator();
+            while (dirty.hasNext()) {
+                ICompilationUnit unit = dirty.next();
+                dirty.remove();
+                if (unit.exists()) {
+                    units.put(unit, UnitModel.analyze(analyzer, unit));
+                } else {
+                    units.remove(unit);
+                }
+            }
+        }
+
+        /**
+         * Builds the index, reusing the persisted results of units whose files did not change since they were stored.
+         * The remaining units are analyzed on the {@link AnalyzerPool}.
+         */
+        private void build() throws CoreException {
+            Map<String, UnitModel> persisted = VaadinModelCache.load(project);
+            List<ICompilationUnit> staleUnits = new ArrayList<>();
+            for (ICompilationUnit unit : analyzer.getSourceCompilationUnits()) {
+                UnitModel cached = persisted.get(getPath(unit));
+                if (cached != null && cached.isCurrent(unit)) {
+                    units.put(unit, cached);
+                } else {
+                    // Keeps the source order, the model is replaced below
+                    units.put(unit, null);
+                    staleUnits.add(unit);
+                }
+            }
+
+            // With many changed units, ask the search index which ones are worth opening
+            Set<ICompilationUnit> annotatedUnits = staleUnits.size() > SEARCH_THRESHOLD
+                    ? new HashSet<>(analyzer.findAnnotatedCompilationUnits())
+                    : null;
+            List<UnitModel> models = AnalyzerPool.getInstance().map(staleUnits, unit -> {
+                if (annotatedUnits != null && !annotatedUnits.contains(unit)) {
+                    return UnitModel.empty(unit);
+                }
+                try {
+                    return UnitModel.analyze(analyzer, unit);
+                } catch (JavaModelException e) {
+                    if (e.isDoesNotExist()) {
+                        // Deleted while scanning, the delta marks it dirty and the next refresh drops it
+                        return UnitModel.empty(unit);
+                    }
+                    throw e;
+                }
+            });
+            for (int i = 0; i < staleUnits.size(); i++) {
+                units.put(staleUnits.get(i), models.get(i));
+            }
+            VaadinPluginLog.debug("Indexed " + units.size() + " compilation units of project " + project.getName()
+                    + ", " + staleUnits.size() + " analyzed");
+
+            if (!staleUnits.isEmpty() || persisted.size() != units.size()) {
+                save();
+            }
+        }
+
+        /**
+         * Persists the current results. Units with pending changes are left out and analyzed again on next start.
+         */
+        synchronized void save() {
+            if (!built) {
+                return;
+            }
+            Map<String, UnitModel> persistent = new LinkedHashMap<>();
+            for (Map.Entry<ICompilationUnit, UnitModel> entry : units.entrySet()) {
+                if (!dirtyUnits.contains(entry.getKey())) {
+                    persistent.put(getPath(entry.getKey()), entry.getValue());
+                }
+            }
+            VaadinModelCache.save(project, persistent);
+        }
+
+        private static String getPath(ICompilationUnit unit) {
+            return unit.getPath().removeFirstSegments(1).toPortableString();
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package com.vaadin.plugin;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.jdt.core.IAnnotation;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
@@ -16,7 +19,6 @@ import org.eclipse.jdt.core.IMethod;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
-import org.eclipse.jdt.core.ITypeHierarchy;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.Signature;
 import org.eclipse.jdt.core.search.*;
@@ -26,6 +28,15 @@ import org.eclipse.jdt.core.search.*;
  */
 public class VaadinProjectAnalyzer {
 
+    private static final String ROUTE_ANNOTATION = "com.vaadin.flow.router.Route";
+    private static final String JAVAX_ENTITY_ANNOTATION = "javax.persistence.Entity";
+    private static final String JAKARTA_ENTITY_ANNOTATION = "jakarta.persistence.Entity";
+    private static final String ENABLE_WEB_SECURITY_ANNOTATION =
+            "org.springframework.security.config.annotation.web.configuration.EnableWebSecurity";
+
+    private static final String[] ALL_ANNOTATIONS = { ROUTE_ANNOTATION, JAVAX_ENTITY_ANNOTATION,
+            JAKARTA_ENTITY_ANNOTATION, ENABLE_WEB_SECURITY_ANNOTATION };
+
     private final IJavaProject javaProject;
 
     public VaadinProjectAnalyzer(IJavaProject javaProject) {
@@ -36,16 +47,27 @@ public class VaadinProjectAnalyzer {
      * Find all classes with @Route annotation.
      */
     public List<Map<String, Object>> findVaadinRoutes() throws CoreException {
-        List<Map<String, Object>> routes = new ArrayList<>();
-
         // Search for all types with @Route annotation
-        List<IType> routeTypes = findTypesWithAnnotation("com.vaadin.flow.router.Route");
+        return createRoutes(findTypesWithAnnotation(ROUTE_ANNOTATION));
+    }
+
+    /**
+     * Find the classes with @Route annotation declared in the given compilation unit.
+     */
+    public List<Map<String, Object>> findVaadinRoutes(ICompilationUnit unit) throws CoreException {
+        List<IType> routeTypes = new ArrayList<>();
+        findTypesWithAnnotation(unit, ROUTE_ANNOTATION, routeTypes);
+        return createRoutes(routeTypes);
+    }
+
+    private List<Map<String, Object>> createRoutes(List<IType> routeTypes) throws JavaModelException {
+        List<Map<String, Object>> routes = new ArrayList<>();
 
         for (IType type : routeTypes) {
             Map<String, Object> route = new HashMap<>();
 
             // Get the route value from annotation
-            String routeValue = getAnnotationValue(type, "com.vaadin.flow.router.Route", "value");
+            String routeValue = getAnnotationValue(type, ROUTE_ANNOTATION, "value");
             if (routeValue == null) {
                 routeValue = ""; // Default route
             }
@@ -72,8 +94,7 @@ public class VaadinProjectAnalyzer {
         }
 
         // Search for all subtypes of Component
-        ITypeHierarchy hierarchy = componentType.newTypeHierarchy(javaProject, null);
-        IType[] allSubtypes = hierarchy.getAllSubtypes(componentType);
+        IType[] allSubtypes = TypeHierarchyCache.getInstance().getAllSubtypes(javaProject, componentType);
 
         for (IType type : allSubtypes) {
             // Only include project types, not library types
@@ -88,14 +109,7 @@ public class VaadinProjectAnalyzer {
                 }
 
                 if (includeMethods) {
-                    StringBuilder methods = new StringBuilder();
-                    for (IMethod method : type.getMethods()) {
-                        if (methods.length() > 0) {
-                            methods.append(",");
-                        }
-                        methods.append(getMethodSignature(method));
-                    }
-                    component.put("methods", methods.toString());
+                    component.put("methods", getMethods(type));
                 }
 
                 components.add(component);
@@ -105,17 +119,47 @@ public class VaadinProjectAnalyzer {
         return components;
     }
 
+    /**
+     * Adds the methods to components found by {@link #findVaadinComponents(boolean)} without them.
+     *
+     * @return copies of the components including their methods
+     */
+    public List<Map<String, Object>> addComponentMethods(List<Map<String, Object>> components)
+            throws JavaModelException {
+        List<Map<String, Object>> result = new ArrayList<>(components.size());
+        for (Map<String, Object> component : components) {
+            Map<String, Object> copy = new HashMap<>(component);
+            // Member types are reported with '$', findType expects dots
+            IType type = javaProject.findType(String.valueOf(component.get("class")).replace('$', '.'));
+            copy.put("methods", type != null ? getMethods(type) : "");
+            result.add(copy);
+        }
+        return result;
+    }
+
     /**
      * Find all JPA entities.
      */
     public List<Map<String, Object>> findEntities(boolean includeMethods) throws CoreException {
-        List<Map<String, Object>> entities = new ArrayList<>();
-        Set<String> processedTypes = new HashSet<>();
-
         // Search for types with @Entity annotation
+        List<IType> entityTypes = findTypesWithAnnotation(JAVAX_ENTITY_ANNOTATION, JAKARTA_ENTITY_ANNOTATION);
+        return createEntities(entityTypes, includeMethods);
+    }
+
+    /**
+     * Find the JPA entities declared in the given compilation unit.
+     */
+    public List<Map<String, Object>> findEntities(ICompilationUnit unit, boolean includeMethods) throws CoreException {
         List<IType> entityTypes = new ArrayList<>();
-        entityTypes.addAll(findTypesWithAnnotation("javax.persistence.Entity"));
-        entityTypes.addAll(findTypesWithAnnotation("jakarta.persistence.Entity"));
+        findTypesWithAnnotation(unit, JAVAX_ENTITY_ANNOTATION, entityTypes);
+        findTypesWithAnnotation(unit, JAKARTA_ENTITY_ANNOTATION, entityTypes);
+        return createEntities(entityTypes, includeMethods);
+    }
+
+    private List<Map<String, Object>> createEntities(List<IType> entityTypes, boolean includeMethods)
+            throws JavaModelException {
+        List<Map<String, Object>> entities = new ArrayList<>();
+        Set<String> processedTypes = new HashSet<>();
 
         for (IType type : entityTypes) {
             String fullyQualifiedName = type.getFullyQualifiedName();
@@ -133,14 +177,7 @@ public class VaadinProjectAnalyzer {
             }
 
             if (includeMethods) {
-                StringBuilder methods = new StringBuilder();
-                for (IMethod method : type.getMethods()) {
-                    if (methods.length() > 0) {
-                        methods.append(",");
-                    }
-                    methods.append(getMethodSignature(method));
-                }
-                entity.put("methods", methods.toString());
+                entity.put("methods", getMethods(type));
             }
 
             entities.add(entity);
@@ -153,11 +190,22 @@ public class VaadinProjectAnalyzer {
      * Find Spring Security configurations.
      */
     public List<Map<String, Object>> findSecurityConfigurations() throws CoreException {
-        List<Map<String, Object>> configs = new ArrayList<>();
-
         // Search for @EnableWebSecurity or @Configuration with security beans
-        List<IType> securityTypes = findTypesWithAnnotation(
-                "org.springframework.security.config.annotation.web.configuration.EnableWebSecurity");
+        return createSecurityConfigurations(findTypesWithAnnotation(ENABLE_WEB_SECURITY_ANNOTATION));
+    }
+
+    /**
+     * Find the Spring Security configurations declared in the given compilation unit.
+     */
+    public List<Map<String, Object>> findSecurityConfigurations(ICompilationUnit unit) throws CoreException {
+        List<IType> securityTypes = new ArrayList<>();
+        findTypesWithAnnotation(unit, ENABLE_WEB_SECURITY_ANNOTATION, securityTypes);
+        return createSecurityConfigurations(securityTypes);
+    }
+
+    private List<Map<String, Object>> createSecurityConfigurations(List<IType> securityTypes)
+            throws JavaModelException {
+        List<Map<String, Object>> configs = new ArrayList<>();
 
         for (IType type : securityTypes) {
             Map<String, Object> config = new HashMap<>();
@@ -195,8 +243,8 @@ public class VaadinProjectAnalyzer {
         }
 
         // Search for all implementations
-        ITypeHierarchy hierarchy = userDetailsServiceType.newTypeHierarchy(javaProject, null);
-        IType[] implementations = hierarchy.getAllSubtypes(userDetailsServiceType);
+        IType[] implementations = TypeHierarchyCache.getInstance().getAllSubtypes(javaProject,
+                userDetailsServiceType);
 
         for (IType type : implementations) {
             // Only include project types
@@ -224,31 +272,170 @@ public class VaadinProjectAnalyzer {
     }
 
     /**
-     * Helper method to find types with a specific annotation.
+     * Returns all compilation units in the source folders of the project.
+     */
+    public List<ICompilationUnit> getSourceCompilationUnits() throws CoreException {
+        List<IPackageFragment> packages = new ArrayList<>();
+        for (IPackageFragment pkg : javaProject.getPackageFragments()) {
+            if (pkg.getKind() == IPackageFragmentRoot.K_SOURCE) {
+                packages.add(pkg);
+            }
+        }
+        List<ICompilationUnit[]> unitsByPackage = AnalyzerPool.getInstance().map(packages, pkg -> {
+            try {
+                return pkg.getCompilationUnits();
+            } catch (JavaModelException e) {
+                if (e.isDoesNotExist()) {
+                    // Removed while scanning, the change is reported separately
+                    return new ICompilationUnit[0];
+                }
+                throw e;
+            }
+        });
+        List<ICompilationUnit> units = new ArrayList<>();
+        for (ICompilationUnit[] packageUnits : unitsByPackage) {
+            units.addAll(Arrays.asList(packageUnits));
+        }
+        return units;
+    }
+
+    /**
+     * Returns the compilation units that may declare routes, entities or security configurations. The units are looked
+     * up in the search index when possible, otherwise all source compilation units are returned.
      */
-    private List<IType> findTypesWithAnnotation(String annotationName) throws CoreException {
-        List<IType> types = new ArrayList<>();
+    public List<ICompilationUnit> findAnnotatedCompilationUnits() throws CoreException {
+        List<IType> types = searchTypesWithAnnotation(ALL_ANNOTATIONS);
+        if (types == null) {
+            return getSourceCompilationUnits();
+        }
+        Set<ICompilationUnit> units = new LinkedHashSet<>();
+        for (IType type : types) {
+            if (type.getCompilationUnit() != null) {
+                units.add(type.getCompilationUnit());
+            }
+        }
+        return new ArrayList<>(units);
+    }
+
+    /**
+     * Helper method to find types with any of the given annotations.
+     */
+    private List<IType> findTypesWithAnnotation(String... annotationNames) throws CoreException {
+        List<IType> types = searchTypesWithAnnotation(annotationNames);
+        if (types != null) {
+            return types;
+        }
 
         // Search all compilation units in the project
-        IPackageFragment[] packages = javaProject.getPackageFragments();
-        for (IPackageFragment pkg : packages) {
-            if (pkg.getKind() == IPackageFragmentRoot.K_SOURCE) {
-                for (ICompilationUnit unit : pkg.getCompilationUnits()) {
-                    // Use getTypes() to get only top-level types first
-                    IType[] topLevelTypes = unit.getTypes();
-                    for (IType type : topLevelTypes) {
-                        // Check the top-level type
+        List<ICompilationUnit> units = getSourceCompilationUnits();
+        List<List<IType>> typesByUnit = AnalyzerPool.getInstance().map(units, unit -> {
+            List<IType> unitTypes = new ArrayList<>();
+            try {
+                for (String annotationName : annotationNames) {
+                    findTypesWithAnnotation(unit, annotationName, unitTypes);
+                }
+            } catch (JavaModelException e) {
+                if (!e.isDoesNotExist()) {
+                    throw e;
+                }
+            }
+            return unitTypes;
+        });
+
+        types = new ArrayList<>();
+        for (List<IType> unitTypes : typesByUnit) {
+            types.addAll(unitTypes);
+        }
+        return types;
+    }
+
+    /**
+     * Finds the types annotated with any of the given annotations using the JDT search index, which avoids opening
+     * every compilation unit. Annotation types that are not on the project classpath cannot be used in compiling code
+     * and are skipped.
+     *
+     * @return the annotated types, or {@code null} if the search index is not ready or none of the annotation types
+     *         is on the classpath, in which case the caller has to walk the Java model instead
+     */
+    private List<IType> searchTypesWithAnnotation(String... annotationNames) throws CoreException {
+        SearchPattern pattern = null;
+        for (String annotationName : annotationNames) {
+            IType annotationType = javaProject.findType(annotationName);
+            if (annotationType != null && annotationType.isAnnotation()) {
+                SearchPattern reference = SearchPattern.createPattern(annotationType,
+                        IJavaSearchConstants.ANNOTATION_TYPE_REFERENCE);
+                pattern = pattern == null ? reference : SearchPattern.createOrPattern(pattern, reference);
+            }
+        }
+        if (pattern == null) {
+            return null;
+        }
+
+        List<IPackageFragmentRoot> sourceRoots = new ArrayList<>();
+        for (IPackageFragmentRoot root : javaProject.getPackageFragmentRoots()) {
+            if (root.getKind() == IPackageFragmentRoot.K_SOURCE) {
+                sourceRoots.add(root);
+            }
+        }
+        IJavaSearchScope scope = SearchEngine.createJavaSearchScope(sourceRoots.toArray(new IJavaElement[0]),
+                IJavaSearchScope.SOURCES);
+        if (!isSearchIndexReady(scope)) {
+            return null;
+        }
+
+        Set<IType> types = new LinkedHashSet<>();
+        SearchRequestor requestor = new SearchRequestor() {
+            @Override
+            public void acceptSearchMatch(SearchMatch match) throws CoreException {
+                // The element enclosing an annotation reference is the annotated member
+                if (match.getElement() instanceof IType) {
+                    IType type = (IType) match.getElement();
+                    for (String annotationName : annotationNames) {
                         if (hasAnnotation(type, annotationName)) {
                             types.add(type);
+                            break;
                         }
-                        // Check nested types
-                        checkNestedTypes(type, annotationName, types);
                     }
                 }
             }
+        };
+        new SearchEngine().search(pattern, new SearchParticipant[] { SearchEngine.getDefaultSearchParticipant() },
+                scope, requestor, null);
+        return new ArrayList<>(types);
+    }
+
+    /**
+     * Checks whether the search index can answer queries right away, without waiting for indexing to finish.
+     */
+    private boolean isSearchIndexReady(IJavaSearchScope scope) {
+        try {
+            new SearchEngine().searchAllTypeNames(null, SearchPattern.R_EXACT_MATCH,
+                    "VaadinIndexProbe".toCharArray(), SearchPattern.R_EXACT_MATCH, IJavaSearchConstants.TYPE, scope,
+                    new TypeNameRequestor() {
+                    }, IJavaSearchConstants.CANCEL_IF_NOT_READY_TO_SEARCH, null);
+            return true;
+        } catch (OperationCanceledException e) {
+            return false;
+        } catch (JavaModelException e) {
+            return false;
         }
+    }
 
-        return types;
+    /**
+     * Finds the types with a specific annotation in one compilation unit, including nested types.
+     */
+    private void findTypesWithAnnotation(ICompilationUnit unit, String annotationName, List<IType> types)
+            throws JavaModelException {
+        // Use getTypes() to get only top-level types first
+        IType[] topLevelTypes = unit.getTypes();
+        for (IType type : topLevelTypes) {
+            // Check the top-level type
+            if (hasAnnotation(type, annotationName)) {
+                types.add(type);
+            }
+            // Check nested types
+            checkNestedTypes(type, annotationName, types);
+        }
     }
 
     /**
@@ -320,6 +507,20 @@ public class VaadinProjectAnalyzer {
     /**
      * Get method signature in a readable format.
      */
+    /**
+     * Returns the comma separated signatures of the methods declared by a type.
+     */
+    private String getMethods(IType type) throws JavaModelException {
+        StringBuilder methods = new StringBuilder();
+        for (IMethod method : type.getMethods()) {
+            if (methods.length() > 0) {
+                methods.append(",");
+            }
+            methods.append(getMethodSignature(method));
+        }
+        return methods.toString();
+    }
+
     private String getMethodSignature(IMethod method) throws JavaModelException {
         StringBuilder signature = new StringBuilder();
         signature.append(method.getElementName());
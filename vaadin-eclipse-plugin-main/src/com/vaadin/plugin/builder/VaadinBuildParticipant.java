@@ -12,7 +12,6 @@ import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 
@@ -20,6 +19,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.vaadin.plugin.ClasspathFingerprintCache;
 import com.vaadin.plugin.util.VaadinPluginLog;
 
 /**
@@ -65,26 +65,13 @@ public class VaadinBuildParticipant extends IncrementalProjectBuilder {
     }
 
     /**
-     * Checks if the project has Vaadin dependencies by examining the resolved classpath.
+     * Checks if the project has Vaadin dependencies using the cached fingerprint of its resolved classpath.
      */
     private boolean hasVaadinDependency(IProject project) {
         try {
             IJavaProject javaProject = JavaCore.create(project);
             if (javaProject != null) {
-                // Check the resolved classpath entries (includes Maven/Gradle dependencies)
-                IClasspathEntry[] classpath = javaProject.getResolvedClasspath(true);
-                for (IClasspathEntry entry : classpath) {
-                    String fullPath = entry.getPath().toString();
-                    // Extract just the filename from the path
-                    String filename = fullPath.substring(fullPath.lastIndexOf('/') + 1).toLowerCase();
-
-                    // Check for Vaadin in the filename only (not the full path)
-                    // This avoids false positives from temp directories containing "vaadin"
-                    if (filename.contains("vaadin")) {
-                        VaadinPluginLog.debug("    Found Vaadin dependency: " + entry.getPath());
-                        return true;
-                    }
-                }
+                return ClasspathFingerprintCache.getInstance().getFingerprint(javaProject).isVaadinProject();
             }
         } catch (Exception e) {
             // If we can't determine, assume no Vaadin dependency
@@ -0,0 +1,318 @@
+package com.vaadin.plugin.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Utility class for turning request content into input streams without materializing intermediate byte arrays. Large
+ * file contents received from Copilot are encoded or decoded chunk by chunk while the file is being written.
+ */
+public class ContentStreams {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ContentStreams() {
+    }
+
+    /**
+     * Returns a stream of the UTF-8 encoded bytes of the given text. Unmappable characters are replaced the same way
+     * as {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @param text
+     *            the text to encode
+     * @return a stream producing the encoded bytes
+     */
+    public static InputStream utf8(CharSequence text) {
+        return new EncodingInputStream(text);
+    }
+
+    /**
+     * Returns a stream of the bytes decoded from the given base64 text.
+     *
+     * @param base64
+     *            base64 encoded content
+     * @return a stream producing the decoded bytes, failing with an {@link IOException} on invalid input
+     */
+    public static InputStream base64Decoded(CharSequence base64) {
+        return Base64.getDecoder().wrap(new AsciiInputStream(base64));
+    }
+
+    /**
+     * Returns a stream passing the given stream through while keeping the bytes read and their SHA-256 digest. Writing
+     * a file from it yields the undo snapshot and the digest of the new content in the same pass, without encoding or
+     * hashing the content again or reading the file back.
+     *
+     * @param in
+     *            the stream to pass through
+     * @param expectedLength
+     *            the number of bytes the stream is expected to produce, so the snapshot is allocated once
+     * @return the capturing stream
+     */
+    public static CapturingInputStream capturing(InputStream in, long expectedLength) {
+        return new CapturingInputStream(in, expectedLength);
+    }
+
+    /**
+     * Checks that the given text only contains base64 characters, so that decoding can be streamed straight into a
+     * file without failing half way through.
+     *
+     * @param base64
+     *            text to check
+     * @return {@code true} if {@link #base64Decoded(CharSequence)} can decode the text
+     */
+    public static boolean isBase64(CharSequence base64) {
+        int length = base64.length();
+        int padding = 0;
+        while (padding < 2 && length - padding > 0 && base64.charAt(length - padding - 1) == '=') {
+            padding++;
+        }
+        int dataLength = length - padding;
+        if (padding > 0 ? length % 4 != 0 : dataLength % 4 == 1) {
+            return false;
+        }
+        for (int i = 0; i < dataLength; i++) {
+            char c = base64.charAt(i);
+            boolean valid = (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+'
+                    || c == '/';
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes {@link #utf8(CharSequence)} produces for the given text, without encoding it.
+     */
+    public static long utf8Length(CharSequence text) {
+        long length = 0;
+        int count = text.length();
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates are replaced by '?'
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the number of bytes {@link #base64Decoded(CharSequence)} produces for text accepted by
+     * {@link #isBase64(CharSequence)}, without decoding it.
+     */
+    public static long base64DecodedLength(CharSequence base64) {
+        int length = base64.length();
+        while (length > 0 && base64.charAt(length - 1) == '=') {
+            length--;
+        }
+        int remainder = length % 4;
+        return (long) (length / 4) * 3 + (remainder == 0 ? 0 : remainder - 1);
+    }
+
+    /**
+     * Keeps the bytes passing through and their SHA-256 digest, see {@link #capturing(InputStream, long)}.
+     */
+    public static class CapturingInputStream extends FilterInputStream {
+        private final MessageDigest digest;
+        private byte[] bytes;
+        private int length;
+        private byte[] result;
+
+        CapturingInputStream(InputStream in, long expectedLength) {
+            super(in);
+            this.bytes = new byte[(int) Math.min(Math.max(expectedLength, 0), Integer.MAX_VALUE - 8)];
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform supports SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) {
+                capture(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes are part of the content too
+            byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), BUFFER_SIZE)];
+            int count = read(buffer, 0, buffer.length);
+            return Math.max(count, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+            // Not supported, a reset would capture bytes twice
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        /**
+         * Returns the bytes read. Must only be called once the stream has been read to the end.
+         */
+        public byte[] getBytes() {
+            if (length != bytes.length) {
+                bytes = Arrays.copyOf(bytes, length);
+            }
+            return bytes;
+        }
+
+        /**
+         * Returns the SHA-256 digest of the bytes read. Must only be called once the stream has been read to the end.
+         */
+        public byte[] getDigest() {
+            if (result == null) {
+                result = digest.digest();
+            }
+            return result;
+        }
+
+        private void capture(byte[] b, int off, int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + count, bytes.length * 2));
+            }
+            System.arraycopy(b, off, bytes, length, count);
+            length += count;
+            digest.update(b, off, count);
+        }
+    }
+
+    /**
+     * Streams the characters of an ASCII text as bytes. Non-ASCII characters become {@code '?'} so that decoders
+     * reading the stream reject them.
+     */
+    private static class AsciiInputStream extends InputStream {
+        private final CharSequence chars;
+        private int position;
+
+        AsciiInputStream(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int read() {
+            if (position >= chars.length()) {
+                return -1;
+            }
+            return toAscii(chars.charAt(position++));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int remaining = chars.length() - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = Math.min(len, remaining);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = (byte) toAscii(chars.charAt(position++));
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chars.length() - position;
+        }
+
+        private static int toAscii(char c) {
+            return c < 0x80 ? c : '?';
+        }
+    }
+
+    /**
+     * Encodes a character sequence to UTF-8 in fixed size chunks.
+     */
+    private static class EncodingInputStream extends InputStream {
+        private final CharBuffer input;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+        private boolean finished;
+
+        EncodingInputStream(CharSequence text) {
+            this.input = CharBuffer.wrap(text);
+            this.output.flip();
+        }
+
+        @Override
+        public int read() {
+            if (!fillIfNeeded()) {
+                return -1;
+            }
+            return output.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fillIfNeeded()) {
+                return -1;
+            }
+            int count = Math.min(len, output.remaining());
+            output.get(b, off, count);
+            return count;
+        }
+
+        private boolean fillIfNeeded() {
+            while (!output.hasRemaining()) {
+                if (finished) {
+                    return false;
+                }
+                output.clear();
+                CoderResult result = encoder.encode(input, output, true);
+                if (result.isUnderflow()) {
+                    finished = encoder.flush(output).isUnderflow();
+                }
+                output.flip();
+            }
+            return true;
+        }
+    }
+}
@@ -263,6 +263,69 @@ public class AdvancedEndpointsTest extends BaseIntegrationTest {
 		assertEquals("Version should be N/A without Vaadin", "N/A", version);
 	}
 
+	@Test
+	public void testGetProjectSnapshotEndpoint() throws Exception {
+		JsonObject data = new JsonObject();
+		data.addProperty("includeMethods", true);
+
+		HttpResponse<String> response = client.sendCommand("getProjectSnapshot", data);
+		assertEquals("Should return 200", 200, response.statusCode());
+
+		JsonObject snapshot = gson.fromJson(response.body(), JsonObject.class);
+		assertTrue("Should have routes key", snapshot.has("routes"));
+		assertTrue("Should have components key", snapshot.has("components"));
+		assertTrue("Should have entities key", snapshot.has("entities"));
+		assertTrue("Should have security key", snapshot.has("security"));
+		assertTrue("Should have userDetails key", snapshot.has("userDetails"));
+		assertEquals("Version should be N/A without Vaadin", "N/A", snapshot.get("version").getAsString());
+		assertTrue("Should have stamp", snapshot.has("stamp"));
+		JsonObject versions = gson.fromJson(client.sendCommand("getVaadinVersion", new JsonObject()).body(),
+				JsonObject.class);
+		assertEquals("Should report the same Flow version as getVaadinVersion", versions.get("flowVersion"),
+				snapshot.get("flowVersion"));
+
+		// Nothing changed, the stamp stays the same
+		JsonObject again = gson.fromJson(client.sendCommand("getProjectSnapshot", data).body(), JsonObject.class);
+		assertEquals("Stamp should not change without edits", snapshot.get("stamp").getAsString(),
+				again.get("stamp").getAsString());
+
+		// A new class changes the stamp
+		createJavaClass("src", "com.example", "SnapshotView",
+				"package com.example;\n" + "@Route(\"snapshot\")\n" + "public class SnapshotView {}\n");
+		JsonObject changed = gson.fromJson(client.sendCommand("getProjectSnapshot", data).body(), JsonObject.class);
+		assertNotEquals("Stamp should change after an edit", snapshot.get("stamp").getAsString(),
+				changed.get("stamp").getAsString());
+	}
+
+	@Test
+	public void testAnalyzerEndpointNotModified() throws Exception {
+		JsonObject data = new JsonObject();
+		HttpResponse<String> response = client.sendCommand("getVaadinRoutes", data);
+		JsonObject first = gson.fromJson(response.body(), JsonObject.class);
+		assertTrue("Should have stamp", first.has("stamp"));
+		String stamp = first.get("stamp").getAsString();
+
+		// Resending the stamp without changes gives a not modified answer
+		data.addProperty("ifNoneMatch", stamp);
+		JsonObject second = gson.fromJson(client.sendCommand("getVaadinRoutes", data).body(), JsonObject.class);
+		assertTrue("Should not be modified", second.get("notModified").getAsBoolean());
+		assertFalse("Should not contain routes", second.has("routes"));
+
+		// After a change the full result is returned again
+		createJavaClass("src", "com.example", "StampView",
+				"package com.example;\n" + "@Route(\"stamp\")\n" + "public class StampView {}\n");
+		JsonObject third = gson.fromJson(client.sendCommand("getVaadinRoutes", data).body(), JsonObject.class);
+		assertFalse("Should be modified after a change", third.has("notModified"));
+		assertTrue("Should contain routes", third.has("routes"));
+		assertNotEquals("Stamp should change", stamp, third.get("stamp").getAsString());
+
+		// The client reuses its cached response transparently
+		JsonObject clientFirst = client.getVaadinRoutes().orElseThrow();
+		JsonObject clientSecond = client.getVaadinRoutes().orElseThrow();
+		assertTrue("Cached response should contain routes", clientSecond.has("routes"));
+		assertEquals("Cached response should match", clientFirst, clientSecond);
+	}
+
 	@Test
 	public void testCompileFilesEndpoint() throws Exception {
 		// Create a Java file to compile
@@ -350,6 +413,23 @@ public class AdvancedEndpointsTest extends BaseIntegrationTest {
 		assertEquals("Components should be empty without Vaadin", 0, components.size());
 	}
 
+	@Test
+	public void testGetVaadinComponentsFilteredWithMethods() throws Exception {
+		JsonObject data = new JsonObject();
+		data.addProperty("includeMethods", true);
+		data.addProperty("packagePrefix", "com.example");
+		data.addProperty("pageSize", 10);
+
+		HttpResponse<String> response = client.sendCommand("getVaadinComponents", data);
+		assertEquals("Should return 200", 200, response.statusCode());
+
+		JsonObject responseObj = gson.fromJson(response.body(), JsonObject.class);
+		assertEquals("Components should be empty without Vaadin", 0,
+				responseObj.getAsJsonArray("components").size());
+		assertEquals("Paged response should hold the total", 0, responseObj.get("total").getAsInt());
+		assertFalse("A single page should have no cursor", responseObj.has("nextCursor"));
+	}
+
 	@Test
 	public void testGetVaadinEntitiesEndpoint() throws Exception {
 		// Create an entity class
@@ -10,6 +10,10 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({CopilotRestServiceIntegrationTest.class, CopilotClientIntegrationTest.class, CopilotUtilTest.class,
 		VaadinProjectAnalyzerTest.class, CopilotUndoManagerTest.class, AdvancedEndpointsTest.class,
-		BinaryFileUndoRedoTest.class})
+		BinaryFileUndoRedoTest.class, CopilotWorkerPoolTest.class, ProjectLocationIndexTest.class,
+		VaadinModelIndexTest.class, TypeHierarchyCacheTest.class, ClasspathFingerprintCacheTest.class,
+		AnalyzerPoolTest.class, ResultQueryTest.class, CopilotEventBusTest.class, UnixSocketTransportTest.class,
+		LatencyHistogramTest.class, ProjectCommandLocksTest.class, TextPatchTest.class,
+		BinaryDeltaTest.class, FileUndoHistoryTest.class, UndoContentStoreTest.class})
 public class AllTests {
 }
@@ -0,0 +1,85 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.plugin.AnalyzerPool;
+
+/**
+ * Tests for the fork/join pool used for full project scans.
+ */
+public class AnalyzerPoolTest {
+
+	private AnalyzerPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new AnalyzerPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void testResultsKeepInputOrder() throws Exception {
+		List<Integer> items = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			items.add(i);
+		}
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+
+		List<String> results = pool.map(items, item -> {
+			threads.add(Thread.currentThread().getName());
+			return "item-" + item;
+		});
+
+		assertEquals("Should have one result per item", items.size(), results.size());
+		for (int i = 0; i < items.size(); i++) {
+			assertEquals("Result should be at the index of its item", "item-" + i, results.get(i));
+		}
+		assertTrue("Should run on analyzer threads",
+				threads.stream().anyMatch(name -> name.startsWith("Vaadin-Analyzer-")));
+	}
+
+	@Test
+	public void testTaskExceptionIsRethrown() {
+		List<Integer> items = List.of(1, 2, 3, 4, 5, 6, 7, 8);
+		try {
+			pool.map(items, item -> {
+				if (item == 5) {
+					throw new CoreException(new Status(IStatus.ERROR, "vaadin-eclipse-plugin", "Failed item " + item));
+				}
+				return item;
+			});
+			fail("Should rethrow the exception of the task");
+		} catch (CoreException e) {
+			assertEquals("Should keep the original status", IStatus.ERROR, e.getStatus().getSeverity());
+			assertEquals("Should keep the original message", "Failed item 5", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSingleThreadRunsOnCallingThread() throws Exception {
+		AnalyzerPool sequential = new AnalyzerPool(1);
+		try {
+			Thread caller = Thread.currentThread();
+			List<Boolean> results = sequential.map(List.of(1, 2, 3), item -> Thread.currentThread() == caller);
+			assertEquals("Should process all items on the calling thread", List.of(true, true, true), results);
+		} finally {
+			sequential.shutdown();
+		}
+	}
+}
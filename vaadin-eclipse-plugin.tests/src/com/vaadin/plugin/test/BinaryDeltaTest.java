@@ -0,0 +1,84 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.vaadin.plugin.BinaryDelta;
+
+/**
+ * Tests for the binary deltas of the undo history.
+ */
+public class BinaryDeltaTest {
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] roundTrip(byte[] source, byte[] target) {
+		byte[] delta = BinaryDelta.create(source, target);
+		byte[] result = BinaryDelta.apply(source, delta);
+		assertArrayEquals(target, result);
+		return delta;
+	}
+
+	@Test
+	public void testEmptyContents() {
+		roundTrip(new byte[0], new byte[0]);
+		roundTrip(new byte[0], bytes("new file"));
+		roundTrip(bytes("deleted"), new byte[0]);
+	}
+
+	@Test
+	public void testSingleEditIsSmall() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append("Line ").append(i).append(" of a view\n");
+		}
+		String source = text.toString();
+		String target = source.replace("Line 500 of", "Line five hundred of");
+
+		byte[] delta = roundTrip(bytes(source), bytes(target));
+		assertTrue("Delta should only hold the change, was " + delta.length, delta.length < 40);
+	}
+
+	@Test
+	public void testEditsAtSeveralPlaces() {
+		Random random = new Random(42);
+		byte[] source = new byte[64 * 1024];
+		random.nextBytes(source);
+		byte[] target = source.clone();
+		for (int i = 0; i < 10; i++) {
+			target[random.nextInt(target.length)] ^= 0x55;
+		}
+		byte[] delta = roundTrip(source, target);
+		assertTrue("Delta should copy the unchanged blocks, was " + delta.length, delta.length < 1024);
+	}
+
+	@Test
+	public void testMovedBlock() {
+		String head = "import com.vaadin.flow.component.button.Button;\n";
+		String body = "public class MainView extends VerticalLayout {\n    // view content\n}\n";
+		byte[] delta = roundTrip(bytes(head + body), bytes(body + head));
+		assertTrue("Moved content should be copied, was " + delta.length, delta.length < 40);
+	}
+
+	@Test
+	public void testUnrelatedContents() {
+		Random random = new Random(7);
+		byte[] source = new byte[4096];
+		byte[] target = new byte[5000];
+		random.nextBytes(source);
+		random.nextBytes(target);
+		roundTrip(source, target);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDeltaForOtherSource() {
+		byte[] delta = BinaryDelta.create(bytes("a long enough source text"), bytes("a long enough target text"));
+		BinaryDelta.apply(bytes("short"), delta);
+	}
+}
@@ -221,6 +221,40 @@ public class BinaryFileUndoRedoTest extends BaseIntegrationTest {
 		assertArrayEquals("Binary should be reverted", binaryContent, currentBinary);
 	}
 
+	@Test
+	public void testRawBinaryUploadUndo() throws Exception {
+		byte[] originalData = new byte[]{(byte) 0xCA, (byte) 0xFE, 0x00, (byte) 0xBA, (byte) 0xBE};
+		byte[] modifiedData = new byte[2048];
+		for (int i = 0; i < modifiedData.length; i++) {
+			modifiedData[i] = (byte) (255 - i % 256);
+		}
+		Path filePath = Paths.get(testProject.getLocation().toString(), "raw upload.bin");
+
+		// Upload the raw bytes without base64 encoding
+		HttpResponse<String> response1 = client.writeBinary(filePath, originalData, "Upload original");
+		assertEquals("First upload should succeed", 200, response1.statusCode());
+		HttpResponse<String> response2 = client.writeBinary(filePath, modifiedData, "Upload modified");
+		assertEquals("Second upload should succeed", 200, response2.statusCode());
+
+		IFile file = testProject.getFile("raw upload.bin");
+		byte[] currentData;
+		try (java.io.InputStream is = file.getContents()) {
+			currentData = is.readAllBytes();
+		}
+		assertArrayEquals("Should have uploaded data", modifiedData, currentData);
+
+		// Undo restores the previous upload
+		HttpResponse<String> undoResponse = client.undo(filePath);
+		JsonObject undoResult = gson.fromJson(undoResponse.body(), JsonObject.class);
+		assertTrue("Undo should be performed", undoResult.get("performed").getAsBoolean());
+
+		file.refreshLocal(0, null);
+		try (java.io.InputStream is = file.getContents()) {
+			currentData = is.readAllBytes();
+		}
+		assertArrayEquals("Should have original data after undo", originalData, currentData);
+	}
+
 	@Test
 	public void testEmptyBinaryFileUndo() throws Exception {
 		// Test handling of empty binary files
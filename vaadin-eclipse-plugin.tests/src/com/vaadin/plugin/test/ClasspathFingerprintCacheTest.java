@@ -0,0 +1,120 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.junit.Test;
+
+import com.vaadin.plugin.ClasspathFingerprintCache;
+import com.vaadin.plugin.ClasspathFingerprintCache.ClasspathFingerprint;
+
+/**
+ * Tests for the cached classpath fingerprints.
+ */
+public class ClasspathFingerprintCacheTest extends BaseIntegrationTest {
+
+	private IJavaProject javaProject;
+	private IClasspathEntry sourceEntry;
+	private IClasspathEntry containerEntry;
+
+	@Override
+	protected void doSetUp() throws CoreException {
+		if (!testProject.hasNature(JavaCore.NATURE_ID)) {
+			IProjectDescription description = testProject.getDescription();
+			String[] prevNatures = description.getNatureIds();
+			String[] newNatures = new String[prevNatures.length + 1];
+			System.arraycopy(prevNatures, 0, newNatures, 0, prevNatures.length);
+			newNatures[prevNatures.length] = JavaCore.NATURE_ID;
+			description.setNatureIds(newNatures);
+			testProject.setDescription(description, null);
+		}
+		javaProject = JavaCore.create(testProject);
+
+		IFolder srcFolder = testProject.getFolder("src");
+		if (!srcFolder.exists()) {
+			srcFolder.create(true, true, null);
+		}
+		sourceEntry = JavaCore.newSourceEntry(srcFolder.getFullPath());
+		containerEntry = JavaCore.newContainerEntry(
+				org.eclipse.core.runtime.Path.fromPortableString("org.eclipse.jdt.launching.JRE_CONTAINER"));
+		javaProject.setRawClasspath(new IClasspathEntry[]{sourceEntry, containerEntry}, null);
+	}
+
+	@Test
+	public void testPlainProjectHasNoVaadin() throws Exception {
+		ClasspathFingerprint fingerprint = ClasspathFingerprintCache.getInstance().getFingerprint(javaProject);
+		assertFalse("Project should not be a Vaadin project", fingerprint.isVaadinProject());
+		assertNull("Vaadin version should be unknown", fingerprint.getVaadinVersion());
+		assertNull("Flow version should be unknown", fingerprint.getFlowVersion());
+		assertNotNull("Hash should be computed", fingerprint.getHash());
+	}
+
+	@Test
+	public void testVersionsAreReadFromJarMetadata() throws Exception {
+		// The file names deliberately carry other versions than the metadata
+		IFile vaadinCore = createJar("vaadin-core-0.0.jar", "META-INF/maven/com.vaadin/vaadin-core/pom.properties",
+				"groupId=com.vaadin\nartifactId=vaadin-core\nversion=24.4.1\n", null);
+		IFile flowServer = createJar("flow-server-0.0.jar", null, null, "24.4.3");
+
+		ClasspathFingerprintCache cache = ClasspathFingerprintCache.getInstance();
+		String plainHash = cache.getFingerprint(javaProject).getHash();
+
+		javaProject.setRawClasspath(new IClasspathEntry[]{sourceEntry, containerEntry,
+				JavaCore.newLibraryEntry(vaadinCore.getFullPath(), null, null),
+				JavaCore.newLibraryEntry(flowServer.getFullPath(), null, null)}, null);
+
+		ClasspathFingerprint fingerprint = cache.getFingerprint(javaProject);
+		assertTrue("Project should be a Vaadin project", fingerprint.isVaadinProject());
+		assertEquals("Vaadin version should come from pom.properties", "24.4.1", fingerprint.getVaadinVersion());
+		assertEquals("Flow version should come from the manifest", "24.4.3", fingerprint.getFlowVersion());
+		assertNotEquals("Hash should change with the classpath", plainHash, fingerprint.getHash());
+		assertSame("Fingerprint should be cached while the classpath is unchanged", fingerprint,
+				cache.getFingerprint(javaProject));
+
+		// Removing the jars changes the resolved classpath, which drops the cached fingerprint
+		javaProject.setRawClasspath(new IClasspathEntry[]{sourceEntry, containerEntry}, null);
+		fingerprint = cache.getFingerprint(javaProject);
+		assertFalse("Project should no longer be a Vaadin project", fingerprint.isVaadinProject());
+		assertEquals("Hash should match the original classpath", plainHash, fingerprint.getHash());
+	}
+
+	private IFile createJar(String name, String entryName, String entryContent, String implementationVersion)
+			throws CoreException, IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		if (implementationVersion != null) {
+			manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, implementationVersion);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JarOutputStream jar = new JarOutputStream(bytes, manifest)) {
+			if (entryName != null) {
+				jar.putNextEntry(new ZipEntry(entryName));
+				jar.write(entryContent.getBytes(StandardCharsets.UTF_8));
+				jar.closeEntry();
+			}
+		}
+
+		IFolder libFolder = testProject.getFolder("lib");
+		if (!libFolder.exists()) {
+			libFolder.create(true, true, null);
+		}
+		IFile file = libFolder.getFile(name);
+		file.create(new ByteArrayInputStream(bytes.toByteArray()), true, null);
+		return file;
+	}
+}
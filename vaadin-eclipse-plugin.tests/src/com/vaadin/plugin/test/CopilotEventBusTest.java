@@ -0,0 +1,160 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.Test;
+
+import com.vaadin.plugin.CopilotClient;
+import com.vaadin.plugin.CopilotEventBus;
+import com.vaadin.plugin.CopilotRestService;
+
+/**
+ * Tests for the server-sent event stream of the Copilot REST service.
+ */
+public class CopilotEventBusTest extends BaseIntegrationTest {
+
+	private CopilotRestService restService;
+	private CopilotClient client;
+	private final List<Stream<String>> streams = new ArrayList<>();
+
+	@Override
+	protected void doSetUp() throws CoreException {
+		restService = new CopilotRestService();
+		try {
+			restService.start();
+			client = new CopilotClient(restService.getEndpoint(), testProject.getLocation().toOSString());
+		} catch (Exception e) {
+			fail("Failed to start REST service: " + e.getMessage());
+		}
+	}
+
+	@Override
+	protected void doTearDown() throws CoreException {
+		streams.forEach(Stream::close);
+		CopilotEventBus.dispose();
+		if (restService != null) {
+			restService.stop();
+		}
+	}
+
+	@Test
+	public void testFileChangesArePushed() throws Exception {
+		BlockingQueue<String> lines = open(null);
+
+		IFile file = testProject.getFile("pushed.txt");
+		file.create(new java.io.ByteArrayInputStream("content".getBytes()), true, null);
+
+		String id = awaitEvent(lines, "fileChanged", "pushed.txt");
+		assertNotNull("Should receive an event id", id);
+
+		// A client reconnecting with an older id gets the event again
+		BlockingQueue<String> resumed = open(String.valueOf(Long.parseLong(id) - 1));
+		assertEquals("Should replay the missed event", id, awaitEvent(resumed, "fileChanged", "pushed.txt"));
+	}
+
+	@Test
+	public void testConcurrentPublishersGetIncreasingIds() throws Exception {
+		BlockingQueue<String> lines = open(null);
+		int publishers = 8;
+		int eventsPerPublisher = 50;
+
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < publishers; p++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < eventsPerPublisher; i++) {
+					CopilotEventBus.getInstance().publish("concurrentTest", null, Map.of());
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Every event must arrive, with ids in the order they are sent
+		long previousId = 0;
+		int received = 0;
+		long deadline = System.currentTimeMillis() + 10000;
+		while (received < publishers * eventsPerPublisher && System.currentTimeMillis() < deadline) {
+			String line = lines.poll(100, TimeUnit.MILLISECONDS);
+			if (line == null) {
+				continue;
+			}
+			if (line.startsWith("id: ")) {
+				long id = Long.parseLong(line.substring(4));
+				assertTrue("Ids should increase", id > previousId);
+				previousId = id;
+			} else if (line.equals("event: concurrentTest")) {
+				received++;
+			}
+		}
+		assertEquals("Should receive every published event", publishers * eventsPerPublisher, received);
+	}
+
+	private BlockingQueue<String> open(String lastEventId) throws Exception {
+		HttpResponse<Stream<String>> response = client.openEventStream(lastEventId);
+		assertEquals("Should open the stream", 200, response.statusCode());
+		assertTrue("Should be an event stream",
+				response.headers().firstValue("Content-Type").orElse("").startsWith("text/event-stream"));
+
+		BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+		Stream<String> body = response.body();
+		streams.add(body);
+		Thread reader = new Thread(() -> {
+			try {
+				body.forEach(lines::add);
+			} catch (RuntimeException e) {
+				// Stream closed by the test
+			}
+		});
+		reader.setDaemon(true);
+		reader.start();
+		return lines;
+	}
+
+	/**
+	 * Waits for an event of the given type whose data contains the given text.
+	 *
+	 * @return the id of the event
+	 */
+	private String awaitEvent(BlockingQueue<String> lines, String type, String text) throws InterruptedException {
+		String id = null;
+		String event = null;
+		long deadline = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < deadline) {
+			String line = lines.poll(100, TimeUnit.MILLISECONDS);
+			if (line == null) {
+				continue;
+			}
+			if (line.startsWith("id: ")) {
+				id = line.substring(4);
+			} else if (line.startsWith("event: ")) {
+				event = line.substring(7);
+			} else if (line.startsWith("data: ") && type.equals(event) && line.contains(text)) {
+				return id;
+			}
+		}
+		fail("Did not receive " + type + " event for " + text);
+		return null;
+	}
+}
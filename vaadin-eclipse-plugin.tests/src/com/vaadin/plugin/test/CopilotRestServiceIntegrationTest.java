@@ -2,12 +2,16 @@ package com.vaadin.plugin.test;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.zip.GZIPInputStream;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -18,6 +22,7 @@ import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.vaadin.plugin.CopilotRestService;
 import com.vaadin.plugin.Message;
+import com.vaadin.plugin.TextPatch;
 
 /**
  * Integration tests for CopilotRestService that test the full REST API chain
@@ -175,6 +180,37 @@ public class CopilotRestServiceIntegrationTest extends BaseIntegrationTest {
 		}
 	}
 
+	@Test
+	public void testWriteBase64LargeFile() throws Exception {
+		byte[] binaryData = new byte[4 * 1024 * 1024 + 3];
+		new java.util.Random(42).nextBytes(binaryData);
+		String fileName = testProject.getLocation().append("large-binary.dat").toString();
+
+		Message.WriteFileMessage writeMsg = new Message.WriteFileMessage(fileName, "Large Write",
+				Base64.getEncoder().encodeToString(binaryData));
+		String response = sendRestRequest("writeBase64", writeMsg);
+
+		JsonObject responseObj = gson.fromJson(response, JsonObject.class);
+		assertEquals("ok", responseObj.get("status").getAsString());
+
+		IFile file = testProject.getFile("large-binary.dat");
+		try (java.io.InputStream is = file.getContents()) {
+			assertArrayEquals("Large binary content should match", binaryData, is.readAllBytes());
+		}
+	}
+
+	@Test
+	public void testWriteBase64InvalidContent() throws Exception {
+		String fileName = testProject.getLocation().append("invalid-binary.dat").toString();
+
+		Message.WriteFileMessage writeMsg = new Message.WriteFileMessage(fileName, "Invalid Write", "not*base64!");
+		String response = sendRestRequest("writeBase64", writeMsg);
+
+		JsonObject responseObj = gson.fromJson(response, JsonObject.class);
+		assertTrue("Response should contain error", responseObj.has("error"));
+		assertFalse("File should not be created", testProject.getFile("invalid-binary.dat").exists());
+	}
+
 	@Test
 	public void testDeleteEndpoint() throws Exception {
 		// First create a file
@@ -311,6 +347,84 @@ public class CopilotRestServiceIntegrationTest extends BaseIntegrationTest {
 		}
 	}
 
+	@Test
+	public void testBatchEndpoint() throws Exception {
+		IFile existing = testProject.getFile("batch-existing.txt");
+		existing.create(new java.io.ByteArrayInputStream("Original".getBytes("UTF-8")), true, null);
+		IFile toDelete = testProject.getFile("batch-delete.txt");
+		toDelete.create(new java.io.ByteArrayInputStream("Delete me".getBytes("UTF-8")), true, null);
+
+		String existingPath = existing.getLocation().toString();
+		String newPath = testProject.getLocation().append("batch/new-file.txt").toString();
+		String deletePath = toDelete.getLocation().toString();
+
+		Message.BatchMessage batchMsg = new Message.BatchMessage("Batch edit",
+				Arrays.asList(new Message.BatchOperation("write", existingPath, "Updated"),
+						new Message.BatchOperation("write", newPath, "New file"),
+						new Message.BatchOperation("delete", deletePath, null)));
+		String response = sendRestRequest("batch", batchMsg);
+
+		JsonObject responseObj = gson.fromJson(response, JsonObject.class);
+		assertEquals("ok", responseObj.get("status").getAsString());
+		assertEquals(3, responseObj.get("applied").getAsInt());
+
+		IFile newFile = testProject.getFile("batch/new-file.txt");
+		assertEquals("Updated", readContent(existing));
+		assertEquals("New file", readContent(newFile));
+		assertFalse("Deleted file should be gone", toDelete.exists());
+
+		// A single undo reverts the whole batch
+		String undoResponse = sendRestRequest("undo",
+				new Message.UndoRedoMessage(Arrays.asList(existingPath, newPath, deletePath)));
+		JsonObject undoObj = gson.fromJson(undoResponse, JsonObject.class);
+		assertTrue("Undo should be performed", undoObj.get("performed").getAsBoolean());
+
+		assertEquals("Original", readContent(existing));
+		assertTrue("Deleted file should be restored", toDelete.exists());
+		assertEquals("Delete me", readContent(toDelete));
+	}
+
+	@Test
+	public void testBatchRejectsPathOutsideProject() throws Exception {
+		IFile existing = testProject.getFile("batch-untouched.txt");
+		existing.create(new java.io.ByteArrayInputStream("Original".getBytes("UTF-8")), true, null);
+
+		Message.BatchMessage batchMsg = new Message.BatchMessage("Batch edit",
+				Arrays.asList(new Message.BatchOperation("write", existing.getLocation().toString(), "Changed"),
+						new Message.BatchOperation("write", "/invalid/path/outside/project.txt", "Nope")));
+		String response = sendRestRequest("batch", batchMsg);
+
+		JsonObject responseObj = gson.fromJson(response, JsonObject.class);
+		assertTrue("Response should contain error", responseObj.has("error"));
+		assertEquals("No file should be modified", "Original", readContent(existing));
+	}
+
+	@Test
+	public void testFailedBatchRemovesCreatedFolders() throws Exception {
+		IFile existing = testProject.getFile("batch-rollback.txt");
+		existing.create(new java.io.ByteArrayInputStream("Original".getBytes("UTF-8")), true, null);
+
+		// The delete fails while applying, after the new file and its folders have been created
+		String newPath = testProject.getLocation().append("rollback/nested/new-file.txt").toString();
+		String missingPath = testProject.getLocation().append("batch-missing.txt").toString();
+		Message.BatchMessage batchMsg = new Message.BatchMessage("Batch edit",
+				Arrays.asList(new Message.BatchOperation("write", existing.getLocation().toString(), "Changed"),
+						new Message.BatchOperation("write", newPath, "New file"),
+						new Message.BatchOperation("delete", missingPath, null)));
+		String response = sendRestRequest("batch", batchMsg);
+
+		JsonObject responseObj = gson.fromJson(response, JsonObject.class);
+		assertTrue("Response should contain error", responseObj.has("error"));
+		assertEquals("Written file should be restored", "Original", readContent(existing));
+		assertFalse("Created folders should be removed", testProject.getFolder("rollback").exists());
+	}
+
+	private String readContent(IFile file) throws Exception {
+		try (java.io.InputStream is = file.getContents()) {
+			return new String(is.readAllBytes(), "UTF-8");
+		}
+	}
+
 	@Test
 	public void testErrorHandling() throws Exception {
 		// Test writing to an invalid path (outside project)
@@ -326,6 +440,119 @@ public class CopilotRestServiceIntegrationTest extends BaseIntegrationTest {
 		assertNotNull("Error message should not be null", responseObj.get("error").getAsString());
 	}
 
+	@Test
+	public void testGzipResponse() throws Exception {
+		Message.CopilotRestRequest request = new Message.CopilotRestRequest("heartbeat",
+				testProject.getLocation().toString(), new Message.HeartbeatMessage());
+		HttpRequest httpRequest = HttpRequest.newBuilder().uri(URI.create(baseEndpoint))
+				.header("Content-Type", "application/json").header("Accept-Encoding", "gzip")
+				.POST(HttpRequest.BodyPublishers.ofString(gson.toJson(request))).build();
+
+		HttpResponse<byte[]> httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+
+		assertEquals("HTTP status should be 200", 200, httpResponse.statusCode());
+		assertEquals("Response should be gzip encoded", "gzip",
+				httpResponse.headers().firstValue("Content-Encoding").orElse(null));
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(httpResponse.body()))) {
+			JsonObject responseObj = gson.fromJson(new String(in.readAllBytes(), StandardCharsets.UTF_8),
+					JsonObject.class);
+			assertEquals("alive", responseObj.get("status").getAsString());
+		}
+
+		// Without Accept-Encoding the response is plain JSON
+		String plain = sendRestRequest("heartbeat", new Message.HeartbeatMessage());
+		assertEquals("alive", gson.fromJson(plain, JsonObject.class).get("status").getAsString());
+	}
+
+	@Test
+	public void testUnchangedWriteIsSkipped() throws Exception {
+		String fileName = testProject.getLocation().append("skip-test.txt").toString();
+		IFile file = testProject.getFile("skip-test.txt");
+
+		JsonObject first = gson.fromJson(sendRestRequest("write", new Message.WriteFileMessage(fileName, null, "one")),
+				JsonObject.class);
+		assertFalse("A new file should be written", first.has("skipped"));
+		sendRestRequest("write", new Message.WriteFileMessage(fileName, null, "two"));
+
+		JsonObject same = gson.fromJson(sendRestRequest("write", new Message.WriteFileMessage(fileName, null, "two")),
+				JsonObject.class);
+		assertEquals("ok", same.get("status").getAsString());
+		assertTrue("Writing the same content should be skipped", same.get("skipped").getAsBoolean());
+
+		String base64 = Base64.getEncoder().encodeToString("two".getBytes(StandardCharsets.UTF_8));
+		JsonObject sameBase64 = gson.fromJson(
+				sendRestRequest("writeBase64", new Message.WriteFileMessage(fileName, null, base64)), JsonObject.class);
+		assertTrue("Writing the same bytes should be skipped", sameBase64.get("skipped").getAsBoolean());
+
+		// A change made outside Copilot must not be mistaken for the cached content
+		file.setContents(new ByteArrayInputStream("six".getBytes(StandardCharsets.UTF_8)), true, false, null);
+		JsonObject changed = gson.fromJson(
+				sendRestRequest("write", new Message.WriteFileMessage(fileName, null, "two")), JsonObject.class);
+		assertFalse("A file changed in between should be written", changed.has("skipped"));
+
+		// Skipped writes have no undo entries, so two undos go back to the first content
+		sendRestRequest("undo", new Message.UndoRedoMessage(Arrays.asList(fileName)));
+		assertEquals("six", readFile(file));
+		sendRestRequest("undo", new Message.UndoRedoMessage(Arrays.asList(fileName)));
+		assertEquals("one", readFile(file));
+	}
+
+	@Test
+	public void testPatch() throws Exception {
+		String fileName = testProject.getLocation().append("patch-test.txt").toString();
+		IFile file = testProject.getFile("patch-test.txt");
+		sendRestRequest("write", new Message.WriteFileMessage(fileName, null, "Hello World\nSecond line\n"));
+
+		JsonObject edited = gson.fromJson(sendRestRequest("patch", new Message.PatchFileMessage(fileName, null,
+				TextPatch.hash("Hello World\nSecond line\n"), Arrays.asList(new Message.TextEdit(6, 5, "Eclipse")))),
+				JsonObject.class);
+		assertEquals("ok", edited.get("status").getAsString());
+		assertEquals("Hello Eclipse\nSecond line\n", readFile(file));
+		assertEquals(TextPatch.hash("Hello Eclipse\nSecond line\n"), edited.get("hash").getAsString());
+
+		String diff = "@@ -2 +2,2 @@\n-Second line\n+Second line\n+Third line\n";
+		sendRestRequest("patch", new Message.PatchFileMessage(fileName, null, null, diff));
+		assertEquals("Hello Eclipse\nSecond line\nThird line\n", readFile(file));
+
+		// A patch computed for an older version is refused
+		JsonObject conflict = gson.fromJson(sendRestRequest("patch", new Message.PatchFileMessage(fileName, null,
+				TextPatch.hash("Hello World\nSecond line\n"), Arrays.asList(new Message.TextEdit(0, 5, "Hi")))),
+				JsonObject.class);
+		assertTrue("A stale patch should be a conflict", conflict.get("conflict").getAsBoolean());
+		assertEquals("Hello Eclipse\nSecond line\nThird line\n", readFile(file));
+
+		sendRestRequest("undo", new Message.UndoRedoMessage(Arrays.asList(fileName)));
+		assertEquals("Hello Eclipse\nSecond line\n", readFile(file));
+		sendRestRequest("undo", new Message.UndoRedoMessage(Arrays.asList(fileName)));
+		assertEquals("Hello World\nSecond line\n", readFile(file));
+		sendRestRequest("redo", new Message.UndoRedoMessage(Arrays.asList(fileName)));
+		assertEquals("Hello Eclipse\nSecond line\n", readFile(file));
+	}
+
+	private String readFile(IFile file) throws Exception {
+		file.refreshLocal(0, null);
+		try (java.io.InputStream in = file.getContents()) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void testMetricsEndpoint() throws Exception {
+		sendRestRequest("heartbeat", new Message.HeartbeatMessage());
+
+		HttpRequest httpRequest = HttpRequest.newBuilder()
+				.uri(URI.create(baseEndpoint).resolve(CopilotRestService.METRICS_PATH)).GET().build();
+		HttpResponse<String> httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+
+		assertEquals("HTTP status should be 200", 200, httpResponse.statusCode());
+		assertTrue("Metrics should be plain text",
+				httpResponse.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+		String metrics = httpResponse.body();
+		assertTrue(metrics, metrics.contains("vaadin_copilot_commands_total{command=\"heartbeat\"}"));
+		assertTrue(metrics, metrics.contains("vaadin_copilot_worker_queue_depth "));
+		assertTrue(metrics, metrics.contains("vaadin_copilot_undo_retained_bytes "));
+	}
+
 	/**
 	 * Helper method to send REST requests to the service.
 	 */
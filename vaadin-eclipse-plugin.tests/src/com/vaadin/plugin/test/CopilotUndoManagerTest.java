@@ -2,8 +2,13 @@ package com.vaadin.plugin.test;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
@@ -231,6 +236,60 @@ public class CopilotUndoManagerTest extends BaseIntegrationTest {
 		assertEquals("File2 should be restored", original2, readFileContent(file2));
 	}
 
+	@Test
+	public void testUndoAppliesToRequestedFile() throws Exception {
+		IFile file1 = testProject.getFile("requested1.txt");
+		IFile file2 = testProject.getFile("requested2.txt");
+		file1.create(new java.io.ByteArrayInputStream("Modified 1".getBytes("UTF-8")), true, null);
+		file2.create(new java.io.ByteArrayInputStream("Modified 2".getBytes("UTF-8")), true, null);
+		undoManager.recordOperation(file1, "Original 1", "Modified 1", "Modify file1");
+		undoManager.recordOperation(file2, "Original 2", "Modified 2", "Modify file2");
+
+		// The latest operation is on file2, but only file1 is asked for
+		assertTrue(undoManager.performUndo(Arrays.asList(file1.getLocation().toString())));
+
+		assertEquals("Original 1", readFileContent(file1));
+		assertEquals("Modified 2", readFileContent(file2));
+	}
+
+	@Test
+	public void testConcurrentOperationsOnSeparateFiles() throws Exception {
+		int fileCount = 8;
+		int edits = 5;
+		ExecutorService executor = Executors.newFixedThreadPool(fileCount);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < fileCount; i++) {
+				IFile file = testProject.getFile("concurrent" + i + ".txt");
+				file.create(new java.io.ByteArrayInputStream("0".getBytes("UTF-8")), true, null);
+				results.add(executor.submit(() -> {
+					for (int edit = 1; edit <= edits; edit++) {
+						String content = String.valueOf(edit);
+						file.setContents(new java.io.ByteArrayInputStream(content.getBytes("UTF-8")), true, true,
+								null);
+						undoManager.recordOperation(file, String.valueOf(edit - 1), content, "Edit " + edit);
+					}
+					List<String> filePaths = Arrays.asList(file.getLocation().toString());
+					for (int edit = edits - 1; edit >= 0; edit--) {
+						assertTrue(undoManager.performUndo(filePaths));
+						assertEquals(String.valueOf(edit), readFileContent(file));
+					}
+					assertTrue(undoManager.performRedo(filePaths));
+					return null;
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		for (int i = 0; i < fileCount; i++) {
+			assertEquals("1", readFileContent(testProject.getFile("concurrent" + i + ".txt")));
+		}
+	}
+
 	/**
 	 * Helper method to read file content as string.
 	 */
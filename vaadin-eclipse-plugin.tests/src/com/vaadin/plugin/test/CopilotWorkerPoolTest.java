@@ -0,0 +1,96 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.plugin.CopilotWorkerPool;
+
+/**
+ * Tests for the bounded worker pool used by the Copilot REST service.
+ */
+public class CopilotWorkerPoolTest {
+
+	private CopilotWorkerPool pool;
+	private CountDownLatch release;
+
+	@Before
+	public void setUp() {
+		pool = new CopilotWorkerPool(1, 1);
+		release = new CountDownLatch(1);
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		pool.shutdown();
+	}
+
+	@Test
+	public void testWorkerThreadsAreNamed() throws Exception {
+		AtomicReference<String> threadName = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(1);
+		pool.execute(() -> {
+			threadName.set(Thread.currentThread().getName());
+			done.countDown();
+		});
+
+		assertTrue("Task should run", done.await(5, TimeUnit.SECONDS));
+		assertTrue("Worker thread should be named", threadName.get().startsWith("Copilot-Worker-"));
+	}
+
+	@Test
+	public void testGaugesAndRejection() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		pool.execute(() -> {
+			started.countDown();
+			awaitRelease();
+		});
+		assertTrue("First task should start", started.await(5, TimeUnit.SECONDS));
+
+		// Fills the queue
+		pool.execute(this::awaitRelease);
+		assertEquals("One worker should be active", 1, pool.getActiveCount());
+		assertEquals("One task should be queued", 1, pool.getQueueDepth());
+
+		// Saturated, runs on the caller thread in rejected mode
+		AtomicBoolean rejected = new AtomicBoolean();
+		AtomicReference<Thread> runner = new AtomicReference<>();
+		pool.execute(() -> {
+			rejected.set(CopilotWorkerPool.isRejected());
+			runner.set(Thread.currentThread());
+		});
+
+		assertTrue("Overflowing task should be flagged as rejected", rejected.get());
+		assertSame("Rejected task should run on the caller thread", Thread.currentThread(), runner.get());
+		assertFalse("Rejected flag should be cleared afterwards", CopilotWorkerPool.isRejected());
+		assertEquals("Rejection should be counted", 1, pool.getRejectedCount());
+	}
+
+	@Test
+	public void testTasksAfterShutdownAreRunRejected() {
+		pool.shutdown();
+
+		// The handler must still get to answer the exchange, or the client hangs until it times out
+		AtomicBoolean rejected = new AtomicBoolean();
+		pool.execute(() -> rejected.set(CopilotWorkerPool.isRejected()));
+
+		assertTrue("Task after shutdown should run in rejected mode", rejected.get());
+		assertEquals("Shutdown should not count as saturation", 0, pool.getRejectedCount());
+	}
+
+	private void awaitRelease() {
+		try {
+			release.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.vaadin.plugin.FileUndoHistory;
+
+/**
+ * Tests for the delta compressed contents kept for undoing Copilot edits.
+ */
+public class FileUndoHistoryTest {
+
+	private static byte[] version(int number) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			text.append("    add(new Button(\"Button ").append(i).append("\"));\n");
+		}
+		text.append("// version ").append(number).append('\n');
+		return text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testVersionsAreStoredAsDeltas() {
+		FileUndoHistory history = new FileUndoHistory();
+		long[] ids = new long[40];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = history.add(version(i));
+		}
+		for (int i = 0; i < ids.length; i++) {
+			assertArrayEquals("Version " + i, version(i), history.get(ids[i]));
+		}
+		assertEquals(40, history.getVersionCount());
+		assertTrue("Only the checkpoints should be stored in full",
+				history.getRetainedBytes() < history.getContentBytes() / 5);
+	}
+
+	@Test
+	public void testConsecutiveWritesShareVersions() {
+		FileUndoHistory history = new FileUndoHistory();
+		long first = history.add(version(0));
+		long second = history.add(version(1));
+		// The next write starts from the content the previous one produced
+		assertEquals(second, history.add(version(1)));
+		assertNotEquals(first, second);
+		assertEquals(2, history.getVersionCount());
+	}
+
+	@Test
+	public void testReleasedVersionsAreDropped() {
+		FileUndoHistory history = new FileUndoHistory();
+		long[] ids = new long[5];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = history.add(version(i));
+		}
+
+		// The oldest operations are disposed first, the next version then becomes a checkpoint
+		history.release(ids[0]);
+		history.release(ids[1]);
+		assertEquals(3, history.getVersionCount());
+		assertArrayEquals(version(2), history.get(ids[2]));
+		assertArrayEquals(version(4), history.get(ids[4]));
+
+		try {
+			history.get(ids[0]);
+			fail("A released version should not be available");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		history.release(ids[4]);
+		history.release(ids[3]);
+		history.release(ids[2]);
+		assertTrue(history.isEmpty());
+		assertEquals(0, history.getRetainedBytes());
+	}
+
+	@Test
+	public void testIdsAreNotReusedAfterTrimmingTheEnd() {
+		FileUndoHistory history = new FileUndoHistory();
+		long first = history.add(version(0));
+		long dropped = history.add(version(1));
+
+		// Releasing the newest version drops it, a new version must not get its id
+		history.release(dropped);
+		long added = history.add(version(2));
+		assertNotEquals(dropped, added);
+		assertArrayEquals(version(0), history.get(first));
+		assertArrayEquals(version(2), history.get(added));
+		try {
+			history.get(dropped);
+			fail("A dropped version should not be available");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.vaadin.plugin.CopilotMetrics;
+import com.vaadin.plugin.LatencyHistogram;
+
+/**
+ * Tests for the latency histograms and their Prometheus output.
+ */
+public class LatencyHistogramTest {
+
+	@After
+	public void tearDown() {
+		CopilotMetrics.dispose();
+	}
+
+	@Test
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 20; i++) {
+			histogram.record(i);
+		}
+		assertEquals(20, histogram.getCount());
+		assertEquals(210, histogram.getSum());
+		assertEquals(20, histogram.getMax());
+		assertEquals(10, histogram.getValueAtQuantile(0.5));
+		assertEquals(20, histogram.getValueAtQuantile(1.0));
+	}
+
+	@Test
+	public void testQuantilesStayWithinPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100_000; i++) {
+			histogram.record(i);
+		}
+		long median = histogram.getValueAtQuantile(0.5);
+		assertTrue("Median should not be below the recorded value: " + median, median >= 50_000);
+		assertTrue("Median should be within 1/16 of the recorded value: " + median, median <= 50_000 * 17 / 16);
+
+		long p99 = histogram.getValueAtQuantile(0.99);
+		assertTrue("99th percentile should be close to 99000: " + p99, p99 >= 99_000 && p99 <= 99_000 * 17 / 16);
+		assertEquals("The top quantile is the exact maximum", 100_000, histogram.getValueAtQuantile(1.0));
+	}
+
+	@Test
+	public void testEmptyAndHugeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtQuantile(0.99));
+
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE / 2);
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.getValueAtQuantile(0.5));
+		assertEquals(Long.MAX_VALUE / 2, histogram.getValueAtQuantile(1.0));
+	}
+
+	@Test
+	public void testPrometheusOutput() throws Exception {
+		CopilotMetrics metrics = CopilotMetrics.getInstance();
+		CopilotMetrics.Sample write = metrics.start("write");
+		assertEquals(1, metrics.getInFlight("write"));
+		metrics.finish(write, false);
+		metrics.finish(metrics.start("write"), true);
+		metrics.finish(metrics.start("noSuchCommand"), true);
+
+		assertEquals(0, metrics.getInFlight("write"));
+		assertEquals(2, metrics.getLatency("write").getCount());
+		assertEquals(1, metrics.getErrorCount("write"));
+		assertNull("Unknown commands should not get their own series", metrics.getLatency("noSuchCommand"));
+		assertEquals(1, metrics.getErrorCount(CopilotMetrics.OTHER_COMMAND));
+
+		StringWriter out = new StringWriter();
+		metrics.write(out, null);
+		String text = out.toString();
+		assertTrue(text, text.contains("# TYPE vaadin_copilot_command_duration_seconds summary\n"));
+		assertTrue(text, text.contains("vaadin_copilot_command_duration_seconds{command=\"write\",quantile=\"0.99\"} "));
+		assertTrue(text, text.contains("vaadin_copilot_command_duration_seconds_count{command=\"write\"} 2\n"));
+		assertTrue(text, text.contains("vaadin_copilot_commands_total{command=\"write\"} 2\n"));
+		assertTrue(text, text.contains("vaadin_copilot_command_errors_total{command=\"write\"} 1\n"));
+		assertTrue(text, text.contains("vaadin_copilot_commands_in_flight{command=\"write\"} 0\n"));
+		assertTrue(text, text.contains("vaadin_copilot_command_errors_total{command=\"other\"} 1\n"));
+	}
+}
@@ -0,0 +1,158 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.plugin.ProjectCommandLocks;
+import com.vaadin.plugin.ProjectCommandLocks.Mode;
+import com.vaadin.plugin.ProjectCommandLocks.Permit;
+
+/**
+ * Tests for the per-project locks of Copilot commands.
+ */
+public class ProjectCommandLocksTest {
+
+	private ProjectCommandLocks locks;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		locks = new ProjectCommandLocks(8);
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testCommandModes() {
+		assertEquals(Mode.READ, ProjectCommandLocks.getMode("getVaadinComponents"));
+		assertEquals(Mode.READ, ProjectCommandLocks.getMode("heartbeat"));
+		assertEquals(Mode.WRITE, ProjectCommandLocks.getMode("write"));
+		assertEquals(Mode.WRITE, ProjectCommandLocks.getMode("undo"));
+		assertEquals(Mode.NONE, ProjectCommandLocks.getMode("showInIde"));
+	}
+
+	@Test
+	public void testReadsRunInParallel() throws Exception {
+		int readers = 4;
+		CountDownLatch allInside = new CountDownLatch(readers);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < readers; i++) {
+			results.add(executor.submit(() -> {
+				try (Permit permit = locks.acquire("app", Mode.READ)) {
+					allInside.countDown();
+					// Only succeeds if every reader holds the lock at the same time
+					return allInside.await(5, TimeUnit.SECONDS);
+				}
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			assertTrue("Readers should hold the lock together", result.get(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testWritesAreSerializedInArrivalOrder() throws Exception {
+		List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		Permit first = locks.acquire("app", Mode.WRITE);
+
+		List<Future<?>> writers = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			int index = i;
+			writers.add(executor.submit(() -> {
+				try (Permit permit = locks.acquire("app", Mode.WRITE)) {
+					order.add(index);
+				}
+				return null;
+			}));
+			// Let the writer queue up before the next one arrives
+			Thread.sleep(50);
+		}
+		assertTrue("Writers should wait for the first write", order.isEmpty());
+
+		first.close();
+		for (Future<?> writer : writers) {
+			writer.get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(List.of(0, 1, 2, 3, 4), order);
+	}
+
+	@Test
+	public void testProjectsDoNotBlockEachOther() throws Exception {
+		try (Permit write = locks.acquire("first", Mode.WRITE)) {
+			Future<Boolean> other = executor.submit(() -> {
+				try (Permit permit = locks.acquire("second", Mode.WRITE)) {
+					return permit != null;
+				}
+			});
+			assertTrue("Another project should not wait", other.get(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testTooManyWaitingCommandsAreRefused() throws Exception {
+		ProjectCommandLocks limited = new ProjectCommandLocks(2);
+		Permit write = limited.acquire("app", Mode.WRITE);
+		Future<?> waiting = executor.submit(() -> {
+			try (Permit permit = limited.acquire("app", Mode.READ)) {
+				assertNotNull(permit);
+			}
+			return null;
+		});
+		Thread.sleep(100);
+
+		// Acquired on another thread, since the holder of the write lock could also read
+		Future<Permit> third = executor.submit(() -> limited.acquire("app", Mode.READ));
+		assertNull("A third command should not wait", third.get(5, TimeUnit.SECONDS));
+		write.close();
+		waiting.get(5, TimeUnit.SECONDS);
+
+		try (Permit permit = limited.acquire("app", Mode.WRITE)) {
+			assertNotNull("The lock should be free again", permit);
+		}
+	}
+
+	@Test
+	public void testLocksAreRemovedWhenIdle() throws Exception {
+		AtomicInteger inside = new AtomicInteger();
+		List<Future<Boolean>> writers = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			writers.add(executor.submit(() -> {
+				boolean exclusive = true;
+				for (int j = 0; j < 500; j++) {
+					try (Permit permit = locks.acquire("app" + (j % 3), Mode.WRITE)) {
+						if (permit == null) {
+							continue;
+						}
+						// A lock removed while still in use would let two writers of a project in at once
+						if (j % 3 == 0) {
+							exclusive &= inside.incrementAndGet() == 1;
+							inside.decrementAndGet();
+						}
+					}
+				}
+				return exclusive;
+			}));
+		}
+		for (Future<Boolean> writer : writers) {
+			assertTrue("Writes to a project should stay exclusive", writer.get(30, TimeUnit.SECONDS));
+		}
+		assertEquals("Idle projects should not keep a lock", 0, locks.size());
+	}
+}
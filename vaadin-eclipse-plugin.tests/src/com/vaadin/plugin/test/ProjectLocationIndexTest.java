@@ -0,0 +1,76 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.junit.Test;
+
+import com.vaadin.plugin.ProjectLocationIndex;
+
+/**
+ * Tests for the project location index used to resolve Copilot project paths.
+ */
+public class ProjectLocationIndexTest extends BaseIntegrationTest {
+
+	private static final String NESTED_PROJECT_NAME = "vaadin-test-nested-module";
+
+	private IProject nestedProject;
+
+	@Override
+	protected void doTearDown() throws CoreException {
+		if (nestedProject != null && nestedProject.exists()) {
+			nestedProject.delete(false, true, null);
+		}
+	}
+
+	@Test
+	public void testFindProjectByLocation() {
+		ProjectLocationIndex index = ProjectLocationIndex.getInstance();
+		IPath location = testProject.getLocation();
+
+		assertEquals("Should find project by portable path", testProject,
+				index.findProject(location.toPortableString()));
+		assertEquals("Should find project by OS path", testProject, index.findProject(location.toOSString()));
+		assertEquals("Should ignore trailing separator", testProject,
+				index.findProject(location.toPortableString() + "/"));
+		assertNull("Should not find unknown path", index.findProject("/non/existent/path"));
+	}
+
+	@Test
+	public void testIndexFollowsProjectDeletion() throws Exception {
+		ProjectLocationIndex index = ProjectLocationIndex.getInstance();
+		String location = testProject.getLocation().toPortableString();
+		assertNotNull("Project should be indexed", index.findProject(location));
+
+		testProject.delete(true, true, null);
+
+		assertNull("Deleted project should not be found", index.findProject(location));
+	}
+
+	@Test
+	public void testFindNestedProjects() throws Exception {
+		IPath nestedLocation = testProject.getLocation().append("nested");
+		nestedLocation.toFile().mkdirs();
+
+		nestedProject = workspace.getRoot().getProject(NESTED_PROJECT_NAME);
+		IProjectDescription description = workspace.newProjectDescription(NESTED_PROJECT_NAME);
+		description.setLocation(nestedLocation);
+		nestedProject.create(description, null);
+		nestedProject.open(null);
+
+		ProjectLocationIndex index = ProjectLocationIndex.getInstance();
+		assertEquals("Should find nested project by location", nestedProject,
+				index.findProject(nestedLocation.toPortableString()));
+
+		List<IProject> nested = index.findNestedProjects(testProject);
+		assertEquals("Should find one nested project", 1, nested.size());
+		assertEquals("Should find the nested project", nestedProject, nested.get(0));
+		assertTrue("Nested project should have no nested projects",
+				index.findNestedProjects(nestedProject).isEmpty());
+	}
+}
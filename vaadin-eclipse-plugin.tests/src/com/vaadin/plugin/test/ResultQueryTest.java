@@ -0,0 +1,100 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.vaadin.plugin.ResultQuery;
+
+/**
+ * Tests for filtering and paging analyzer results.
+ */
+public class ResultQueryTest {
+
+	@Test
+	public void testEmptyQueryReturnsEverything() {
+		ResultQuery query = ResultQuery.fromJson(new JsonObject());
+		assertTrue("Query without parameters should be empty", query.isEmpty());
+
+		ResultQuery.Page page = query.apply(components("com.example.B", "com.example.A"), "class");
+		assertEquals("Should return all items", 2, page.getItems().size());
+		assertEquals("Items should be sorted by class", "com.example.A", page.getItems().get(0).get("class"));
+		assertNull("Should not have a next page", page.getNextCursor());
+	}
+
+	@Test
+	public void testFilters() {
+		List<Map<String, Object>> items = components("com.example.MainView", "com.example.ui.GridView",
+				"com.examples.OtherView", "com.example.ui.Helper");
+
+		JsonObject data = new JsonObject();
+		data.addProperty("packagePrefix", "com.example");
+		assertEquals("Should match the package and its subpackages", 3,
+				ResultQuery.fromJson(data).apply(items, "class").getTotal());
+
+		data.addProperty("classNamePattern", "*View");
+		ResultQuery.Page page = ResultQuery.fromJson(data).apply(items, "class");
+		assertEquals("Should match simple names ending with View", 2, page.getTotal());
+
+		data.addProperty("classNamePattern", "com.example.ui.*");
+		assertEquals("Pattern with a dot should match qualified names", 2,
+				ResultQuery.fromJson(data).apply(items, "class").getTotal());
+
+		data = new JsonObject();
+		data.addProperty("origin", "library");
+		assertEquals("Should match no project components", 0,
+				ResultQuery.fromJson(data).apply(items, "class").getTotal());
+	}
+
+	@Test
+	public void testPagesFollowCursor() {
+		List<Map<String, Object>> items = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			items.addAll(components(String.format("com.example.View%02d", i)));
+		}
+
+		JsonObject data = new JsonObject();
+		data.addProperty("pageSize", 10);
+		List<Object> seen = new ArrayList<>();
+		int pages = 0;
+		String cursor = null;
+		do {
+			if (cursor != null) {
+				data.addProperty("cursor", cursor);
+			}
+			ResultQuery.Page page = ResultQuery.fromJson(data).apply(items, "class");
+			assertEquals("Total should not depend on the page", 25, page.getTotal());
+			page.getItems().forEach(item -> seen.add(item.get("class")));
+			cursor = page.getNextCursor();
+			pages++;
+		} while (cursor != null);
+
+		assertEquals("Should need three pages", 3, pages);
+		assertEquals("Should return every item once", 25, seen.size());
+		assertEquals("Should keep class order", "com.example.View24", seen.get(24));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPageSize() {
+		JsonObject data = new JsonObject();
+		data.addProperty("pageSize", 0);
+		ResultQuery.fromJson(data);
+	}
+
+	private List<Map<String, Object>> components(String... classNames) {
+		List<Map<String, Object>> components = new ArrayList<>();
+		for (String className : classNames) {
+			Map<String, Object> component = new HashMap<>();
+			component.put("class", className);
+			component.put("origin", "project");
+			components.add(component);
+		}
+		return components;
+	}
+}
@@ -0,0 +1,80 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.vaadin.plugin.TextPatch;
+import com.vaadin.plugin.TextPatch.Replacement;
+
+/**
+ * Tests for converting unified diffs to text edits.
+ */
+public class TextPatchTest {
+
+	private static String apply(String text, List<Replacement> replacements) {
+		StringBuilder result = new StringBuilder(text);
+		// Replacements are relative to the original text, so apply them from the end
+		for (int i = replacements.size() - 1; i >= 0; i--) {
+			Replacement replacement = replacements.get(i);
+			result.replace(replacement.getOffset(), replacement.getOffset() + replacement.getLength(),
+					replacement.getText());
+		}
+		return result.toString();
+	}
+
+	@Test
+	public void testReplaceLines() {
+		String text = "a\nb\nc\nd\ne\n";
+		String diff = "--- a/file.txt\n+++ b/file.txt\n@@ -1,3 +1,3 @@\n a\n-b\n+B\n c\n@@ -5 +5,2 @@\n e\n+f\n";
+
+		List<Replacement> replacements = TextPatch.parseUnifiedDiff(text, diff);
+		assertEquals(2, replacements.size());
+		assertEquals("a\nB\nc\nd\ne\nf\n", apply(text, replacements));
+	}
+
+	@Test
+	public void testInsertAndDelete() {
+		String text = "a\nb\nc\n";
+		assertEquals("x\na\nb\nc\n", apply(text, TextPatch.parseUnifiedDiff(text, "@@ -0,0 +1 @@\n+x\n")));
+		assertEquals("a\nc\n", apply(text, TextPatch.parseUnifiedDiff(text, "@@ -2 +1,0 @@\n-b\n")));
+	}
+
+	@Test
+	public void testKeepsLineDelimiters() {
+		String text = "a\r\nb\r\n";
+		assertEquals("a\r\nc\r\n", apply(text, TextPatch.parseUnifiedDiff(text, "@@ -2 +2 @@\n-b\n+c\n")));
+	}
+
+	@Test
+	public void testNoNewlineAtEndOfFile() {
+		String text = "a\nb";
+		String diff = "@@ -2 +2 @@\n-b\n\\ No newline at end of file\n+c\n\\ No newline at end of file\n";
+		assertEquals("a\nc", apply(text, TextPatch.parseUnifiedDiff(text, diff)));
+
+		String addNewline = "@@ -2 +2 @@\n-b\n\\ No newline at end of file\n+b\n";
+		assertEquals("a\nb\n", apply(text, TextPatch.parseUnifiedDiff(text, addNewline)));
+	}
+
+	@Test
+	public void testMismatchingContextIsAConflict() {
+		try {
+			TextPatch.parseUnifiedDiff("a\nb\n", "@@ -1,2 +1,2 @@\n a\n-x\n+y\n");
+			fail("A diff for another text should not apply");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDiffWithoutHunks() {
+		TextPatch.parseUnifiedDiff("a\n", "--- a/file.txt\n+++ b/file.txt\n");
+	}
+
+	@Test
+	public void testHash() {
+		assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", TextPatch.hash(""));
+	}
+}
@@ -0,0 +1,87 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.junit.Test;
+
+import com.vaadin.plugin.TypeHierarchyCache;
+
+/**
+ * Tests for the cached type hierarchies used for component discovery.
+ */
+public class TypeHierarchyCacheTest extends BaseIntegrationTest {
+
+	private IJavaProject javaProject;
+
+	@Override
+	protected void doSetUp() throws CoreException {
+		if (!testProject.hasNature(JavaCore.NATURE_ID)) {
+			IProjectDescription description = testProject.getDescription();
+			String[] prevNatures = description.getNatureIds();
+			String[] newNatures = new String[prevNatures.length + 1];
+			System.arraycopy(prevNatures, 0, newNatures, 0, prevNatures.length);
+			newNatures[prevNatures.length] = JavaCore.NATURE_ID;
+			description.setNatureIds(newNatures);
+			testProject.setDescription(description, null);
+		}
+		javaProject = JavaCore.create(testProject);
+
+		IFolder srcFolder = testProject.getFolder("src");
+		if (!srcFolder.exists()) {
+			srcFolder.create(true, true, null);
+		}
+		IClasspathEntry sourceEntry = JavaCore.newSourceEntry(srcFolder.getFullPath());
+		IClasspathEntry containerEntry = JavaCore.newContainerEntry(
+				org.eclipse.core.runtime.Path.fromPortableString("org.eclipse.jdt.launching.JRE_CONTAINER"));
+		javaProject.setRawClasspath(new IClasspathEntry[]{sourceEntry, containerEntry}, null);
+	}
+
+	@Override
+	protected void doTearDown() throws CoreException {
+		TypeHierarchyCache.getInstance().remove(javaProject);
+	}
+
+	@Test
+	public void testHierarchyFollowsNewSubtypes() throws Exception {
+		createJavaClass("Base", "public class Base {}");
+		createJavaClass("First", "public class First extends Base {}");
+
+		IType base = javaProject.findType("com.example.Base");
+		assertNotNull("Base type should exist", base);
+
+		TypeHierarchyCache cache = TypeHierarchyCache.getInstance();
+		IType[] subtypes = cache.getAllSubtypes(javaProject, base);
+		assertEquals("Should find one subtype", 1, subtypes.length);
+
+		// A new subtype makes the cached hierarchy refresh on the next request
+		createJavaClass("Second", "public class Second extends First {}");
+		subtypes = cache.getAllSubtypes(javaProject, base);
+		assertEquals("Should find direct and indirect subtypes", 2, subtypes.length);
+		assertTrue("Should find Second",
+				Arrays.stream(subtypes).anyMatch(t -> "com.example.Second".equals(t.getFullyQualifiedName())));
+	}
+
+	private IFile createJavaClass(String className, String declaration) throws CoreException {
+		IFolder packageFolder = testProject.getFolder("src").getFolder("com").getFolder("example");
+		if (!packageFolder.exists()) {
+			if (!packageFolder.getParent().exists()) {
+				((IFolder) packageFolder.getParent()).create(true, true, null);
+			}
+			packageFolder.create(true, true, null);
+		}
+		IFile javaFile = packageFolder.getFile(className + ".java");
+		String content = "package com.example;\n" + declaration + "\n";
+		javaFile.create(new java.io.ByteArrayInputStream(content.getBytes()), true, null);
+		return javaFile;
+	}
+}
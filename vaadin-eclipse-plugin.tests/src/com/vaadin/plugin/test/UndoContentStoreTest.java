@@ -0,0 +1,209 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vaadin.plugin.FileUndoHistory;
+import com.vaadin.plugin.UndoBlobStore;
+import com.vaadin.plugin.UndoContentStore;
+import com.vaadin.plugin.UndoContentStore.Content;
+
+/**
+ * Tests for keeping undo contents within a heap budget by spilling them to disk.
+ */
+public class UndoContentStoreTest {
+
+	private Path directory;
+	private UndoBlobStore blobStore;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("undo-store-test");
+		blobStore = new UndoBlobStore(directory);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		blobStore.close();
+		Files.deleteIfExists(directory);
+	}
+
+	private static byte[] data(int length, int fill) {
+		byte[] data = new byte[length];
+		Arrays.fill(data, (byte) fill);
+		return data;
+	}
+
+	private long blobFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+
+	@Test
+	public void testLeastRecentlyUsedDataIsSpilled() throws IOException {
+		UndoContentStore store = new UndoContentStore(100, blobStore);
+		Content first = store.put(data(40, 1));
+		Content second = store.put(data(40, 2));
+		// Reading the first one makes the second one the least recently used
+		store.get(first);
+		Content third = store.put(data(40, 3));
+
+		assertTrue(store.isResident(first));
+		assertFalse("The least recently used data should be spilled", store.isResident(second));
+		assertTrue(store.isResident(third));
+		assertEquals(80, store.getResidentBytes());
+		assertEquals(40, store.getSpilledBytes());
+		assertEquals(1, blobFiles());
+
+		assertArrayEquals("Spilled data should be read back", data(40, 2), store.get(second));
+
+		store.release(second);
+		assertEquals(0, store.getSpilledBytes());
+		assertEquals("A released blob should be deleted", 0, blobFiles());
+	}
+
+	@Test
+	public void testIdenticalDataIsStoredOnce() throws IOException {
+		UndoContentStore store = new UndoContentStore(0, blobStore);
+		Content first = store.put(data(50, 7));
+		Content second = store.put(data(50, 7));
+
+		assertSame("Identical data should be shared", first, second);
+		assertEquals(50, store.getSpilledBytes());
+		assertEquals(100, store.getReferencedBytes());
+		assertEquals(50, blobStore.getStoredBytes());
+		assertEquals(1, blobFiles());
+
+		store.release(first);
+		assertArrayEquals(data(50, 7), store.get(second));
+		store.release(second);
+		assertEquals(0, store.size());
+		assertEquals(0, blobFiles());
+	}
+
+	@Test
+	public void testToggledContentsShareData() {
+		UndoContentStore store = new UndoContentStore(Long.MAX_VALUE, null);
+		FileUndoHistory history = new FileUndoHistory(store);
+		byte[] applied = data(1000, 'a');
+		byte[] original = applied.clone();
+		original[500] = 'b';
+
+		// Apply, undo, apply again, ... as Copilot does while refining a change
+		for (int i = 0; i < 20; i++) {
+			history.add(original.clone());
+			history.add(applied.clone());
+		}
+		assertEquals(40, history.getVersionCount());
+		// The periodic checkpoints all have the original content, and the deltas repeat
+		assertEquals(3, store.size());
+		assertTrue("Each state and delta should be stored once, was " + store.getUniqueBytes(),
+				store.getUniqueBytes() < 1100);
+		assertTrue(store.getReferencedBytes() > 3000);
+	}
+
+	@Test
+	public void testFilesShareIdenticalContents() {
+		UndoContentStore store = new UndoContentStore(Long.MAX_VALUE, null);
+		FileUndoHistory first = new FileUndoHistory(store);
+		FileUndoHistory second = new FileUndoHistory(store);
+		long firstId = first.add(data(300, 'x'));
+		long secondId = second.add(data(300, 'x'));
+
+		assertEquals(300, store.getUniqueBytes());
+		assertEquals(300, first.getRetainedBytes());
+		assertEquals(300, second.getRetainedBytes());
+
+		first.release(firstId);
+		assertArrayEquals(data(300, 'x'), second.get(secondId));
+		second.release(secondId);
+		assertEquals(0, store.getUniqueBytes());
+	}
+
+	@Test
+	public void testHistoryWithSpilledVersions() {
+		UndoContentStore store = new UndoContentStore(256, blobStore);
+		FileUndoHistory history = new FileUndoHistory(store);
+		long[] ids = new long[30];
+		for (int i = 0; i < ids.length; i++) {
+			StringBuilder text = new StringBuilder();
+			for (int line = 0; line < 100; line++) {
+				text.append("line ").append(line).append(line == i ? " changed" : "").append('\n');
+			}
+			ids[i] = history.add(text.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		assertTrue("Old versions should be spilled", store.getSpilledBytes() > 0);
+		assertTrue(store.getResidentBytes() <= 256);
+
+		String version = new String(history.get(ids[3]), StandardCharsets.UTF_8);
+		assertTrue(version, version.contains("line 3 changed\n"));
+		assertFalse(version, version.contains("line 4 changed"));
+	}
+
+	@Test
+	public void testConcurrentLargeWrites() throws Exception {
+		int threads = 8;
+		int puts = 16;
+		int length = 256 * 1024;
+		UndoContentStore store = new UndoContentStore(1024 * 1024, blobStore);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<List<Content>>> results = new ArrayList<>();
+		try {
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				results.add(executor.submit(() -> {
+					List<Content> contents = new ArrayList<>();
+					for (int i = 0; i < puts; i++) {
+						contents.add(store.put(data(length, thread * puts + i)));
+						// Data all threads store at the same time is interned once
+						contents.add(store.put(data(length, 255)));
+					}
+					return contents;
+				}));
+			}
+			for (int t = 0; t < threads; t++) {
+				List<Content> contents = results.get(t).get(60, TimeUnit.SECONDS);
+				for (int i = 0; i < puts; i++) {
+					assertArrayEquals(data(length, t * puts + i), store.get(contents.get(2 * i)));
+					assertArrayEquals(data(length, 255), store.get(contents.get(2 * i + 1)));
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(threads * puts + 1, store.size());
+		assertEquals((long) (threads * puts + 1) * length, store.getUniqueBytes());
+		assertTrue("Data over the budget should be spilled, resident " + store.getResidentBytes(),
+				store.getResidentBytes() <= 1024 * 1024);
+		assertEquals(store.getSpilledBytes(), blobStore.getStoredBytes());
+		assertEquals(blobStore.size(), blobFiles());
+
+		for (Future<List<Content>> result : results) {
+			for (Content content : result.get()) {
+				store.release(content);
+			}
+		}
+		assertEquals(0, store.size());
+		assertEquals(0, store.getUniqueBytes());
+		assertEquals(0, blobStore.getStoredBytes());
+		assertEquals("Released blobs and temporary files should be deleted", 0, blobFiles());
+	}
+}
@@ -0,0 +1,223 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.core.runtime.CoreException;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.vaadin.plugin.CopilotRestService;
+import com.vaadin.plugin.CopilotUtil;
+import com.vaadin.plugin.UnixSocketServer;
+
+/**
+ * Tests for the Unix domain socket transport of the Copilot REST service.
+ */
+public class UnixSocketTransportTest extends BaseIntegrationTest {
+
+	private CopilotRestService restService;
+
+	@Override
+	protected void doSetUp() throws CoreException {
+		restService = new CopilotRestService();
+		try {
+			restService.start();
+		} catch (Exception e) {
+			fail("Failed to start REST service: " + e.getMessage());
+		}
+		Assume.assumeNotNull("Unix domain sockets are not available", restService.getUnixSocketPath());
+	}
+
+	@Override
+	protected void doTearDown() throws CoreException {
+		if (restService != null) {
+			restService.stop();
+		}
+	}
+
+	@Test
+	public void testRequestsShareOneConnection() throws Exception {
+		String path = URI.create(restService.getEndpoint()).getPath();
+		String body = "{\"command\":\"heartbeat\",\"projectBasePath\":"
+				+ new Gson().toJson(testProject.getLocation().toOSString()) + ",\"data\":{}}";
+
+		try (SocketChannel channel = SocketChannel
+				.open(UnixDomainSocketAddress.of(restService.getUnixSocketPath()))) {
+			OutputStream out = Channels.newOutputStream(channel);
+			InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+
+			for (int i = 0; i < 2; i++) {
+				byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+				out.write(("POST " + path + " HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+						+ "Content-Length: " + bytes.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+				out.write(bytes);
+				out.flush();
+
+				Response response = readResponse(in);
+				assertEquals("Heartbeat should succeed", 200, response.status);
+				assertTrue("Response should report the IDE as alive: " + response.body,
+						response.body.contains("\"alive\""));
+			}
+		}
+	}
+
+	@Test
+	public void testChunkedRequestAndHealthCheck() throws Exception {
+		try (SocketChannel channel = SocketChannel
+				.open(UnixDomainSocketAddress.of(restService.getUnixSocketPath()))) {
+			OutputStream out = Channels.newOutputStream(channel);
+			InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+
+			// A chunked body the handler does not read must not break the next request
+			out.write(("POST /health HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+					+ "5\r\nhello\r\n0\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+			out.write("GET /health HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+
+			assertEquals("OK", readResponse(in).body);
+			assertEquals("OK", readResponse(in).body);
+
+			out.write("GET /unknown HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+			assertEquals("Unknown paths should not be found", 404, readResponse(in).status);
+		}
+	}
+
+	@Test
+	public void testSocketIsAdvertisedAndRemovedOnStop() throws Exception {
+		Path socket = Path.of(restService.getUnixSocketPath());
+		assertTrue("Socket file should exist while the service runs", Files.exists(socket));
+
+		String projectPath = testProject.getLocation().toString();
+		CopilotUtil.saveDotFile(projectPath, 9090, socket.toString());
+		Properties props = new Properties();
+		try (FileInputStream fis = new FileInputStream(
+				new File(projectPath, ".vaadin/copilot/vaadin-copilot.properties"))) {
+			props.load(fis);
+		}
+		assertEquals("Dotfile should contain the socket path", socket.toString(),
+				props.getProperty(CopilotUtil.UNIX_SOCKET_KEY));
+		assertNotNull("Dotfile should keep the TCP endpoint", props.getProperty("endpoint"));
+
+		restService.stop();
+		restService = null;
+		assertFalse("Socket file should be deleted on stop", Files.exists(socket));
+		assertFalse("Socket directory should be deleted on stop", Files.exists(socket.getParent()));
+	}
+
+	@Test
+	public void testSocketDirectoryIsPrivate() throws Exception {
+		Path directory = Path.of(restService.getUnixSocketPath()).getParent();
+		Assume.assumeTrue("Not a POSIX file system",
+				directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+		assertEquals("Only the current user should be able to reach the socket", "rwx------",
+				PosixFilePermissions.toString(Files.getPosixFilePermissions(directory)));
+	}
+
+	@Test
+	public void testConnectionsOverLimitAreRejected() throws Exception {
+		String previous = System.setProperty(UnixSocketServer.CONNECTIONS_PROPERTY, "1");
+		ExecutorService executor = Executors.newCachedThreadPool();
+		UnixSocketServer server;
+		try {
+			server = new UnixSocketServer("limit.sock", executor);
+		} finally {
+			if (previous == null) {
+				System.clearProperty(UnixSocketServer.CONNECTIONS_PROPERTY);
+			} else {
+				System.setProperty(UnixSocketServer.CONNECTIONS_PROPERTY, previous);
+			}
+		}
+		server.createContext("/health", exchange -> {
+			byte[] ok = "OK".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, ok.length);
+			exchange.getResponseBody().write(ok);
+			exchange.close();
+		});
+		server.start();
+		try (SocketChannel first = SocketChannel.open(UnixDomainSocketAddress.of(server.getPath()))) {
+			OutputStream out = Channels.newOutputStream(first);
+			out.write("GET /health HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+			// Once answered, the first connection is counted as open
+			assertEquals("OK", readResponse(new BufferedInputStream(Channels.newInputStream(first))).body);
+
+			try (SocketChannel second = SocketChannel.open(UnixDomainSocketAddress.of(server.getPath()))) {
+				Response response = readResponse(new BufferedInputStream(Channels.newInputStream(second)));
+				assertEquals("Connections over the limit should get a busy status", 503, response.status);
+			}
+		} finally {
+			server.stop();
+			executor.shutdownNow();
+		}
+	}
+
+	private static class Response {
+		int status;
+		String body;
+	}
+
+	private static Response readResponse(InputStream in) throws IOException {
+		Response response = new Response();
+		String statusLine = readLine(in);
+		assertNotNull("Should receive a response", statusLine);
+		response.status = Integer.parseInt(statusLine.split(" ")[1]);
+
+		long contentLength = -1;
+		boolean chunked = false;
+		String line;
+		while (!(line = readLine(in)).isEmpty()) {
+			String lower = line.toLowerCase();
+			if (lower.startsWith("content-length:")) {
+				contentLength = Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+			} else if (lower.startsWith("transfer-encoding:") && lower.contains("chunked")) {
+				chunked = true;
+			}
+		}
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		if (chunked) {
+			int size;
+			while ((size = Integer.parseInt(readLine(in).trim(), 16)) > 0) {
+				body.write(in.readNBytes(size));
+				readLine(in);
+			}
+			readLine(in);
+		} else if (contentLength > 0) {
+			body.write(in.readNBytes((int) contentLength));
+		}
+		response.body = body.toString(StandardCharsets.UTF_8);
+		return response;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != -1 && b != '\n') {
+			if (b != '\r') {
+				line.write(b);
+			}
+		}
+		return b == -1 && line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,134 @@
+package com.vaadin.plugin.test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.junit.Test;
+
+import com.vaadin.plugin.VaadinModelIndex;
+
+/**
+ * Tests for the incrementally maintained Vaadin model index.
+ */
+public class VaadinModelIndexTest extends BaseIntegrationTest {
+
+	private IJavaProject javaProject;
+	private VaadinModelIndex index;
+
+	@Override
+	protected void doSetUp() throws CoreException {
+		if (!testProject.hasNature(JavaCore.NATURE_ID)) {
+			IProjectDescription description = testProject.getDescription();
+			String[] prevNatures = description.getNatureIds();
+			String[] newNatures = new String[prevNatures.length + 1];
+			System.arraycopy(prevNatures, 0, newNatures, 0, prevNatures.length);
+			newNatures[prevNatures.length] = JavaCore.NATURE_ID;
+			description.setNatureIds(newNatures);
+			testProject.setDescription(description, null);
+		}
+		javaProject = JavaCore.create(testProject);
+
+		IFolder srcFolder = testProject.getFolder("src");
+		if (!srcFolder.exists()) {
+			srcFolder.create(true, true, null);
+		}
+		IClasspathEntry sourceEntry = JavaCore.newSourceEntry(srcFolder.getFullPath());
+		IClasspathEntry containerEntry = JavaCore.newContainerEntry(
+				org.eclipse.core.runtime.Path.fromPortableString("org.eclipse.jdt.launching.JRE_CONTAINER"));
+		javaProject.setRawClasspath(new IClasspathEntry[]{sourceEntry, containerEntry}, null);
+
+		index = VaadinModelIndex.getInstance();
+	}
+
+	@Test
+	public void testIndexFollowsChangedUnits() throws Exception {
+		IFile mainView = createJavaClass("MainView", "@Route(\"main\")");
+		createJavaClass("AboutView", "@Route(\"about\")");
+
+		List<Map<String, Object>> routes = index.getRoutes(javaProject);
+		assertEquals("Should find two routes", 2, routes.size());
+		long stamp = index.getModificationStamp(javaProject);
+		assertEquals("Stamp should be stable without changes", stamp, index.getModificationStamp(javaProject));
+
+		// Change one unit, the index should only pick up the new value
+		mainView.setContents(new java.io.ByteArrayInputStream(classSource("MainView", "@Route(\"home\")").getBytes()),
+				true, false, null);
+
+		routes = index.getRoutes(javaProject);
+		assertEquals("Should still find two routes", 2, routes.size());
+		assertTrue("Should find changed route value", routes.stream().anyMatch(r -> "home".equals(r.get("route"))));
+		assertFalse("Should not find old route value", routes.stream().anyMatch(r -> "main".equals(r.get("route"))));
+		assertNotEquals("Stamp should change after an edit", stamp, index.getModificationStamp(javaProject));
+
+		// Remove one unit
+		mainView.delete(true, null);
+		routes = index.getRoutes(javaProject);
+		assertEquals("Should find one route after delete", 1, routes.size());
+		assertEquals("Remaining route should be AboutView", "com.example.AboutView", routes.get(0).get("classname"));
+	}
+
+	@Test
+	public void testEntitiesWithAndWithoutMethods() throws Exception {
+		createJavaClass("Customer", "@Entity");
+
+		List<Map<String, Object>> withMethods = index.getEntities(javaProject, true);
+		assertEquals("Should find one entity", 1, withMethods.size());
+		assertEquals("Methods should be listed", "getName()", withMethods.get(0).get("methods"));
+
+		List<Map<String, Object>> withoutMethods = index.getEntities(javaProject, false);
+		assertEquals("Should find one entity", 1, withoutMethods.size());
+		assertFalse("Methods should not be listed", withoutMethods.get(0).containsKey("methods"));
+	}
+
+	@Test
+	public void testResultsSurviveRestart() throws Exception {
+		IFile mainView = createJavaClass("MainView", "@Route(\"main\")");
+		createJavaClass("Customer", "@Entity");
+		assertEquals("Should find one route", 1, index.getRoutes(javaProject).size());
+
+		// Disposing persists the results, a new index starts from them
+		VaadinModelIndex.dispose();
+		index = VaadinModelIndex.getInstance();
+		List<Map<String, Object>> routes = index.getRoutes(javaProject);
+		assertEquals("Should find one route after restart", 1, routes.size());
+		assertEquals("Route value should be restored", "main", routes.get(0).get("route"));
+		assertEquals("Should find one entity after restart", 1, index.getEntities(javaProject, false).size());
+
+		// A file changed while the index was not running is analyzed again
+		VaadinModelIndex.dispose();
+		mainView.setContents(new java.io.ByteArrayInputStream(classSource("MainView", "@Route(\"home\")").getBytes()),
+				true, false, null);
+		index = VaadinModelIndex.getInstance();
+		routes = index.getRoutes(javaProject);
+		assertEquals("Should find one route after change", 1, routes.size());
+		assertEquals("Changed route value should be found", "home", routes.get(0).get("route"));
+	}
+
+	private IFile createJavaClass(String className, String annotation) throws CoreException {
+		IFolder packageFolder = testProject.getFolder("src").getFolder("com").getFolder("example");
+		if (!packageFolder.exists()) {
+			if (!packageFolder.getParent().exists()) {
+				((IFolder) packageFolder.getParent()).create(true, true, null);
+			}
+			packageFolder.create(true, true, null);
+		}
+		IFile javaFile = packageFolder.getFile(className + ".java");
+		javaFile.create(new java.io.ByteArrayInputStream(classSource(className, annotation).getBytes()), true, null);
+		return javaFile;
+	}
+
+	private String classSource(String className, String annotation) {
+		return "package com.example;\n" + "import com.vaadin.flow.router.Route;\n"
+				+ "import javax.persistence.Entity;\n" + annotation + "\n" + "public class " + className + " {\n"
+				+ "    public String getName() { return null; }\n" + "}\n";
+	}
+}
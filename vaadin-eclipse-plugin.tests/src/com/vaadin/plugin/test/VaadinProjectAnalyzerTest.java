@@ -419,6 +419,28 @@ public class VaadinProjectAnalyzerTest extends BaseIntegrationTest {
 		assertTrue("Path should end with class file", path.endsWith("DeepClass.java"));
 	}
 
+	@Test
+	public void testFindRoutesWithAnnotationOnClasspath() throws CoreException {
+		// Declare the annotation type in the project so that it resolves and the search index is used
+		createJavaClass("src", "com.vaadin.flow.router", "Route",
+				"package com.vaadin.flow.router;\n" + "public @interface Route {\n" + "    String value() default \"\";\n"
+						+ "}\n");
+		createJavaClass("src", "com.example", "MainView", "package com.example;\n"
+				+ "import com.vaadin.flow.router.Route;\n" + "@Route(\"main\")\n" + "public class MainView {\n"
+				+ "    @Route(\"inner\")\n" + "    public static class InnerView {}\n" + "}\n");
+		createJavaClass("src", "com.example", "Plain",
+				"package com.example;\n" + "public class Plain {\n" + "    Route route;\n" + "}\n");
+
+		testProject.refreshLocal(2, null);
+
+		List<Map<String, Object>> routes = analyzer.findVaadinRoutes();
+		assertEquals("Should find top level and nested route", 2, routes.size());
+		assertTrue("Should find MainView",
+				routes.stream().anyMatch(r -> "com.example.MainView".equals(r.get("classname"))));
+		assertTrue("Should find InnerView",
+				routes.stream().anyMatch(r -> "com.example.MainView$InnerView".equals(r.get("classname"))));
+	}
+
 	/**
 	 * Helper method to create a Java class in the test project.
 	 */